@@ -0,0 +1,59 @@
+package io.github.chedwick.sqlcompat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample value generation and binding for one statement against a {@link PreparedStatement} stub that
+ * only counts the calls, so the numbers are the plugin's own cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BindBenchmark {
+    private final ParameterGenerator generator = new ParameterGenerator();
+    private SqlStatement[] statements;
+    private PreparedStatement stub;
+    private long bound;
+    private int next;
+
+    @Setup
+    public void build() throws Exception {
+        Path dir = Files.createTempDirectory("sql-compat-bind");
+        Path file = SyntheticMappers.write(dir, 1, 200, 11L).get(0);
+        MapperScanner scanner = new MapperScanner(new QuietLog(), List.of(dir.toString()), List.of("**/*.xml"), List.of());
+        statements = scanner.parseMapper(file).toArray(new SqlStatement[0]);
+        Files.delete(file);
+        Files.delete(dir);
+        stub = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    bound++;
+                    return null;
+                });
+    }
+
+    @Benchmark
+    public long bind() throws SQLException {
+        generator.bind(stub, statements[next++ % statements.length].parameters());
+        return bound;
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole validate-sql goal (scan, pools, scheduling, watchdog, report) against
+ * {@link SimulatedDriver}, so that changes to scheduling and pooling come with reproducible
+ * throughput numbers. Each invocation validates every statement against origin and then target;
+ * divide {@code 2 * statements} by the reported time for statements per second.
+ * <pre>
+ * java -jar target/benchmarks.jar EndToEndBenchmark -p statements=10000 -p threadCount=8,32 \
+ *     -p executeMillis=5 -p distribution=lognormal
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int statements;
+
+    @Param({"1", "4", "16"})
+    public int threadCount;
+
+    @Param({"false", "true"})
+    public boolean executeStatements;
+
+    @Param({"2"})
+    public double executeMillis;
+
+    @Param({"fixed"})
+    public String distribution;
+
+    @Param({"0"})
+    public double failureRate;
+
+    @Param({"0"})
+    public int maxConnections;
+
+    private static final int STATEMENTS_PER_FILE = 20;
+
+    private Path dir;
+    private ValidateSqlMojo mojo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimulatedDriver.register();
+        dir = Files.createTempDirectory("sql-compat-e2e");
+        SyntheticMappers.write(dir.resolve("mappers"), Math.max(1, statements / STATEMENTS_PER_FILE),
+                STATEMENTS_PER_FILE, 42L);
+        mojo = new ValidateSqlMojo();
+        mojo.setLog(new QuietLog());
+        set("jdbcUrl", url("target"));
+        set("originJdbcUrl", url("origin"));
+        set("mapperDirectories", List.of(dir.resolve("mappers").toString()));
+        set("includes", List.of("**/*Mapper.xml"));
+        set("reportPath", dir.resolve("sql-valid-report.json").toString());
+        set("reportFormat", "jsonl");
+        set("historyDirectory", "");
+        set("threadCount", threadCount);
+        set("executeStatements", executeStatements);
+        set("statementTimeoutSeconds", 30);
+        set("cancelGraceSeconds", 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean validate() {
+        try {
+            mojo.execute();
+            return true;
+        } catch (MojoExecutionException e) {
+            // Expected with failureRate > 0; the time until the failure is still the measurement.
+            return false;
+        }
+    }
+
+    private String url(String name) {
+        return SimulatedDriver.PREFIX + "name=" + name + ";executeMillis=" + executeMillis
+                + ";distribution=" + distribution + ";failureRate=" + failureRate
+                + ";maxConnections=" + maxConnections;
+    }
+
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = ValidateSqlMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Drops everything below warnings so that per-file scan logging does not end up in the measurements.
+ * Serves both the goals (Maven's log) and the scanner and validator they drive.
+ */
+final class QuietLog implements Log, ValidatorLog {
+    @Override public boolean isDebugEnabled() { return false; }
+    @Override public void debug(String message) { }
+    @Override public void debug(CharSequence content) { }
+    @Override public void debug(CharSequence content, Throwable error) { }
+    @Override public void debug(Throwable error) { }
+    @Override public boolean isInfoEnabled() { return false; }
+    @Override public void info(String message) { }
+    @Override public void info(CharSequence content) { }
+    @Override public void info(CharSequence content, Throwable error) { }
+    @Override public void info(Throwable error) { }
+    @Override public boolean isWarnEnabled() { return true; }
+    @Override public void warn(String message) { System.err.println("[warn] " + message); }
+    @Override public void warn(CharSequence content) { warn(String.valueOf(content)); }
+    @Override public void warn(CharSequence content, Throwable error) { warn(content + ": " + error); }
+    @Override public void warn(Throwable error) { warn(String.valueOf(error)); }
+    @Override public boolean isErrorEnabled() { return true; }
+    @Override public void error(String message) { System.err.println("[error] " + message); }
+    @Override public void error(CharSequence content) { error(String.valueOf(content)); }
+    @Override public void error(CharSequence content, Throwable error) { error(content + ": " + error); }
+    @Override public void error(Throwable error) { error(String.valueOf(error)); }
+}
@@ -0,0 +1,84 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dynamic SQL rendering through MyBatis ({@code <if>}, {@code <foreach>}, {@code <include>}) and the
+ * {@code #{...}} to {@code ?} rewrite done before every prepareStatement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    private MappedStatement[] statements;
+    private String[] rawSql;
+    private Map<String, Object> params;
+    private int next;
+
+    @Setup
+    public void build() throws Exception {
+        Configuration configuration = new Configuration();
+        String xml = SyntheticMappers.mapper("bench.render", 200, new Random(7L));
+        new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), configuration,
+                "bench.render", configuration.getSqlFragments()).parse();
+        // getMappedStatements() lists every statement under its short and its full id.
+        Map<MappedStatement, Boolean> unique = new IdentityHashMap<>();
+        for (MappedStatement ms : configuration.getMappedStatements()) {
+            unique.put(ms, Boolean.TRUE);
+        }
+        statements = unique.keySet().toArray(new MappedStatement[0]);
+
+        params = new HashMap<>();
+        for (String name : List.of("id", "name", "amount", "active", "f0", "f1", "f2", "f3",
+                "f0Max", "f1Max", "f2Max", "f3Max")) {
+            params.put(name, 1);
+        }
+        params.put("ids", List.of(1L, 2L, 3L));
+
+        List<String> sql = new ArrayList<>(statements.length);
+        for (MappedStatement ms : statements) {
+            sql.add(ms.getBoundSql(params).getSql());
+        }
+        // Keep the placeholders so that the rewrite has something to do.
+        rawSql = new String[sql.size()];
+        for (int i = 0; i < rawSql.length; i++) {
+            rawSql[i] = sql.get(i).replace("?", "#{p,jdbcType=VARCHAR}");
+        }
+    }
+
+    @Benchmark
+    public String renderBoundSql() {
+        MappedStatement ms = statements[next++ % statements.length];
+        return ms.getBoundSql(params).getSql();
+    }
+
+    @Benchmark
+    public String rewritePlaceholders() {
+        return ValidateSqlMojo.toPreparedSql(rawSql[next++ % rawSql.length]);
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.chedwick.sqlcompat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report serialization of 10k to 100k results into a discarding writer. Run with {@code -prof gc} to see
+ * the allocation rate per report.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"10000", "100000"})
+    public int results;
+
+    @Param({"JSON", "JSONL"})
+    public ReportWriter.Format format;
+
+    private ValidationResult[] entries;
+
+    @Setup
+    public void build() {
+        entries = new ValidationResult[results];
+        for (int i = 0; i < results; i++) {
+            SqlStatement stmt = new SqlStatement("find" + i, "bench.m" + (i / 20), SqlStatement.Kind.SELECT,
+                    Path.of("src/main/resources/mappers/Synthetic" + (i / 20) + "Mapper.xml"),
+                    "SELECT id FROM t WHERE id = #{id}", List.of());
+            String label = i < results / 2 ? "origin" : "target";
+            entries[i] = (i % 20 == 0
+                    ? ValidationResult.failure(stmt, label, label + ": ERROR: column \"x\" does not exist\n  Position: 8")
+                    : ValidationResult.success(stmt, label)).withDuration(1_000_000L + i);
+        }
+    }
+
+    @Benchmark
+    public ReportWriter write() throws IOException {
+        ReportWriter writer = ReportWriter.to(Writer.nullWriter(), format);
+        for (ValidationResult entry : entries) {
+            writer.entry(entry, null);
+        }
+        writer.finish("\"total\":" + results + ",\"failures\":" + results / 20);
+        return writer;
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.chedwick.sqlcompat;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Mapper parse throughput. {@code parseFile} reports files per second and, through the {@code bytes}
+ * counter, bytes per second; {@code scanDirectory} times one full scan including file discovery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"2000"})
+    public int files;
+
+    @Param({"20"})
+    public int statementsPerFile;
+
+    private Path dir;
+    private Path[] mappers;
+    private long[] sizes;
+    private MapperScanner scanner;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Parsed {
+        public long bytes;
+        public long statements;
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("sql-compat-scan");
+        List<Path> written = SyntheticMappers.write(dir, files, statementsPerFile, 42L);
+        mappers = written.toArray(new Path[0]);
+        sizes = new long[mappers.length];
+        for (int i = 0; i < mappers.length; i++) {
+            sizes[i] = Files.size(mappers[i]);
+        }
+        scanner = new MapperScanner(new QuietLog(), List.of(dir.toString()), List.of("**/*Mapper.xml"), List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<SqlStatement> parseFile(Parsed parsed) throws IOException {
+        int i = parsed.next++ % mappers.length;
+        List<SqlStatement> statements = scanner.parseMapper(mappers[i]);
+        parsed.bytes += sizes[i];
+        parsed.statements += statements.size();
+        return statements;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public List<SqlStatement> scanDirectory() throws IOException {
+        return scanner.scan();
+    }
+}
@@ -0,0 +1,283 @@
+package io.github.chedwick.sqlcompat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in JDBC driver that talks to no database: every round trip just parks the calling thread for a
+ * simulated latency, so pool sizing and scheduling can be measured without PostgreSQL. Settings are
+ * read from the URL, for example
+ * {@code jdbc:simulated:executeMillis=5;distribution=lognormal;spread=0.5;roundTripMicros=200;failureRate=0.01;maxConnections=20}.
+ * <ul>
+ *   <li>{@code executeMillis}: mean latency of {@code execute()} (default 2)</li>
+ *   <li>{@code distribution}: {@code fixed}, {@code uniform} (mean +/- spread * mean) or {@code lognormal}
+ *       (sigma = spread); default {@code fixed}</li>
+ *   <li>{@code roundTripMicros}: latency of connect, savepoint and rollback calls (default 100)</li>
+ *   <li>{@code failureRate}: share of executions that fail with SQLSTATE 42601 (default 0)</li>
+ *   <li>{@code maxConnections}: server-side connection limit; further connects fail with 53300 like
+ *       PostgreSQL's "too many clients" (default unlimited)</li>
+ * </ul>
+ * Connections opened under the same URL share the limit.
+ */
+public final class SimulatedDriver implements Driver {
+    static final String PREFIX = "jdbc:simulated:";
+
+    private static final Map<String, Semaphore> LIMITS = new HashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new SimulatedDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Makes sure the driver is registered with {@link DriverManager}.
+     */
+    static void register() {
+        // class initialization does the work
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Settings settings = Settings.parse(url.substring(PREFIX.length()));
+        Semaphore limit = settings.maxConnections > 0 ? limitFor(url, settings.maxConnections) : null;
+        if (limit != null && !limit.tryAcquire()) {
+            throw new SQLException("sorry, too many clients already", "53300");
+        }
+        settings.pause(settings.roundTripNanos);
+        return (Connection) Proxy.newProxyInstance(SimulatedDriver.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new SimulatedConnection(settings, limit));
+    }
+
+    private static synchronized Semaphore limitFor(String url, int permits) {
+        return LIMITS.computeIfAbsent(url, k -> new Semaphore(permits));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    record Settings(long executeNanos, String distribution, double spread, long roundTripNanos,
+                    double failureRate, int maxConnections) {
+
+        static Settings parse(String spec) {
+            Map<String, String> values = new HashMap<>();
+            for (String pair : spec.split(";")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    values.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+                }
+            }
+            return new Settings(
+                    (long) (Double.parseDouble(values.getOrDefault("executeMillis", "2")) * 1_000_000L),
+                    values.getOrDefault("distribution", "fixed").toLowerCase(Locale.ROOT),
+                    Double.parseDouble(values.getOrDefault("spread", "0.5")),
+                    TimeUnit.MICROSECONDS.toNanos(Long.parseLong(values.getOrDefault("roundTripMicros", "100"))),
+                    Double.parseDouble(values.getOrDefault("failureRate", "0")),
+                    Integer.parseInt(values.getOrDefault("maxConnections", "0")));
+        }
+
+        long sampleExecuteNanos() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return switch (distribution) {
+                case "uniform" -> (long) (executeNanos * (1 + spread * (2 * random.nextDouble() - 1)));
+                // Median-preserving log-normal: long right tail like real query latencies.
+                case "lognormal" -> (long) (executeNanos * Math.exp(spread * random.nextGaussian()));
+                default -> executeNanos;
+            };
+        }
+
+        void pause(long nanos) {
+            long deadline = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+
+    private static final class SimulatedConnection implements InvocationHandler {
+        private final Settings settings;
+        private final Semaphore limit;
+        private boolean closed;
+        private boolean autoCommit = true;
+        private boolean readOnly;
+
+        SimulatedConnection(Settings settings, Semaphore limit) {
+            this.settings = settings;
+            this.limit = limit;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed && limit != null) {
+                        limit.release();
+                    }
+                    closed = true;
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed;
+                }
+                case "isValid" -> {
+                    return !closed;
+                }
+                case "getAutoCommit" -> {
+                    return autoCommit;
+                }
+                case "setAutoCommit" -> {
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                }
+                case "isReadOnly" -> {
+                    return readOnly;
+                }
+                case "setReadOnly" -> {
+                    readOnly = (Boolean) args[0];
+                    return null;
+                }
+                case "getTransactionIsolation" -> {
+                    return Connection.TRANSACTION_READ_COMMITTED;
+                }
+                case "isWrapperFor" -> {
+                    return false;
+                }
+                case "unwrap" -> throw new SQLException("Not a wrapper");
+                case "setSavepoint", "releaseSavepoint", "rollback", "commit" -> {
+                    settings.pause(settings.roundTripNanos);
+                    return "setSavepoint".equals(method.getName()) ? savepoint() : null;
+                }
+                case "prepareStatement" -> {
+                    return Proxy.newProxyInstance(SimulatedDriver.class.getClassLoader(),
+                            new Class<?>[] {PreparedStatement.class}, new SimulatedStatement(settings));
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "toString" -> {
+                    return "SimulatedConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+                default -> {
+                    return defaultValue(method.getReturnType());
+                }
+            }
+        }
+
+        private static Savepoint savepoint() {
+            return (Savepoint) Proxy.newProxyInstance(SimulatedDriver.class.getClassLoader(),
+                    new Class<?>[] {Savepoint.class}, (p, m, a) -> defaultValue(m.getReturnType()));
+        }
+    }
+
+    private static final class SimulatedStatement implements InvocationHandler {
+        private final Settings settings;
+
+        SimulatedStatement(Settings settings) {
+            this.settings = settings;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().startsWith("execute")) {
+                settings.pause(settings.sampleExecuteNanos());
+                if (settings.failureRate > 0 && ThreadLocalRandom.current().nextDouble() < settings.failureRate) {
+                    throw new SQLException("ERROR: simulated syntax error", "42601");
+                }
+                return "executeUpdate".equals(method.getName()) ? 0 : defaultValue(method.getReturnType());
+            }
+            return switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "SimulatedStatement";
+                default -> defaultValue(method.getReturnType());
+            };
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Retained heap of parsed statements, as each file's parser returns them and after they went through a
+ * {@link StatementStore}. Heap use is a steady-state number rather than a rate, so this is a plain
+ * program instead of a JMH benchmark:
+ * <pre>
+ * java -cp target/benchmarks.jar io.github.chedwick.sqlcompat.StatementMemoryBenchmark 100000 20
+ * </pre>
+ * Arguments are the statement count (default 100000) and statements per mapper file (default 20).
+ */
+public final class StatementMemoryBenchmark {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private StatementMemoryBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int statementsPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Path dir = Files.createTempDirectory("sql-compat-memory");
+        try {
+            List<Path> files = SyntheticMappers.write(dir, Math.max(1, statements / statementsPerFile),
+                    statementsPerFile, 42L);
+            MapperScanner scanner = new MapperScanner(new QuietLog(), List.of(dir.toString()),
+                    List.of("**/*Mapper.xml"), List.of());
+
+            // Whatever the scanner keeps between files is part of both baselines, not of the statements.
+            parse(scanner, files);
+            long baseline = usedAfterGc();
+            List<SqlStatement> parsed = parse(scanner, files);
+            long before = usedAfterGc() - baseline;
+            int count = parsed.size();
+            parsed = null;
+
+            baseline = usedAfterGc();
+            StatementStore store = new StatementStore();
+            for (SqlStatement stmt : parse(scanner, files)) {
+                store.add(stmt);
+            }
+            List<SqlStatement> compact = store.statements();
+            long withStore = usedAfterGc() - baseline;
+            int fileCount = store.fileCount();
+            int sqlTexts = store.sqlCount();
+            int signatures = store.signatureCount();
+            store = null;
+            long after = usedAfterGc() - baseline;
+
+            System.out.printf(Locale.ROOT, "%d statements in %d files, %d distinct SQL texts, %d parameter signatures%n",
+                    compact.size(), fileCount, sqlTexts, signatures);
+            report("parsed (before)", before, count);
+            report("compacted, store held", withStore, count);
+            report("compacted (after)", after, count);
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static List<SqlStatement> parse(MapperScanner scanner, List<Path> files) throws IOException {
+        List<SqlStatement> parsed = new ArrayList<>();
+        for (Path file : files) {
+            parsed.addAll(scanner.parseMapper(file));
+        }
+        return parsed;
+    }
+
+    private static void report(String label, long bytes, int statements) {
+        System.out.printf(Locale.ROOT, "%-24s %8.1f MB retained, %6.1f MB per 100k statements, %5d bytes each%n",
+                label, bytes / 1e6, bytes * 100_000.0 / statements / 1e6, bytes / statements);
+    }
+
+    private static long usedAfterGc() {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes reproducible mapper files shaped like real ones: shared {@code <sql>} fragments pulled in
+ * with {@code <include>}, {@code <where>} blocks of nested {@code <if>} tests and {@code <foreach>}
+ * lists, plus plain inserts, updates and deletes.
+ */
+final class SyntheticMappers {
+    private static final String[] TYPES = {"INTEGER", "VARCHAR", "BIGINT", "TIMESTAMP", "NUMERIC", "BOOLEAN"};
+
+    private SyntheticMappers() {
+    }
+
+    static List<Path> write(Path dir, int files, int statementsPerFile, long seed) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        List<Path> written = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            Path file = dir.resolve("Synthetic" + i + "Mapper.xml");
+            Files.writeString(file, mapper("bench.m" + i, statementsPerFile, random), StandardCharsets.UTF_8);
+            written.add(file);
+        }
+        return written;
+    }
+
+    static String mapper(String namespace, int statements, Random random) {
+        StringBuilder xml = new StringBuilder(512 + statements * 640);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" ")
+                .append("\"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n")
+                .append("<mapper namespace=\"").append(namespace).append("\">\n")
+                .append("    <sql id=\"columns\">id, name, created_at, amount, active</sql>\n")
+                .append("    <sql id=\"activeOnly\">AND active = #{active,jdbcType=BOOLEAN}</sql>\n");
+        for (int s = 0; s < statements; s++) {
+            String table = "t" + random.nextInt(50);
+            switch (s % 4) {
+                case 0, 1 -> select(xml, s, table, random);
+                case 2 -> xml.append("    <insert id=\"insert").append(s).append("\">\n")
+                        .append("        INSERT INTO ").append(table).append(" (id, name, amount) VALUES (")
+                        .append(param("id", random)).append(", ").append(param("name", random)).append(", ")
+                        .append(param("amount", random)).append(")\n")
+                        .append("    </insert>\n");
+                default -> xml.append("    <update id=\"update").append(s).append("\">\n")
+                        .append("        UPDATE ").append(table).append("\n")
+                        .append("        <set>\n")
+                        .append("            <if test=\"name != null\">name = ").append(param("name", random)).append(",</if>\n")
+                        .append("            <if test=\"amount != null\">amount = ").append(param("amount", random)).append(",</if>\n")
+                        .append("        </set>\n")
+                        .append("        WHERE id = ").append(param("id", random)).append("\n")
+                        .append("    </update>\n");
+            }
+        }
+        xml.append("</mapper>\n");
+        return xml.toString();
+    }
+
+    private static void select(StringBuilder xml, int s, String table, Random random) {
+        xml.append("    <select id=\"find").append(s).append("\">\n")
+                .append("        SELECT <include refid=\"columns\"/> FROM ").append(table).append("\n")
+                .append("        <where>\n")
+                .append("            <include refid=\"activeOnly\"/>\n");
+        int conditions = 1 + random.nextInt(4);
+        for (int c = 0; c < conditions; c++) {
+            String field = "f" + c;
+            xml.append("            <if test=\"").append(field).append(" != null\">\n")
+                    .append("                AND ").append(field).append(" = ").append(param(field, random)).append("\n");
+            if (random.nextBoolean()) {
+                xml.append("                <if test=\"").append(field).append("Max != null\">AND ").append(field)
+                        .append(" &lt; ").append(param(field + "Max", random)).append("</if>\n");
+            }
+            xml.append("            </if>\n");
+        }
+        xml.append("            <foreach collection=\"ids\" item=\"id\" open=\"AND id IN (\" separator=\",\" close=\")\">")
+                .append("#{id,jdbcType=BIGINT}</foreach>\n")
+                .append("        </where>\n")
+                .append("        ORDER BY id LIMIT 100\n")
+                .append("    </select>\n");
+    }
+
+    private static String param(String name, Random random) {
+        return "#{" + name + ",jdbcType=" + TYPES[random.nextInt(TYPES.length)] + "}";
+    }
+}
@@ -0,0 +1,406 @@
+package io.github.chedwick.sqlcompat;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Extracts statements declared with {@code @Select}, {@code @Insert}, {@code @Update} and
+ * {@code @Delete} on mapper interfaces by reading the compiled class files with ASM. Classes are never
+ * loaded, so static initializers do not run and the project's classpath is not needed.
+ * <p>
+ * Each annotated interface is rendered to an equivalent mapper XML and parsed by
+ * {@link MapperScanner#parseXml}, so dynamic {@code <script>} SQL and parameter extraction behave
+ * exactly as for XML mappers. Statements are cached per class file checksum; an unchanged class is
+ * neither parsed by ASM nor by MyBatis again. Classes whose SQL includes fragments also depend on the
+ * mapper files that declare them, so their statements are parsed again on every run instead.
+ */
+final class AnnotationMapperScanner {
+    private static final String FORMAT = "sql-compat annotation cache v2";
+    private static final String ANNOTATIONS = "org/apache/ibatis/annotations/";
+    private static final byte[] ANNOTATIONS_BYTES = ANNOTATIONS.getBytes(StandardCharsets.US_ASCII);
+    private static final String INCLUDE = "<include";
+    private static final Map<String, String> ELEMENTS = Map.of(
+            "Select", "select", "Insert", "insert", "Update", "update", "Delete", "delete");
+    private static final Set<String> PROVIDERS = Set.of(
+            "SelectProvider", "InsertProvider", "UpdateProvider", "DeleteProvider");
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final ValidatorLog log;
+    private final MapperScanner scanner;
+    private final Path cacheFile;
+    private final String settings;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param cacheFile JSON cache of statements by class checksum, or null to always parse
+     * @param settings   whatever else affects rendering, e.g. the MyBatis config; a change drops the cache
+     */
+    AnnotationMapperScanner(ValidatorLog log, MapperScanner scanner, Path cacheFile, String settings) {
+        this.log = log;
+        this.scanner = scanner;
+        this.cacheFile = cacheFile;
+        this.settings = settings;
+    }
+
+    List<SqlStatement> scan(List<Path> classDirectories) throws IOException {
+        List<Path> classFiles = new ArrayList<>();
+        for (Path dir : classDirectories) {
+            if (Files.isDirectory(dir)) {
+                classFiles.addAll(walk(dir));
+            }
+        }
+        Map<String, List<Map<String, Object>>> cached = readCache();
+        Map<String, List<Map<String, Object>>> current = new ConcurrentHashMap<>();
+        List<List<SqlStatement>> perClass;
+        try {
+            perClass = (classFiles.size() > PARALLEL_THRESHOLD ? classFiles.parallelStream() : classFiles.stream())
+                    .map(file -> scanClass(file, cached, current))
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<SqlStatement> statements = new ArrayList<>();
+        perClass.forEach(statements::addAll);
+        // Classes that include fragments miss on every run but never change what is cached.
+        if (!current.keySet().equals(cached.keySet())) {
+            writeCache(current);
+        }
+        return statements;
+    }
+
+    int hits() {
+        return hits;
+    }
+
+    int misses() {
+        return misses;
+    }
+
+    private List<SqlStatement> scanClass(Path file, Map<String, List<Map<String, Object>>> cached,
+                                         Map<String, List<Map<String, Object>>> current) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            // Almost every class of a large module never mentions the annotations package; skip those
+            // before hashing or parsing anything.
+            if (indexOf(bytes, ANNOTATIONS_BYTES) < 0) {
+                return List.of();
+            }
+            String checksum = Checksums.sha256(bytes);
+            List<Map<String, Object>> entries = cached.get(checksum);
+            List<SqlStatement> statements = new ArrayList<>();
+            if (entries != null) {
+                countHit();
+                for (Map<String, Object> entry : entries) {
+                    statements.add(DependencyMapperCache.decode(entry, file));
+                }
+            } else {
+                countMiss();
+                MapperClass mapper = readClass(bytes);
+                statements = parse(mapper, file);
+                if (includesFragments(mapper)) {
+                    return statements;
+                }
+                entries = new ArrayList<>(statements.size());
+                for (SqlStatement stmt : statements) {
+                    entries.add(DependencyMapperCache.encode(stmt));
+                }
+            }
+            current.put(checksum, entries);
+            return statements;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void countHit() {
+        hits++;
+    }
+
+    private synchronized void countMiss() {
+        misses++;
+    }
+
+    List<SqlStatement> parseClass(byte[] bytes, Path sourceFile) throws IOException {
+        return parse(readClass(bytes), sourceFile);
+    }
+
+    private List<SqlStatement> parse(MapperClass mapper, Path sourceFile) throws IOException {
+        for (int i = 0; i < mapper.providers; i++) {
+            scanner.metrics().skipped("provider method (needs class loading)");
+        }
+        if (mapper.methods.isEmpty()) {
+            return List.of();
+        }
+        return scanner.parseXml(toMapperXml(mapper.name, mapper.methods).getBytes(StandardCharsets.UTF_8), sourceFile);
+    }
+
+    /**
+     * Tells whether a {@code <script>} includes a fragment, which may be declared by a mapper file and
+     * change without the class changing.
+     */
+    private static boolean includesFragments(MapperClass mapper) {
+        for (List<AnnotatedMethod> variants : mapper.methods.values()) {
+            for (AnnotatedMethod stmt : variants) {
+                if (stmt.sql.contains(INCLUDE)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static MapperClass readClass(byte[] bytes) {
+        MapperClass mapper = new MapperClass();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName,
+                              String[] interfaces) {
+                mapper.name = name.replace('/', '.');
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                             String[] exceptions) {
+                if ((access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0
+                        || mapper.methods.containsKey(name)) {
+                    // MyBatis keys statements by method name, so only the first overload counts.
+                    return null;
+                }
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                        return annotation(mapper, name, desc);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return mapper;
+    }
+
+    private static AnnotationVisitor annotation(MapperClass mapper, String method, String desc) {
+        if (!desc.startsWith("L" + ANNOTATIONS)) {
+            return null;
+        }
+        String simple = desc.substring(ANNOTATIONS.length() + 1, desc.length() - 1);
+        boolean repeated = simple.endsWith("$List");
+        if (repeated) {
+            simple = simple.substring(0, simple.length() - "$List".length());
+        }
+        if (PROVIDERS.contains(simple)) {
+            mapper.providers++;
+            return null;
+        }
+        String element = ELEMENTS.get(simple);
+        if (element == null) {
+            return null;
+        }
+        Consumer<AnnotatedMethod> sink = variant -> mapper.methods.computeIfAbsent(method, k -> new ArrayList<>()).add(variant);
+        if (!repeated) {
+            return new SqlVisitor(element, sink);
+        }
+        // @Select.List holds one variant per databaseId; the scanner picks among them like MyBatis does.
+        return new AnnotationVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return new AnnotationVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+                        return new SqlVisitor(element, sink);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Renders the statements as the mapper XML MyBatis' annotation builder would effectively produce.
+     * {@code <script>} SQL is inlined as markup, anything else is wrapped in CDATA.
+     */
+    static String toMapperXml(String namespace, Map<String, List<AnnotatedMethod>> methods) {
+        StringBuilder xml = new StringBuilder(256)
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" ")
+                .append("\"https://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n")
+                .append("<mapper namespace=\"").append(namespace).append("\">\n");
+        methods.forEach((method, variants) -> {
+            for (AnnotatedMethod stmt : variants) {
+                xml.append("<").append(stmt.element).append(" id=\"").append(method).append('"');
+                if (!stmt.databaseId.isEmpty()) {
+                    xml.append(" databaseId=\"").append(escapeAttribute(stmt.databaseId)).append('"');
+                }
+                xml.append('>');
+                String sql = stmt.sql.trim();
+                if (sql.startsWith("<script>") && sql.endsWith("</script>")) {
+                    xml.append(sql, "<script>".length(), sql.length() - "</script>".length());
+                } else {
+                    xml.append("<![CDATA[").append(sql.replace("]]>", "]]]]><![CDATA[>")).append("]]>");
+                }
+                xml.append("</").append(stmt.element).append(">\n");
+            }
+        });
+        return xml.append("</mapper>\n").toString();
+    }
+
+    private static String escapeAttribute(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+
+    private static List<Path> walk(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && name.endsWith(".class") && !name.equals("module-info.class")
+                        && !name.equals("package-info.class")) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(null);
+        return files;
+    }
+
+    static int indexOf(byte[] haystack, byte[] needle) {
+        byte first = needle[0];
+        int last = haystack.length - needle.length;
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (haystack[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<Map<String, Object>>> readCache() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return Map.of();
+        }
+        try {
+            Map<String, Object> root = (Map<String, Object>) Json.parse(Files.readString(cacheFile, StandardCharsets.UTF_8));
+            if (!FORMAT.equals(root.get("format")) || !settings.equals(root.get("settings"))) {
+                return Map.of();
+            }
+            return (Map<String, List<Map<String, Object>>>) (Map<String, ?>) root.get("classes");
+        } catch (IOException | RuntimeException e) {
+            log.debug("Ignoring unreadable annotation cache " + cacheFile + ": " + e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * Rewrites the cache with the classes seen in this run only, so deleted classes drop out.
+     */
+    private void writeCache(Map<String, List<Map<String, Object>>> classes) {
+        if (cacheFile == null) {
+            return;
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("format", FORMAT);
+        root.put("settings", settings);
+        root.put("classes", classes);
+        StringBuilder json = new StringBuilder();
+        Json.write(json, root);
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "annotations", ".tmp");
+            try {
+                Files.writeString(tmp, json, StandardCharsets.UTF_8);
+                try {
+                    Files.move(tmp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write annotation cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    static final class MapperClass {
+        String name;
+        final Map<String, List<AnnotatedMethod>> methods = new LinkedHashMap<>();
+        int providers;
+    }
+
+    record AnnotatedMethod(String element, String sql, String databaseId) {
+    }
+
+    /**
+     * Collects the {@code value} lines and {@code databaseId} of one SQL annotation.
+     */
+    private static final class SqlVisitor extends AnnotationVisitor {
+        private final String element;
+        private final Consumer<AnnotatedMethod> sink;
+        private final List<String> lines = new ArrayList<>();
+        private String databaseId = "";
+
+        SqlVisitor(String element, Consumer<AnnotatedMethod> sink) {
+            super(Opcodes.ASM9);
+            this.element = element;
+            this.sink = sink;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if ("databaseId".equals(name)) {
+                databaseId = String.valueOf(value);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            if (!"value".equals(name)) {
+                return null;
+            }
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(String ignored, Object value) {
+                    lines.add(String.valueOf(value));
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            // MyBatis joins the array elements with a single space.
+            sink.accept(new AnnotatedMethod(element, String.join(" ", lines), databaseId));
+        }
+    }
+}
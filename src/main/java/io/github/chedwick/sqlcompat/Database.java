@@ -0,0 +1,210 @@
+package io.github.chedwick.sqlcompat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One database to validate against: its connection settings and pool, which is created on first use and
+ * kept until closed so that several passes can share it, plus the {@code databaseId} and schemas its
+ * statements are selected and run with.
+ */
+public final class Database implements AutoCloseable {
+
+    /**
+     * Creates the pool for a database on first use.
+     */
+    @FunctionalInterface
+    interface PoolFactory {
+        DataSource create(String url, String user, String pass);
+    }
+
+    private final String label;
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final PoolFactory pools;
+    private final StatementWatchdog.ControlConnectionFactory controlConnections;
+    private DataSource dataSource;
+    private long poolStartNanos = -1L;
+    private MybatisConfig mybatisConfig;
+    private String databaseId;
+    private boolean databaseIdResolved;
+    private List<String> configuredSchemas = List.of();
+    private String schemaQuery;
+    private List<String> schemas;
+
+    /**
+     * A database reached through a pool the caller owns; {@link #close()} leaves it open. Statement
+     * cancellation escalates over a connection borrowed from the same pool.
+     */
+    public Database(String label, DataSource dataSource) {
+        this(label, String.valueOf(dataSource), null, null, null, dataSource::getConnection);
+        this.dataSource = dataSource;
+        this.poolStartNanos = 0L;
+    }
+
+    Database(String label, String url, String user, String pass, PoolFactory pools,
+             StatementWatchdog.ControlConnectionFactory controlConnections) {
+        this.label = label;
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.pools = pools;
+        this.controlConnections = controlConnections;
+    }
+
+    /**
+     * A HikariCP pool of up to {@code poolSize} connections that never auto-commit, as every validation
+     * runs in a transaction it rolls back.
+     */
+    static DataSource hikari(String url, String user, String pass, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        if (user != null) {
+            config.setUsername(user);
+        }
+        if (pass != null) {
+            config.setPassword(pass);
+        }
+        config.setMaximumPoolSize(Math.max(1, poolSize));
+        config.setMinimumIdle(0);
+        config.setAutoCommit(false);
+        config.setPoolName("sql-valid-" + Math.abs(url.hashCode()));
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The {@code databaseId} MyBatis selects statement variants with on this database, overriding the
+     * one a MyBatis config's {@code databaseIdProvider} would derive. Blank leaves it to the provider.
+     */
+    public Database databaseId(String databaseId) {
+        this.databaseId = databaseId == null || databaseId.isBlank() ? null : databaseId;
+        this.databaseIdResolved = this.databaseId != null;
+        return this;
+    }
+
+    /**
+     * PostgreSQL schemas to run every statement in, instead of the default {@code search_path}.
+     */
+    public Database schemas(List<String> schemas) {
+        this.configuredSchemas = schemas == null ? List.of() : List.copyOf(schemas);
+        return this;
+    }
+
+    /**
+     * Query whose first column lists the schemas to run every statement in; ignored when schemas are set.
+     */
+    public Database schemaQuery(String schemaQuery) {
+        this.schemaQuery = schemaQuery;
+        return this;
+    }
+
+    Database mybatisConfig(MybatisConfig mybatisConfig) {
+        this.mybatisConfig = mybatisConfig;
+        return this;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    String url() {
+        return url;
+    }
+
+    synchronized DataSource dataSource() {
+        if (dataSource == null) {
+            long start = System.nanoTime();
+            dataSource = pools.create(url, user, pass);
+            poolStartNanos = System.nanoTime() - start;
+        }
+        return dataSource;
+    }
+
+    /**
+     * The configured {@code databaseId}, else the one the MyBatis config's {@code databaseIdProvider}
+     * derives from the database metadata, else null as in MyBatis without a provider.
+     */
+    synchronized String databaseId() throws ValidationException {
+        if (!databaseIdResolved) {
+            if (mybatisConfig != null && mybatisConfig.hasDatabaseIdProvider()) {
+                try {
+                    databaseId = mybatisConfig.databaseId(dataSource());
+                } catch (Exception e) {
+                    throw new ValidationException("Failed to determine the databaseId of the " + label + " database", e);
+                }
+            }
+            databaseIdResolved = true;
+        }
+        return databaseId;
+    }
+
+    /**
+     * The configured schemas, else those the schema query lists on this database; empty validates
+     * against the default {@code search_path} only.
+     */
+    synchronized List<String> schemas() throws ValidationException {
+        if (schemas == null) {
+            if (!configuredSchemas.isEmpty()) {
+                schemas = configuredSchemas;
+            } else if (schemaQuery != null && !schemaQuery.isBlank()) {
+                schemas = discoverSchemas();
+            } else {
+                schemas = List.of();
+            }
+        }
+        return schemas;
+    }
+
+    private List<String> discoverSchemas() throws ValidationException {
+        List<String> found = new ArrayList<>();
+        try (Connection conn = dataSource().getConnection();
+             Statement query = conn.createStatement();
+             ResultSet rs = query.executeQuery(schemaQuery)) {
+            while (rs.next()) {
+                found.add(rs.getString(1));
+            }
+            conn.rollback();
+        } catch (SQLException e) {
+            throw new ValidationException("Failed to list schemas of the " + label + " database with " + schemaQuery, e);
+        }
+        if (found.isEmpty()) {
+            throw new ValidationException("schemaQuery returned no schemas on the " + label + " database: " + schemaQuery);
+        }
+        return List.copyOf(found);
+    }
+
+    /**
+     * Time it took to create and start the pool, or -1 before it was first used.
+     */
+    synchronized long poolStartNanos() {
+        return poolStartNanos;
+    }
+
+    Connection openControlConnection() throws SQLException {
+        return controlConnections.open();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (pools == null) {
+            return;
+        }
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+                // best effort
+            }
+        }
+        dataSource = null;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.Locale;
+
+/**
+ * Per-database phase timings of a validation pass. {@code acquire} is the time spent waiting on the
+ * connection pool, {@code prepare} covers the savepoint, {@code prepareStatement} and parameter binding,
+ * and {@code statement} is the end-to-end latency of one statement including the pool wait.
+ */
+final class DatabaseMetrics {
+    final LatencyHistogram statement = new LatencyHistogram();
+    final LatencyHistogram acquire = new LatencyHistogram();
+    final LatencyHistogram prepare = new LatencyHistogram();
+    final LatencyHistogram execute = new LatencyHistogram();
+    final LatencyHistogram rollback = new LatencyHistogram();
+    private final String label;
+    private volatile long poolStartNanos = -1L;
+    private long wallNanos;
+
+    DatabaseMetrics(String label) {
+        this.label = label;
+    }
+
+    void poolStarted(long nanos) {
+        poolStartNanos = nanos;
+    }
+
+    void finished(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    double statementsPerSecond() {
+        return wallNanos <= 0 ? 0.0 : statement.count() * 1_000_000_000.0 / wallNanos;
+    }
+
+    String toJson() {
+        return "{\"label\":\"" + Json.escape(label) + "\""
+                + ",\"wallMillis\":" + LatencyHistogram.millis(wallNanos)
+                + ",\"poolStartMillis\":" + (poolStartNanos < 0 ? "null" : LatencyHistogram.millis(poolStartNanos))
+                + ",\"statementsPerSecond\":" + String.format(Locale.ROOT, "%.1f", statementsPerSecond())
+                + ",\"phases\":{\"statement\":" + statement.toJson() + ",\"poolWait\":" + acquire.toJson()
+                + ",\"prepare\":" + prepare.toJson() + ",\"execute\":" + execute.toJson()
+                + ",\"rollback\":" + rollback.toJson() + "}}";
+    }
+
+    String describe() {
+        String text = String.format(Locale.ROOT, "%.1f stmt/s; latency ", statementsPerSecond()) + statement.describe()
+                + "; pool wait p99 " + LatencyHistogram.millis(acquire.percentileNanos(99)) + " ms"
+                + ", prepare p99 " + LatencyHistogram.millis(prepare.percentileNanos(99)) + " ms"
+                + ", execute p99 " + LatencyHistogram.millis(execute.percentileNanos(99)) + " ms"
+                + ", rollback p99 " + LatencyHistogram.millis(rollback.percentileNanos(99)) + " ms";
+        if (poolStartNanos >= 0) {
+            text += ", pool start " + LatencyHistogram.millis(poolStartNanos) + " ms";
+        }
+        return text;
+    }
+}
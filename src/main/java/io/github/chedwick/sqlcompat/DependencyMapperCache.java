@@ -0,0 +1,151 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statements extracted from dependency JARs, cached per JAR content so that a shared library is parsed
+ * once per machine rather than once per build.
+ * <p>
+ * Entries are JSON files named {@code <sha-256 of the jar>-<settings hash>.json}, where the settings
+ * hash covers the include/exclude patterns and the cache format. Statements are stored with their entry
+ * name and re-attributed to wherever the JAR lives in the current build.
+ */
+final class DependencyMapperCache {
+    private static final String FORMAT = "sql-compat jar cache v2";
+
+    private final Path directory;
+    private final ValidatorLog log;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param directory cache directory, or null to always parse
+     */
+    DependencyMapperCache(Path directory, ValidatorLog log) {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    List<SqlStatement> scan(Path jar, MapperScanner scanner, String settings) throws IOException {
+        if (directory == null) {
+            misses++;
+            return scanner.scanJar(jar);
+        }
+        Path file = directory.resolve(Checksums.sha256(jar) + "-" + Integer.toHexString((FORMAT + settings).hashCode()) + ".json");
+        List<SqlStatement> cached = read(file, jar);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        List<SqlStatement> statements = scanner.scanJar(jar);
+        try {
+            write(file, jar, statements);
+        } catch (IOException e) {
+            log.warn("Failed to cache mapper statements of " + jar + ": " + e.getMessage());
+        }
+        return statements;
+    }
+
+    int hits() {
+        return hits;
+    }
+
+    int misses() {
+        return misses;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SqlStatement> read(Path file, Path jar) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            Map<String, Object> root = (Map<String, Object>) Json.parse(Files.readString(file, StandardCharsets.UTF_8));
+            if (!FORMAT.equals(root.get("format"))) {
+                return null;
+            }
+            List<SqlStatement> statements = new ArrayList<>();
+            for (Object item : (List<Object>) root.get("statements")) {
+                Map<String, Object> s = (Map<String, Object>) item;
+                statements.add(decode(s, Path.of(jar + "!" + s.get("entry"))));
+            }
+            return statements;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Ignoring unreadable cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * JSON-ready form of a statement without its source file, which callers store in their own terms.
+     */
+    static Map<String, Object> encode(SqlStatement stmt) {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("id", stmt.id());
+        s.put("namespace", stmt.namespace());
+        s.put("kind", stmt.kind().name());
+        s.put("sql", stmt.rawSql());
+        List<Object> params = new ArrayList<>(stmt.parameters().size());
+        for (ParameterSpec spec : stmt.parameters()) {
+            params.add(Arrays.asList(spec.name(), spec.jdbcType()));
+        }
+        s.put("parameters", params);
+        if (stmt.databaseId() != null) {
+            s.put("databaseId", stmt.databaseId());
+        }
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    static SqlStatement decode(Map<String, Object> s, Path sourceFile) {
+        List<ParameterSpec> params = new ArrayList<>();
+        for (Object p : (List<Object>) s.get("parameters")) {
+            List<Object> pair = (List<Object>) p;
+            params.add(new ParameterSpec((String) pair.get(0), (String) pair.get(1)));
+        }
+        return new SqlStatement((String) s.get("id"), (String) s.get("namespace"),
+                SqlStatement.Kind.valueOf((String) s.get("kind")), sourceFile, (String) s.get("sql"), params,
+                (String) s.get("databaseId"));
+    }
+
+    private void write(Path file, Path jar, List<SqlStatement> statements) throws IOException {
+        String prefix = jar + "!";
+        List<Object> items = new ArrayList<>(statements.size());
+        for (SqlStatement stmt : statements) {
+            Map<String, Object> s = encode(stmt);
+            String source = stmt.sourceFile().toString();
+            s.put("entry", source.startsWith(prefix) ? source.substring(prefix.length()) : source);
+            items.add(s);
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("format", FORMAT);
+        root.put("statements", items);
+        StringBuilder json = new StringBuilder();
+        Json.write(json, root);
+
+        // Write to a temp file and move it into place so that concurrent builds never see half an entry.
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.writeString(tmp, json, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reports statements whose p95 duration or plan cost drifted upwards over the last runs recorded in
+ * the run history of validate-sql.
+ */
+@Mojo(name = "history-trends", threadSafe = true)
+public class HistoryTrendsMojo extends AbstractMojo {
+
+    /**
+     * The run history directory validate-sql records to.
+     */
+    @Parameter(property = "validateSql.historyDirectory")
+    private String historyDirectory;
+
+    /**
+     * How many of the most recent runs to look at.
+     */
+    @Parameter(property = "historyTrends.runs", defaultValue = "30")
+    private int runs = 30;
+
+    /**
+     * Growth in percent of the p95 duration or plan cost, newer half of the runs against the older half,
+     * above which a statement is reported.
+     */
+    @Parameter(property = "historyTrends.thresholdPercent", defaultValue = "20")
+    private double thresholdPercent = 20;
+
+    /**
+     * Duration growth is only reported once the newer p95 reaches this many milliseconds.
+     */
+    @Parameter(property = "historyTrends.minDurationMillis", defaultValue = "1")
+    private double minDurationMillis = 1;
+
+    @Parameter(property = "historyTrends.outputPath", defaultValue = "${project.build.directory}/sql-valid-trends.json")
+    private String outputPath;
+
+    /**
+     * Fail the build when any statement regressed.
+     */
+    @Parameter(property = "historyTrends.failOnRegression", defaultValue = "false")
+    private boolean failOnRegression;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (historyDirectory == null || historyDirectory.isBlank()) {
+            getLog().warn("No run history configured; set validateSql.historyDirectory.");
+            return;
+        }
+        Path directory = Path.of(historyDirectory);
+        if (!Files.isDirectory(directory)) {
+            getLog().warn("No run history at " + directory + "; run validate-sql first.");
+            return;
+        }
+        RunHistoryStore store;
+        try {
+            store = RunHistoryStore.open(directory);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to open run history " + directory, e);
+        }
+        List<RunTrends.Trend> regressions = RunTrends.regressions(store, runs, thresholdPercent / 100.0, minDurationMillis);
+        int window = Math.min(runs, store.runCount());
+        getLog().info("Compared the last " + window + " of " + store.runCount() + " run(s) for "
+                + store.keyCount() + " statement(s) and database(s): " + regressions.size()
+                + " grew by more than " + thresholdPercent + "%");
+        for (RunTrends.Trend trend : regressions) {
+            getLog().warn(" - " + trend.describe());
+        }
+        if (outputPath != null && !outputPath.isBlank()) {
+            writeReport(Path.of(outputPath), store, window, regressions);
+        }
+        if (failOnRegression && !regressions.isEmpty()) {
+            throw new MojoExecutionException(regressions.size() + " statement(s) regressed by more than "
+                    + thresholdPercent + "% over the last " + window + " run(s)");
+        }
+    }
+
+    private void writeReport(Path out, RunHistoryStore store, int window, List<RunTrends.Trend> regressions)
+            throws MojoExecutionException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"runs\":").append(store.runCount()).append(",\"window\":").append(window)
+                .append(",\"thresholdPercent\":").append(thresholdPercent)
+                .append(",\"regressions\":[");
+        for (int i = 0; i < regressions.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(regressions.get(i).toJson());
+        }
+        sb.append("]}");
+        try {
+            Path parent = out.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(out, sb.toString(), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to write trends report " + out, e);
+        }
+        getLog().info("Wrote trends report to " + out.toAbsolutePath());
+    }
+}
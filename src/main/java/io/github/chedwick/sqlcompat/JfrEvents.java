@@ -0,0 +1,90 @@
+package io.github.chedwick.sqlcompat;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events for the scan and validation hot paths. All of them are disabled by default:
+ * without a recording that enables them, {@code begin()}, {@code shouldCommit()} and {@code commit()}
+ * compile down to nothing, so the fields are only filled in when {@code shouldCommit()} says the event
+ * will actually be written. {@link MapperParse} events are held across the phases of a shared scan,
+ * so they escape and are only allocated through {@link #beginMapperParse()} when the type is enabled.
+ */
+final class JfrEvents {
+    private static final EventType MAPPER_PARSE = EventType.getEventType(MapperParse.class);
+
+    private JfrEvents() {
+    }
+
+    /**
+     * A begun {@link MapperParse} event, or null when no running recording enables the type.
+     */
+    static MapperParse beginMapperParse() {
+        if (!MAPPER_PARSE.isEnabled()) {
+            return null;
+        }
+        MapperParse event = new MapperParse();
+        event.begin();
+        return event;
+    }
+
+    @Name("io.github.chedwick.sqlcompat.MapperParse")
+    @Label("Mapper Parse")
+    @Description("Parsing of one mapper XML file into mapped statements")
+    @Category({"SQL Compat", "Scan"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class MapperParse extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Statements")
+        int statementCount;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("io.github.chedwick.sqlcompat.StatementValidation")
+    @Label("Statement Validation")
+    @Description("Validation of one mapped statement against one database, including the pool wait")
+    @Category({"SQL Compat", "Validation"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class StatementValidation extends Event {
+        @Label("Statement")
+        String fullId;
+
+        @Label("Database")
+        String database;
+
+        @Label("Mode")
+        @Description("EXPLAIN or EXECUTE")
+        String mode;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("io.github.chedwick.sqlcompat.PoolBorrow")
+    @Label("Pool Borrow")
+    @Description("Wait for a pooled connection before validating a statement")
+    @Category({"SQL Compat", "Validation"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class PoolBorrow extends Event {
+        @Label("Database")
+        String database;
+
+        @Label("Acquired")
+        boolean acquired;
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: values up to 64ns are exact and
+ * above that every power of two is split into 32 buckets, which bounds the error of a reported
+ * percentile to about 3% while recording stays a couple of atomic increments.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int HALF = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} and returns the current {@link System#nanoTime()}
+     * so that consecutive phases can be chained without reading the clock twice.
+     */
+    long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Smallest recorded bucket bound below which {@code percentile} percent of the values fall.
+     */
+    long percentileNanos(double percentile) {
+        long n = count();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+
+    /**
+     * JSON object with count, total and p50/p90/p99/max in milliseconds.
+     */
+    String toJson() {
+        return "{\"count\":" + count()
+                + ",\"totalMillis\":" + millis(totalNanos())
+                + ",\"p50Millis\":" + millis(percentileNanos(50))
+                + ",\"p90Millis\":" + millis(percentileNanos(90))
+                + ",\"p99Millis\":" + millis(percentileNanos(99))
+                + ",\"maxMillis\":" + millis(maxNanos()) + "}";
+    }
+
+    String describe() {
+        return "p50 " + millis(percentileNanos(50)) + " ms, p90 " + millis(percentileNanos(90))
+                + " ms, p99 " + millis(percentileNanos(99)) + " ms, max " + millis(maxNanos()) + " ms";
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    static int indexOf(long value) {
+        if (value < 2L * HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * HALF) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
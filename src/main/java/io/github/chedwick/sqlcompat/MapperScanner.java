@@ -2,7 +2,12 @@ package io.github.chedwick.sqlcompat;
 
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.apache.ibatis.builder.CacheRefResolver;
+import org.apache.ibatis.builder.IncompleteElementException;
+import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
@@ -16,20 +21,40 @@ import org.w3c.dom.NodeList;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.xml.sax.InputSource;
@@ -40,13 +65,28 @@ import org.xml.sax.InputSource;
 public final class MapperScanner {
     private static final Pattern IF_TEST_TOKEN = Pattern.compile("([A-Za-z_][\\w\\.]+)");
     private static final Set<String> IF_TEST_KEYWORDS = Set.of("null", "and", "or", "not", "true", "false", "empty");
+    /**
+     * Marks a hint that names a {@code <foreach>} collection, which needs an iterable sample value.
+     */
+    private static final String COLLECTION_HINT = "[]";
+    private static final int SNIFF_BYTES = 4096;
+    /**
+     * Above this many candidates the sniffing is spread over the common pool.
+     */
+    private static final int PARALLEL_SNIFF_THRESHOLD = 64;
+    private static final List<String> DEFAULT_EXCLUDES = List.of(DirectoryScanner.DEFAULTEXCLUDES);
 
-    private final org.apache.maven.plugin.logging.Log log;
+    private final ValidatorLog log;
     private final List<String> directories;
     private final List<String> includes;
     private final List<String> excludes;
+    private ScanMetrics metrics = new ScanMetrics();
+    private ScanConfiguration shared;
+    private Children children = new Children(null);
+    private ParsedMappers prepared;
+    private MybatisConfig config;
 
-    public MapperScanner(org.apache.maven.plugin.logging.Log log,
+    public MapperScanner(ValidatorLog log,
                          List<String> directories,
                          List<String> includes,
                          List<String> excludes) {
@@ -57,9 +97,398 @@ public final class MapperScanner {
     }
 
     public List<SqlStatement> scan() throws IOException {
-        Map<String, SqlStatement> unique = new LinkedHashMap<>();
+        return scan(new StatementStore());
+    }
+
+    /**
+     * Scans into {@code store}, which drops duplicates and shares strings, files and parameter lists
+     * between the statements; each file's statements are added as soon as they are extracted.
+     */
+    List<SqlStatement> scan(StatementStore store) throws IOException {
+        prepare();
+        return complete(store);
+    }
+
+    /**
+     * Finds the mapper files and parses them into the shared configuration, leaving references to
+     * elements they do not declare for {@link #complete}; {@link #resolveReactor} may resolve them first.
+     */
+    void prepare() throws IOException {
+        prepared = new ParsedMappers(findMapperFiles(), Function.identity());
+    }
+
+    /**
+     * Lets the prepared scans of several modules resolve references to what the others declare: each
+     * shared configuration falls back to those of the other modules.
+     */
+    static void resolveReactor(List<MapperScanner> scanners) {
+        List<ScanConfiguration> configurations = new ArrayList<>();
+        for (MapperScanner scanner : scanners) {
+            configurations.add(scanner.prepared.primary.configuration);
+        }
+        for (ScanConfiguration configuration : configurations) {
+            List<ScanConfiguration> others = new ArrayList<>(configurations);
+            others.remove(configuration);
+            configuration.inherit(others);
+        }
+        // A module's references may wait for another module to resolve its own first.
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (ScanConfiguration configuration : configurations) {
+                progress |= retryPending(configuration);
+            }
+        }
+    }
+
+    /**
+     * Completes the prepared scan into {@code store}.
+     */
+    List<SqlStatement> complete(StatementStore store) throws IOException {
+        ParsedMappers mappers = prepared;
+        prepared = null;
+        List<SqlStatement> unique = new ArrayList<>();
+        mappers.complete(true, (file, statements) -> {
+            for (SqlStatement stmt : statements) {
+                SqlStatement stored = store.add(stmt);
+                if (stored == null) {
+                    log.info("Skipping duplicate mapped statement: " + stmt.fullId() + "|" + stmt.kind() + "|"
+                            + stmt.databaseId() + "|" + file.toAbsolutePath());
+                } else {
+                    unique.add(stored);
+                }
+            }
+        });
+        return unique;
+    }
+
+    /**
+     * Mapper files parsed into one shared {@link Configuration} so that references across files resolve;
+     * conflicting files are parsed on their own. For each declared {@code databaseId} only the files it
+     * can change are parsed again, against the shared configuration.
+     */
+    private final class ParsedMappers {
+        private final List<MapperSource> sources;
+        private final Map<String, Set<String>> ifParamHints = new HashMap<>();
+        private final Set<String> databaseIds = new TreeSet<>();
+        private final SharedPass primary;
+
+        ParsedMappers(List<Path> files, Function<Path, Path> sourceFile) throws IOException {
+            sources = new ArrayList<>(files.size());
+            for (Path file : files) {
+                sources.add(read(file, sourceFile.apply(file)));
+            }
+            primary = new SharedPass(newConfiguration(null), sources);
+        }
+
+        private MapperSource read(Path file, Path source) throws IOException {
+            long fileStart = System.nanoTime();
+            byte[] content;
+            try {
+                content = Files.readAllBytes(file);
+            } catch (IOException e) {
+                throw new IOException("Failed to parse mapper file " + source, e);
+            }
+            Element root;
+            try {
+                root = parseDocument(content).getDocumentElement();
+            } catch (Exception e) {
+                throw new IOException("Failed to parse mapper file " + source, e);
+            }
+            String namespace = root.getAttribute("namespace");
+            collectIfParamHints(root, namespace, ifParamHints);
+            Set<String> declared = new HashSet<>();
+            collectDatabaseIds(root, declared);
+            databaseIds.addAll(declared);
+            Set<String> fragments = new HashSet<>();
+            Set<String> includes = new HashSet<>();
+            collectFragments(root, namespace, fragments, includes);
+            long domNanos = metrics.dom.recordSince(fileStart) - fileStart;
+            return new MapperSource(source, content, domNanos, namespace, declared, fragments, includes);
+        }
+
+        /**
+         * Resolves what is left, runs the variant passes and hands the statements to {@code sink} file by
+         * file, in order. A {@code project} scan keeps the shared configuration for later single files.
+         */
+        void complete(boolean project, BiConsumer<Path, List<SqlStatement>> sink) throws IOException {
+            reportUnresolved(primary.resolve(), null);
+            ScanConfiguration configuration = primary.configuration;
+            Children others = new Children(configuration);
+            if (project) {
+                shared = configuration;
+                children = others;
+            }
+            Map<String, SharedPass> variantPasses = new LinkedHashMap<>();
+            for (String databaseId : databaseIds) {
+                List<MapperSource> affected = variantSources(sources, databaseId, primary);
+                ScanConfiguration variant = newConfiguration(databaseId);
+                variant.inherit(List.of(configuration));
+                variant.hide(affected.stream().map(MapperSource::namespace).toList());
+                SharedPass pass = new SharedPass(variant, affected);
+                pass.resolve();
+                variantPasses.put(databaseId, pass);
+            }
+
+            for (MapperSource source : sources) {
+                Path file = source.file();
+                if (!primary.built(file)) {
+                    sink.accept(file, parseXml(source.content(), file, others));
+                    continue;
+                }
+                List<SqlStatement> collected = primary.extract(source, ifParamHints);
+                for (Map.Entry<String, SharedPass> variants : variantPasses.entrySet()) {
+                    if (variants.getValue().built(file)) {
+                        collected = withVariants(collected, variants.getValue().extract(source, ifParamHints),
+                                variants.getKey());
+                    }
+                }
+                sink.accept(file, collected);
+            }
+        }
+    }
+
+    /**
+     * A mapper file read for a scan, with what its DOM tells about its {@code databaseId} variants and the
+     * fragments it declares and includes.
+     */
+    private record MapperSource(Path file, byte[] content, long domNanos, String namespace, Set<String> databaseIds,
+                                Set<String> fragments, Set<String> includes) {
+    }
+
+    /**
+     * The built sources MyBatis may render differently for {@code databaseId}: those declaring variants
+     * for it and, transitively, those including a fragment of one. An include whose refid is a
+     * {@code ${}} expression may name any fragment, so its file is parsed again too.
+     */
+    private static List<MapperSource> variantSources(List<MapperSource> sources, String databaseId, SharedPass built) {
+        Set<Path> selected = new HashSet<>();
+        Set<String> fragments = new HashSet<>();
+        for (MapperSource source : sources) {
+            if (source.databaseIds().contains(databaseId)) {
+                selected.add(source.file());
+                fragments.addAll(source.fragments());
+            }
+        }
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (MapperSource source : sources) {
+                if (!selected.contains(source.file()) && includesAny(source.includes(), fragments)) {
+                    selected.add(source.file());
+                    fragments.addAll(source.fragments());
+                    grown = true;
+                }
+            }
+        }
+        List<MapperSource> affected = new ArrayList<>();
+        for (MapperSource source : sources) {
+            if (selected.contains(source.file()) && built.built(source.file())) {
+                affected.add(source);
+            }
+        }
+        return affected;
+    }
+
+    private static boolean includesAny(Set<String> includes, Set<String> fragments) {
+        for (String refid : includes) {
+            if (refid.contains("${") || fragments.contains(refid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One parse of the sources into a shared configuration, whose statements are then extracted file by
+     * file. The default pass (no {@code databaseId}) records metrics; a file failing to build in it is
+     * parsed on its own, one failing in a variant pass keeps its default statements.
+     */
+    private final class SharedPass {
+        private final ScanConfiguration configuration;
+        private final boolean primary;
+        private final Map<String, Path> byResource = new HashMap<>();
+        private final Map<Path, Long> buildNanos = new HashMap<>();
+        private final Map<Path, JfrEvents.MapperParse> events = new HashMap<>();
+        private final Map<Path, List<MappedStatement>> byFile = new HashMap<>();
+
+        SharedPass(ScanConfiguration configuration, List<MapperSource> sources) {
+            this.configuration = configuration;
+            String databaseId = configuration.getDatabaseId();
+            primary = databaseId == null;
+            for (MapperSource source : sources) {
+                Path file = source.file();
+                long start = System.nanoTime();
+                JfrEvents.MapperParse event = JfrEvents.beginMapperParse();
+                try (InputStream is = new ByteArrayInputStream(source.content())) {
+                    new XMLMapperBuilder(is, configuration, file.toString(), configuration.getSqlFragments()).parse();
+                    if (event != null) {
+                        event.end();
+                        events.put(file, event);
+                    }
+                    byResource.put(file.toString(), file);
+                    buildNanos.put(file, (primary ? metrics.build.recordSince(start) : System.nanoTime()) - start);
+                } catch (Exception e) {
+                    log.debug(primary ? "Parsing " + file + " on its own: " + e.getMessage()
+                            : "Skipping " + databaseId + " variants of " + file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Resolves the pending references and groups the statements by file.
+         *
+         * @return the number of elements left unresolved and dropped
+         */
+        int resolve() {
+            int unresolved = resolvePending(configuration);
+            for (String name : configuration.getMappedStatementNames()) {
+                // The statement map also holds every statement under its short id, possibly ambiguous.
+                if (!name.contains(".")) {
+                    continue;
+                }
+                MappedStatement ms = configuration.getMappedStatement(name, false);
+                Path file = byResource.get(ms.getResource());
+                if (file != null) {
+                    byFile.computeIfAbsent(file, k -> new ArrayList<>()).add(ms);
+                }
+            }
+            return unresolved;
+        }
+
+        boolean built(Path file) {
+            return buildNanos.containsKey(file);
+        }
+
+        List<SqlStatement> extract(MapperSource source, Map<String, Set<String>> ifParamHints) {
+            Path file = source.file();
+            long extractStart = System.nanoTime();
+            List<MappedStatement> statements = byFile.getOrDefault(file, new ArrayList<>());
+            statements.sort(Comparator.comparing(MappedStatement::getId));
+            List<SqlStatement> collected = MapperScanner.extract(statements, ifParamHints, file);
+            if (primary) {
+                long extractNanos = metrics.extract.recordSince(extractStart) - extractStart;
+                metrics.statements(collected.size());
+                metrics.file.record(source.domNanos() + buildNanos.get(file) + extractNanos);
+                commitParseEvent(events.get(file), file, collected.size(), source.content().length);
+            }
+            return collected;
+        }
+    }
+
+    /**
+     * Adds to the default statements those of a {@code databaseId} pass that MyBatis would render
+     * differently for that database: its own variants and statements including a variant fragment.
+     */
+    private static List<SqlStatement> withVariants(List<SqlStatement> defaults, List<SqlStatement> variants,
+                                                   String databaseId) {
+        Map<String, SqlStatement> byKey = new HashMap<>();
+        for (SqlStatement stmt : defaults) {
+            if (stmt.databaseId() == null) {
+                byKey.put(stmt.fullId() + "|" + stmt.kind(), stmt);
+            }
+        }
+        List<SqlStatement> combined = new ArrayList<>(defaults);
+        for (SqlStatement variant : variants) {
+            SqlStatement fallback = byKey.get(variant.fullId() + "|" + variant.kind());
+            if (fallback == null || variant.databaseId() != null || !fallback.rawSql().equals(variant.rawSql())) {
+                combined.add(variant.forDatabase(databaseId));
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * Collects the fragments the mapper declares and the refids it includes, qualified the way MyBatis
+     * qualifies them with the {@code namespace}.
+     */
+    private static void collectFragments(Element root, String namespace, Set<String> fragments, Set<String> includes) {
+        NodeList children = root.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element element && element.getTagName().equals("sql")) {
+                String id = element.getAttribute("id");
+                fragments.add(id.startsWith(namespace + ".") ? id : namespace + "." + id);
+            }
+        }
+        NodeList references = root.getElementsByTagName("include");
+        for (int i = 0; i < references.getLength(); i++) {
+            String refid = ((Element) references.item(i)).getAttribute("refid");
+            includes.add(refid.contains(".") || refid.contains("${") ? refid : namespace + "." + refid);
+        }
+    }
+
+    private static void collectDatabaseIds(Element root, Set<String> databaseIds) {
+        NodeList children = root.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element element && !element.getAttribute("databaseId").isBlank()) {
+                databaseIds.add(element.getAttribute("databaseId"));
+            }
+        }
+    }
+
+    /**
+     * Retries the elements MyBatis parked as incomplete until a round resolves none of them. Whatever is
+     * left references something no scanned file declares; it is counted and dropped so that the
+     * remaining statements can still be built.
+     */
+    private static int resolvePending(Configuration configuration) {
+        boolean progress = true;
+        while (progress) {
+            progress = retryPending(configuration);
+        }
+        int unresolved = configuration.getIncompleteCacheRefs().size() + configuration.getIncompleteResultMaps().size()
+                + configuration.getIncompleteStatements().size();
+        configuration.getIncompleteCacheRefs().clear();
+        configuration.getIncompleteResultMaps().clear();
+        configuration.getIncompleteStatements().clear();
+        return unresolved;
+    }
+
+    /**
+     * One round over the incomplete elements; tells whether any of them resolved.
+     */
+    private static boolean retryPending(Configuration configuration) {
+        return retry(configuration.getIncompleteCacheRefs(), CacheRefResolver::resolveCacheRef)
+                | retry(configuration.getIncompleteResultMaps(), ResultMapResolver::resolve)
+                | retry(configuration.getIncompleteStatements(), XMLStatementBuilder::parseStatementNode);
+    }
+
+    private void reportUnresolved(int unresolved, Path file) {
+        if (unresolved == 0) {
+            return;
+        }
+        log.warn(unresolved + " mapper element(s)" + (file == null ? "" : " in " + file)
+                + " reference fragments, result maps or caches that no scanned file declares");
+        for (int i = 0; i < unresolved; i++) {
+            metrics.skipped("unresolved reference");
+        }
+    }
+
+    private static <T> boolean retry(Collection<T> pending, Consumer<T> resolve) {
+        boolean progress = false;
+        synchronized (pending) {
+            for (Iterator<T> it = pending.iterator(); it.hasNext(); ) {
+                try {
+                    resolve.accept(it.next());
+                    it.remove();
+                    progress = true;
+                } catch (IncompleteElementException e) {
+                    // Still missing a reference; try again after the others.
+                }
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Lists the mapper files under the configured directories: files matching the include/exclude
+     * patterns whose first few KB show a {@code <mapper>} root element or the MyBatis mapper DOCTYPE.
+     * Other XML (Spring contexts, logging configs, ...) is skipped without being parsed.
+     */
+    public List<Path> findMapperFiles() {
+        List<Path> files = new ArrayList<>();
+        List<String> includePatterns = includes.isEmpty() ? List.of("**/*.xml") : includes;
         for (String dir : directories) {
-            
             Path base = Path.of(dir);
             if (!Files.exists(base)) {
                 log.warn("Mapper directory does not exist: " + base);
@@ -67,72 +496,480 @@ public final class MapperScanner {
             }
 
             log.info("Scanning mapper directory: " + base.toAbsolutePath());
-            DirectoryScanner scanner = new DirectoryScanner();
-            scanner.setBasedir(base.toFile());
-            String[] includePatterns = includes.isEmpty() ? new String[] {"**/*.xml"} : includes.toArray(new String[0]);
-            scanner.setIncludes(includePatterns);
-            scanner.setExcludes(excludes.toArray(new String[0]));
             if (includes.isEmpty()) {
                 log.info("Include patterns: <none provided> (defaulting to **/*.xml)");
             } else {
                 log.info("Include patterns: " + includes);
             }
             log.info("Exclude patterns: " + excludes);
-            scanner.addDefaultExcludes();
-            scanner.scan();
-            String[] included = scanner.getIncludedFiles();
-            log.info("Included files (" + included.length + "): " + String.join(", ", included));
+            List<Path> candidates = walk(base, includePatterns);
+            List<String> reasons = (candidates.size() > PARALLEL_SNIFF_THRESHOLD ? candidates.parallelStream() : candidates.stream())
+                    .map(MapperScanner::skipReason)
+                    .toList();
+            List<String> included = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                Path file = candidates.get(i);
+                if (reasons.get(i) != null) {
+                    metrics.skipped(reasons.get(i));
+                    continue;
+                }
+                included.add(base.relativize(file).toString());
+                files.add(file);
+            }
+            log.info("Included files (" + included.size() + "): " + String.join(", ", included));
             for (String rel : included) {
                 Path file = base.resolve(rel);
                 log.info(" - found mapper: " + file.toUri() + " (name: " + file.getFileName() + ")");
-                for (SqlStatement stmt : parseFile(file)) {
-                    String key = stmt.fullId() + "|" + stmt.kind() + "|" + file.toAbsolutePath();
-                    if (unique.putIfAbsent(key, stmt) != null) {
-                        log.info("Skipping duplicate mapped statement: " + key);
+            }
+        }
+        if (!metrics.skipped().isEmpty()) {
+            log.info("Skipped non-mapper files: " + metrics.skipped());
+        }
+        return files;
+    }
+
+    /**
+     * Collects the files under {@code base} that match the patterns, sorted for a stable order. The
+     * usual VCS/IDE folders and directories that an exclude pattern covers as a whole, like
+     * {@code legacy/**}, are pruned instead of descended into; every other file is matched on its own,
+     * the way {@link DirectoryScanner} does, so a file pattern that happens to match a directory name
+     * does not hide the mappers below it. The top-level directories are walked in parallel.
+     */
+    private List<Path> walk(Path base, List<String> includePatterns) {
+        List<String> directoryExcludes = directoryPatterns(excludes);
+        List<Path> subtrees = new ArrayList<>();
+        List<Path> matched = walk(base, base, includePatterns, directoryExcludes, subtrees);
+        List<List<Path>> below = (subtrees.size() > 1 ? subtrees.parallelStream() : subtrees.stream())
+                .map(dir -> walk(base, dir, includePatterns, directoryExcludes, null))
+                .toList();
+        below.forEach(matched::addAll);
+        matched.sort(Comparator.naturalOrder());
+        return matched;
+    }
+
+    /**
+     * Walks the tree at {@code start}; given {@code subtrees}, only its top level, collecting the
+     * directories not pruned there instead of descending into them.
+     */
+    private List<Path> walk(Path base, Path start, List<String> includePatterns, List<String> directoryExcludes,
+                            List<Path> subtrees) {
+        List<Path> matched = new ArrayList<>();
+        int maxDepth = subtrees == null ? Integer.MAX_VALUE : 1;
+        try {
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return pruned(base, dir, directoryExcludes) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isDirectory()) {
+                        // Only reported at the depth limit of a top-level walk.
+                        if (!pruned(base, file, directoryExcludes)) {
+                            subtrees.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String rel = base.relativize(file).toString();
+                    if (!attrs.isRegularFile() || !matchesAny(includePatterns, rel) || matchesAny(DEFAULT_EXCLUDES, rel)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (matchesAny(excludes, rel)) {
+                        metrics.skipped("excluded by pattern");
+                    } else {
+                        matched.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.warn("Cannot read " + file + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to walk mapper directory " + start + ": " + e.getMessage());
+        }
+        return matched;
+    }
+
+    private static boolean pruned(Path base, Path dir, List<String> directoryExcludes) {
+        String rel = base.relativize(dir).toString();
+        return !rel.isEmpty() && (matchesAny(DEFAULT_EXCLUDES, rel) || matchesAny(directoryExcludes, rel));
+    }
+
+    /**
+     * Tells whether the head of the file looks like a MyBatis mapper.
+     */
+    public boolean looksLikeMapper(Path file) {
+        return skipReason(file) == null;
+    }
+
+    /**
+     * Reads at most {@link #SNIFF_BYTES} and returns why the file is not a mapper, or null if it is one
+     * or the head is inconclusive (for example a very long leading comment); those go to the parser.
+     */
+    static String skipReason(Path file) {
+        byte[] head;
+        try (InputStream in = Files.newInputStream(file)) {
+            head = in.readNBytes(SNIFF_BYTES);
+        } catch (IOException e) {
+            return "unreadable";
+        }
+        if (head.length == 0) {
+            return "empty file";
+        }
+        String text = new String(head, StandardCharsets.UTF_8);
+        int i = 0;
+        while (true) {
+            int lt = text.indexOf('<', i);
+            if (lt < 0 || lt + 1 >= text.length()) {
+                return null;
+            }
+            if (text.startsWith("<?", lt)) {
+                i = endOf(text, "?>", lt);
+            } else if (text.startsWith("<!--", lt)) {
+                i = endOf(text, "-->", lt);
+            } else if (text.regionMatches(true, lt, "<!DOCTYPE", 0, 9)) {
+                int end = text.indexOf('>', lt);
+                int subset = text.indexOf('[', lt);
+                if (subset >= 0 && (end < 0 || subset < end)) {
+                    end = text.indexOf("]>", subset);
+                }
+                String doctype = end < 0 ? text.substring(lt) : text.substring(lt, end);
+                if (doctype.contains("DTD Mapper")) {
+                    return null;
+                }
+                i = end;
+            } else {
+                int nameEnd = lt + 1;
+                while (nameEnd < text.length() && isNameChar(text.charAt(nameEnd))) {
+                    nameEnd++;
+                }
+                if (nameEnd == text.length()) {
+                    return null;
+                }
+                String name = text.substring(lt + 1, nameEnd);
+                if (name.equals("mapper") || name.endsWith(":mapper")) {
+                    return null;
+                }
+                return name.isEmpty() ? "not XML" : "root <" + name + ">";
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+    }
+
+    private static int endOf(String text, String terminator, int from) {
+        int end = text.indexOf(terminator, from);
+        return end < 0 ? -1 : end + terminator.length();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == ':' || c == '-' || c == '.';
+    }
+
+    /**
+     * Parses the mapper entries of a JAR in place through the zip file system, applying the same
+     * include/exclude patterns and sniffing as for directories. Statements are attributed to
+     * {@code <jar>!/<entry>}.
+     * <p>
+     * The entries are parsed together in a shared configuration of their own, so references between
+     * them resolve while nothing the project declares leaks in; the statements depend on the JAR only
+     * and can be cached by its checksum.
+     */
+    public List<SqlStatement> scanJar(Path jar) throws IOException {
+        List<String> includePatterns = includes.isEmpty() ? List.of("**/*.xml") : includes;
+        List<SqlStatement> statements = new ArrayList<>();
+        try (FileSystem zip = FileSystems.newFileSystem(jar)) {
+            List<Path> entries = new ArrayList<>();
+            for (Path root : zip.getRootDirectories()) {
+                for (Path entry : walk(root, includePatterns)) {
+                    String reason = skipReason(entry);
+                    if (reason != null) {
+                        metrics.skipped(reason);
+                    } else {
+                        entries.add(entry);
                     }
                 }
             }
+            new ParsedMappers(entries, entry -> Path.of(jar.toString() + "!" + entry))
+                    .complete(false, (entry, parsed) -> statements.addAll(parsed));
+        }
+        return statements;
+    }
+
+    /**
+     * Configured directories that currently exist.
+     */
+    public List<Path> baseDirectories() {
+        List<Path> bases = new ArrayList<>();
+        for (String dir : directories) {
+            Path base = Path.of(dir);
+            if (Files.isDirectory(base)) {
+                bases.add(base);
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * Tells whether a file lies under one of the configured directories and matches the patterns.
+     */
+    public boolean isMapperFile(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        for (String dir : directories) {
+            Path base = Path.of(dir).toAbsolutePath().normalize();
+            if (!absolute.startsWith(base)) {
+                continue;
+            }
+            String rel = base.relativize(absolute).toString();
+            List<String> includePatterns = includes.isEmpty() ? List.of("**/*.xml") : includes;
+            if (matchesAny(includePatterns, rel) && !matchesAny(excludes, rel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single mapper file, e.g. after it changed on disk.
+     */
+    public List<SqlStatement> parseMapper(Path file) throws IOException {
+        return parseFile(file);
+    }
+
+    /**
+     * Phase timings of every file parsed by this scanner so far.
+     */
+    ScanMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Records phase timings into {@code metrics}, e.g. one shared by the scanners of several modules.
+     */
+    void metrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The directories matched by the patterns that exclude everything below a directory, i.e. end in
+     * {@code /**} or a separator.
+     */
+    private static List<String> directoryPatterns(List<String> patterns) {
+        List<String> directories = new ArrayList<>();
+        for (String pattern : patterns) {
+            String normalized = pattern.replace('\\', '/');
+            if (normalized.endsWith("/**")) {
+                directories.add(normalized.substring(0, normalized.length() - 3));
+            } else if (normalized.endsWith("/")) {
+                directories.add(normalized.substring(0, normalized.length() - 1));
+            }
         }
-        return new ArrayList<>(unique.values());
+        directories.removeIf(String::isEmpty);
+        return directories;
+    }
+
+    private static boolean matchesAny(List<String> patterns, String relativePath) {
+        for (String pattern : patterns) {
+            String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (normalized.endsWith(File.separator)) {
+                normalized += "**";
+            }
+            if (SelectorUtils.matchPath(normalized, relativePath.replace('/', File.separatorChar))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private List<SqlStatement> parseFile(Path file) throws IOException {
+        return parseContent(file, file);
+    }
+
+    /**
+     * Parses {@code file}, which may live in a zip file system, attributing the statements to
+     * {@code sourceFile}. The content is read once and fed to both the DOM pass and MyBatis.
+     */
+    private List<SqlStatement> parseContent(Path file, Path sourceFile) throws IOException {
+        byte[] content;
         try {
-            DocumentBuilderFactory factory = newDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            // Ignore external DTD fetches but allow DOCTYPE declarations common in MyBatis XML.
-            builder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
-            Document doc = builder.parse(file.toFile());
-            Element root = doc.getDocumentElement();
+            content = Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new IOException("Failed to parse mapper file " + sourceFile, e);
+        }
+        return parseXml(content, sourceFile);
+    }
+
+    /**
+     * Parses mapper XML held in memory, e.g. generated from annotations, attributing the statements
+     * to {@code sourceFile}. References to other files resolve against what the last {@link #scan()} found.
+     */
+    List<SqlStatement> parseXml(byte[] content, Path sourceFile) throws IOException {
+        return parseXml(content, sourceFile, children);
+    }
+
+    private List<SqlStatement> parseXml(byte[] content, Path sourceFile, Children children) throws IOException {
+        long fileStart = System.nanoTime();
+        JfrEvents.MapperParse event = JfrEvents.beginMapperParse();
+        int statementCount = 0;
+        try {
+            Element root = parseDocument(content).getDocumentElement();
             String namespace = root.getAttribute("namespace");
+            Map<String, Set<String>> ifParamHints = new HashMap<>();
+            collectIfParamHints(root, namespace, ifParamHints);
+            Set<String> databaseIds = new TreeSet<>();
+            collectDatabaseIds(root, databaseIds);
+            long phaseStart = metrics.dom.recordSince(fileStart);
 
-            Map<String, Set<String>> ifParamHints = collectIfParamHints(root, namespace);
+            List<SqlStatement> collected = isolatedPass(content, sourceFile, namespace, children, ifParamHints, null, phaseStart);
+            for (String databaseId : databaseIds) {
+                collected = withVariants(collected,
+                        isolatedPass(content, sourceFile, namespace, children, ifParamHints, databaseId, 0), databaseId);
+            }
+            metrics.statements(collected.size());
+            statementCount = collected.size();
+            return collected;
+        } catch (Exception e) {
+            throw new IOException("Failed to parse mapper file " + sourceFile, e);
+        } finally {
+            metrics.file.recordSince(fileStart);
+            commitParseEvent(event, sourceFile, statementCount, content.length);
+        }
+    }
 
-            Configuration configuration = new Configuration();
-            try (InputStream is = Files.newInputStream(file)) {
-                XMLMapperBuilder mapperBuilder = new XMLMapperBuilder(is, configuration, file.toString(), configuration.getSqlFragments());
+    /**
+     * Parses one file for {@code databaseId} into a configuration of {@code children}, recording phase
+     * metrics for the default pass, which starts at {@code phaseStart}.
+     */
+    private List<SqlStatement> isolatedPass(byte[] content, Path sourceFile, String namespace, Children children,
+                                            Map<String, Set<String>> ifParamHints, String databaseId,
+                                            long phaseStart) throws IOException {
+        boolean primary = databaseId == null;
+        ScanConfiguration configuration = children.acquire(databaseId, namespace);
+        try {
+            try (InputStream is = new ByteArrayInputStream(content)) {
+                XMLMapperBuilder mapperBuilder = new XMLMapperBuilder(is, configuration, sourceFile.toString(), configuration.getSqlFragments());
                 mapperBuilder.parse();
             }
+            int unresolved = resolvePending(configuration);
+            if (primary) {
+                reportUnresolved(unresolved, sourceFile);
+                phaseStart = metrics.build.recordSince(phaseStart);
+            }
 
-            List<SqlStatement> collected = new ArrayList<>();
-            for (MappedStatement ms : configuration.getMappedStatements()) {
-                if (ms.getId().contains("!selectKey")) {
-                    continue;
-                }
-                SqlStatement.Kind kind = toKind(ms.getSqlCommandType());
-                if (kind == SqlStatement.Kind.UNKNOWN) {
-                    continue;
+            List<MappedStatement> statements = new ArrayList<>();
+            for (String name : configuration.getMappedStatementNames()) {
+                if (name.contains(".")) {
+                    statements.add(configuration.getMappedStatement(name, false));
                 }
-                BoundSql boundSql = ms.getBoundSql(buildSampleParams(ifParamHints.getOrDefault(ms.getId(), Collections.emptySet())));
-                List<ParameterSpec> params = toParameterSpecs(boundSql.getParameterMappings());
-                String fullId = ms.getId();
-                String ns = extractNamespace(fullId);
-                String id = extractId(fullId);
-                collected.add(new SqlStatement(id, ns.isBlank() ? namespace : ns, kind, file, normalizeWhitespace(boundSql.getSql()), params));
+            }
+            statements.sort(Comparator.comparing(MappedStatement::getId));
+            List<SqlStatement> collected = extract(statements, ifParamHints, sourceFile);
+            if (primary) {
+                metrics.extract.recordSince(phaseStart);
             }
             return collected;
-        } catch (Exception e) {
-            throw new IOException("Failed to parse mapper file " + file, e);
+        } finally {
+            children.release(configuration);
+        }
+    }
+
+    /**
+     * Configurations for parsing single files against {@code parent}, which hide the file's namespace.
+     * They are reset and reused, one per {@code databaseId} and concurrent parse, instead of built anew.
+     */
+    private final class Children {
+        private final ScanConfiguration parent;
+        private final Map<String, Queue<ScanConfiguration>> idle = new ConcurrentHashMap<>();
+
+        Children(ScanConfiguration parent) {
+            this.parent = parent;
+        }
+
+        ScanConfiguration acquire(String databaseId, String namespace) {
+            ScanConfiguration configuration = idle(databaseId).poll();
+            if (configuration == null) {
+                configuration = newConfiguration(databaseId);
+                if (parent != null) {
+                    configuration.inherit(List.of(parent));
+                }
+            }
+            if (!namespace.isBlank()) {
+                configuration.hide(List.of(namespace));
+            }
+            return configuration;
+        }
+
+        void release(ScanConfiguration configuration) {
+            configuration.reset();
+            idle(configuration.getDatabaseId()).offer(configuration);
+        }
+
+        private Queue<ScanConfiguration> idle(String databaseId) {
+            return idle.computeIfAbsent(databaseId == null ? "" : databaseId, k -> new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Uses the project's MyBatis config (settings, aliases, type handlers) for every configuration
+     * mappers are parsed into; null for MyBatis defaults.
+     */
+    void config(MybatisConfig config) {
+        this.config = config;
+        this.children = new Children(shared);
+    }
+
+    private ScanConfiguration newConfiguration(String databaseId) {
+        if (config != null) {
+            return config.newConfiguration(databaseId);
+        }
+        ScanConfiguration configuration = new ScanConfiguration();
+        configuration.setDatabaseId(databaseId);
+        return configuration;
+    }
+
+    static Document parseDocument(byte[] content) throws Exception {
+        DocumentBuilderFactory factory = newDocumentBuilderFactory();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        // Ignore external DTD fetches but allow DOCTYPE declarations common in MyBatis XML.
+        builder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
+        return builder.parse(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Renders each statement with sample parameters derived from its {@code <if>} hints.
+     */
+    private static List<SqlStatement> extract(List<MappedStatement> statements, Map<String, Set<String>> ifParamHints,
+                                              Path sourceFile) {
+        List<SqlStatement> collected = new ArrayList<>();
+        for (MappedStatement ms : statements) {
+            if (ms.getId().contains("!selectKey")) {
+                continue;
+            }
+            SqlStatement.Kind kind = toKind(ms.getSqlCommandType());
+            if (kind == SqlStatement.Kind.UNKNOWN) {
+                continue;
+            }
+            BoundSql boundSql = ms.getBoundSql(buildSampleParams(ifParamHints.getOrDefault(ms.getId(), Collections.emptySet())));
+            List<ParameterSpec> params = toParameterSpecs(boundSql.getParameterMappings());
+            String fullId = ms.getId();
+            collected.add(new SqlStatement(extractId(fullId), extractNamespace(fullId), kind, sourceFile,
+                    normalizeWhitespace(boundSql.getSql()), params, ms.getDatabaseId()));
+        }
+        return collected;
+    }
+
+    private static void commitParseEvent(JfrEvents.MapperParse event, Path sourceFile, int statementCount, long bytes) {
+        if (event != null && event.shouldCommit()) {
+            event.path = sourceFile.toString();
+            event.statementCount = statementCount;
+            event.bytes = bytes;
+            event.commit();
         }
     }
 
@@ -144,8 +981,7 @@ public final class MapperScanner {
         return collapsed.replaceAll(" +", " ").trim();
     }
 
-    private static Map<String, Set<String>> collectIfParamHints(Element root, String namespace) {
-        Map<String, Set<String>> hints = new HashMap<>();
+    private static void collectIfParamHints(Element root, String namespace, Map<String, Set<String>> hints) {
         NodeList children = root.getChildNodes();
         for (int i = 0; i < children.getLength(); i++) {
             Node node = children.item(i);
@@ -162,11 +998,9 @@ public final class MapperScanner {
                 id = "<unnamed>";
             }
             String fullId = namespace == null || namespace.isBlank() ? id : namespace + "." + id;
-            Set<String> params = new HashSet<>();
-            collectIfTests(element, params);
-            hints.put(fullId, params);
+            // databaseId variants share an id; sample values for the union of their tests suit each.
+            collectIfTests(element, hints.computeIfAbsent(fullId, k -> new HashSet<>()));
         }
-        return hints;
     }
 
     private static void collectIfTests(Node node, Set<String> collector) {
@@ -174,6 +1008,9 @@ public final class MapperScanner {
             return;
         }
         Element el = (Element) node;
+        if ("foreach".equalsIgnoreCase(el.getNodeName()) && StringUtils.isNotBlank(el.getAttribute("collection"))) {
+            collector.add(el.getAttribute("collection").trim() + COLLECTION_HINT);
+        }
         if ("if".equalsIgnoreCase(el.getNodeName())) {
             String test = el.getAttribute("test");
             if (StringUtils.isNotBlank(test)) {
@@ -198,12 +1035,18 @@ public final class MapperScanner {
             if (StringUtils.isBlank(name)) {
                 continue;
             }
-            String[] parts = name.split("\\.");
+            boolean collection = name.endsWith(COLLECTION_HINT);
+            String path = collection ? name.substring(0, name.length() - COLLECTION_HINT.length()) : name;
+            String[] parts = path.split("\\.");
             DefaultParamMap current = root;
             for (int i = 0; i < parts.length; i++) {
                 String part = parts[i];
                 if (i == parts.length - 1) {
-                    current.putIfAbsent(part, DefaultParamMap.SAMPLE_VALUE);
+                    if (collection) {
+                        current.put(part, List.of(DefaultParamMap.SAMPLE_VALUE));
+                    } else {
+                        current.putIfAbsent(part, DefaultParamMap.SAMPLE_VALUE);
+                    }
                 } else {
                     Object next = current.get(part);
                     if (!(next instanceof DefaultParamMap)) {
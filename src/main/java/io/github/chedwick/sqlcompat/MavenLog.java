@@ -0,0 +1,34 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Routes scanner and validator output to the Maven log of the running goal.
+ */
+final class MavenLog implements ValidatorLog {
+    private final Log log;
+
+    MavenLog(Log log) {
+        this.log = log;
+    }
+
+    @Override
+    public void debug(String message) {
+        log.debug(message);
+    }
+
+    @Override
+    public void info(String message) {
+        log.info(message);
+    }
+
+    @Override
+    public void warn(String message) {
+        log.warn(message);
+    }
+
+    @Override
+    public void error(String message) {
+        log.error(message);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the reports written by sharded validate-sql runs into a single sql-valid-report.json.
+ */
+@Mojo(name = "merge-reports", requiresProject = false, threadSafe = true)
+public class MergeReportsMojo extends AbstractMojo {
+
+    /**
+     * Explicit shard report files to merge.
+     */
+    @Parameter(property = "mergeReports.reports")
+    private List<String> reports = new ArrayList<>();
+
+    /**
+     * Directory searched for shard reports in addition to the explicit list.
+     */
+    @Parameter(property = "mergeReports.directory")
+    private String reportDirectory;
+
+    @Parameter(property = "mergeReports.includes")
+    private List<String> reportIncludes = Arrays.asList("**/sql-valid-report*.json", "**/sql-valid-report*.jsonl");
+
+    @Parameter(property = "mergeReports.outputPath", defaultValue = "${project.build.directory}/sql-valid-report.json")
+    private String outputPath;
+
+    /**
+     * Fail the build when the merged report contains failures or shards are missing.
+     */
+    @Parameter(property = "mergeReports.failOnFailures", defaultValue = "true")
+    private boolean failOnFailures;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        Path out = Path.of(outputPath).toAbsolutePath().normalize();
+        List<Path> inputs = collectInputs(out);
+        if (inputs.isEmpty()) {
+            throw new MojoExecutionException("No shard reports found to merge");
+        }
+        ReportMerger merger = new ReportMerger();
+        for (Path input : inputs) {
+            getLog().info("Merging report " + input);
+            try {
+                merger.add(input);
+            } catch (Exception e) {
+                throw new MojoExecutionException("Failed to read report " + input, e);
+            }
+        }
+        Map<Long, String> plans = merger.conflictingPlans();
+        if (!plans.isEmpty()) {
+            throw new MojoExecutionException("Shards disagree on which statements each one owns (plan per shard: "
+                    + plans + "); they scanned different mappers or balanced by different histories, so statements"
+                    + " may have been validated twice or not at all. Share one history directory across all shards or"
+                    + " drop shardByDuration.");
+        }
+        try {
+            Path parent = out.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(out, merger.toJson(), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to write merged report " + out, e);
+        }
+        getLog().info("Merged " + merger.reportCount() + " report(s) into " + out + ": "
+                + merger.failures() + " failure(s) out of " + merger.total());
+        List<Long> missing = merger.missingShards();
+        if (!missing.isEmpty()) {
+            getLog().warn("Missing reports for shard(s) " + missing);
+        }
+        if (failOnFailures && (merger.failures() > 0 || !missing.isEmpty())) {
+            throw new MojoExecutionException("Merged validation report has " + merger.failures()
+                    + " failure(s) and " + missing.size() + " missing shard(s)");
+        }
+    }
+
+    private List<Path> collectInputs(Path out) {
+        List<Path> inputs = new ArrayList<>();
+        if (reports != null) {
+            for (String report : reports) {
+                inputs.add(Path.of(report).toAbsolutePath().normalize());
+            }
+        }
+        if (reportDirectory != null && !reportDirectory.isBlank()) {
+            Path base = Path.of(reportDirectory);
+            if (!Files.isDirectory(base)) {
+                getLog().warn("Report directory does not exist: " + base);
+            } else {
+                DirectoryScanner scanner = new DirectoryScanner();
+                scanner.setBasedir(base.toFile());
+                scanner.setIncludes(reportIncludes.toArray(new String[0]));
+                scanner.scan();
+                for (String rel : scanner.getIncludedFiles()) {
+                    Path file = base.resolve(rel).toAbsolutePath().normalize();
+                    if (!file.equals(out) && !inputs.contains(file)) {
+                        inputs.add(file);
+                    }
+                }
+            }
+        }
+        inputs.remove(out);
+        return inputs;
+    }
+}
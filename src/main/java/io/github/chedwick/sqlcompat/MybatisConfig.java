@@ -0,0 +1,228 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.DatabaseIdProvider;
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeAliasRegistry;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.sql.DataSource;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A project's {@code mybatis-config.xml}, reduced to what affects how mappers are parsed and rendered:
+ * properties, settings, type aliases and type handlers. The {@code databaseIdProvider} is kept aside to
+ * resolve the {@code databaseId} of each validated database.
+ * <p>
+ * Elements that only matter at runtime ({@code environments}, {@code mappers}, {@code plugins},
+ * object factories) are dropped, as are aliases, handlers and class-valued settings naming classes
+ * that are not on the plugin classpath.
+ */
+final class MybatisConfig {
+    private static final Set<String> RUNTIME_ELEMENTS = Set.of(
+            "environments", "mappers", "plugins", "objectFactory", "objectWrapperFactory", "reflectorFactory",
+            "databaseIdProvider");
+    private static final Set<String> CLASS_SETTINGS = Set.of(
+            "defaultScriptingLanguage", "defaultEnumTypeHandler", "defaultSqlProviderType");
+    private static final Set<String> RUNTIME_SETTINGS = Set.of(
+            "logImpl", "vfsImpl", "proxyFactory", "configurationFactory");
+    private static final TypeAliasRegistry BUILT_IN_ALIASES = new Configuration().getTypeAliasRegistry();
+
+    private final Path file;
+    private final byte[] reduced;
+    private final DatabaseIdProvider databaseIdProvider;
+    private final String fingerprint;
+
+    private MybatisConfig(Path file, byte[] reduced, DatabaseIdProvider databaseIdProvider, String fingerprint) {
+        this.file = file;
+        this.reduced = reduced;
+        this.databaseIdProvider = databaseIdProvider;
+        this.fingerprint = fingerprint;
+    }
+
+    static MybatisConfig load(Path file, ValidatorLog log) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        try {
+            Document doc = MapperScanner.parseDocument(content);
+            Element root = doc.getDocumentElement();
+            DatabaseIdProvider provider = null;
+            for (Element child : children(root)) {
+                String name = child.getTagName();
+                if (name.equals("databaseIdProvider")) {
+                    provider = databaseIdProvider(child, log);
+                }
+                if (RUNTIME_ELEMENTS.contains(name)) {
+                    root.removeChild(child);
+                } else if (name.equals("properties")) {
+                    resolvePropertiesResource(child, file);
+                } else if (name.equals("settings")) {
+                    reduceSettings(child, log);
+                    if (children(child).isEmpty()) {
+                        root.removeChild(child);
+                    }
+                } else if (name.equals("typeAliases") || name.equals("typeHandlers")) {
+                    reduceTypes(child, log);
+                }
+            }
+            // XMLConfigBuilder validates against the DTD, which MyBatis resolves from its own jar.
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "-//mybatis.org//DTD Config 3.0//EN");
+            transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, "https://mybatis.org/dtd/mybatis-3-config.dtd");
+            ByteArrayOutputStream reduced = new ByteArrayOutputStream();
+            transformer.transform(new DOMSource(doc), new StreamResult(reduced));
+            MybatisConfig config = new MybatisConfig(file, reduced.toByteArray(), provider, Checksums.sha256(content));
+            config.newConfiguration(null);
+            return config;
+        } catch (Exception e) {
+            throw new IOException("Failed to load MyBatis config " + file, e);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Changes whenever the config file does, for keying caches of parsed statements.
+     */
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * A fresh configuration with the project's settings, selecting statement variants for
+     * {@code databaseId} the way MyBatis does (null selects only statements without one).
+     */
+    ScanConfiguration newConfiguration(String databaseId) {
+        XMLConfigBuilder builder = new XMLConfigBuilder(ScanConfiguration.class, new ByteArrayInputStream(reduced), null, null);
+        ScanConfiguration configuration = (ScanConfiguration) builder.parse();
+        configuration.setDatabaseId(databaseId);
+        return configuration;
+    }
+
+    /**
+     * The {@code databaseId} MyBatis would use for {@code dataSource}, or null without a provider.
+     */
+    String databaseId(DataSource dataSource) throws Exception {
+        return databaseIdProvider == null ? null : databaseIdProvider.getDatabaseId(dataSource);
+    }
+
+    boolean hasDatabaseIdProvider() {
+        return databaseIdProvider != null;
+    }
+
+    /**
+     * The configured provider, or null when it is a project class the plugin cannot load; the
+     * {@code databaseId} of each database then has to be set explicitly.
+     */
+    private static DatabaseIdProvider databaseIdProvider(Element element, ValidatorLog log) {
+        String type = element.getAttribute("type");
+        DatabaseIdProvider provider;
+        if (type.isBlank() || type.equals("DB_VENDOR") || type.equals("VENDOR")) {
+            provider = new VendorDatabaseIdProvider();
+        } else {
+            try {
+                provider = (DatabaseIdProvider) Resources.classForName(type).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+                log.warn("Ignoring MyBatis databaseIdProvider " + type + ", which cannot be loaded from the plugin ("
+                        + e + "); set originDatabaseId and targetDatabaseId to validate databaseId variants");
+                return null;
+            }
+        }
+        provider.setProperties(properties(element));
+        return provider;
+    }
+
+    /**
+     * Classpath resources cannot be found from the plugin; look for them next to the config file.
+     */
+    private static void resolvePropertiesResource(Element element, Path file) {
+        String resource = element.getAttribute("resource");
+        if (resource.isBlank()) {
+            return;
+        }
+        element.removeAttribute("resource");
+        Path resolved = file.toAbsolutePath().getParent().resolve(resource);
+        if (Files.isRegularFile(resolved)) {
+            element.setAttribute("url", resolved.toUri().toString());
+        }
+    }
+
+    private static void reduceSettings(Element settings, ValidatorLog log) {
+        for (Element setting : children(settings)) {
+            String name = setting.getAttribute("name");
+            String value = setting.getAttribute("value");
+            if (RUNTIME_SETTINGS.contains(name) || CLASS_SETTINGS.contains(name) && !loadable(value)) {
+                log.debug("Ignoring MyBatis setting " + name + "=" + value);
+                settings.removeChild(setting);
+            }
+        }
+    }
+
+    private static void reduceTypes(Element types, ValidatorLog log) {
+        for (Element type : children(types)) {
+            String className = type.hasAttribute("handler") ? type.getAttribute("handler") : type.getAttribute("type");
+            String javaType = type.getAttribute("javaType");
+            // Packages are scanned on the classpath, where the project's classes are not.
+            if (type.getTagName().equals("package") || !loadable(className) || !javaType.isBlank() && !loadable(javaType)) {
+                log.debug("Ignoring MyBatis " + types.getTagName() + " entry "
+                        + (className.isBlank() ? type.getAttribute("name") : className) + " not on the plugin classpath");
+                types.removeChild(type);
+            }
+        }
+    }
+
+    private static boolean loadable(String className) {
+        if (className.isBlank()) {
+            return false;
+        }
+        if (BUILT_IN_ALIASES.getTypeAliases().containsKey(className.toLowerCase(Locale.ENGLISH))) {
+            return true;
+        }
+        try {
+            Resources.classForName(className);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Properties properties(Element element) {
+        Properties properties = new Properties();
+        for (Element property : children(element)) {
+            properties.setProperty(property.getAttribute("name"), property.getAttribute("value"));
+        }
+        return properties;
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) nodes.item(i));
+            }
+        }
+        return elements;
+    }
+}
@@ -44,6 +44,16 @@ public final class ParameterSpec {
         return new ParameterSpec(name.isEmpty() ? "param" : name, jdbcType);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ParameterSpec other && name.equals(other.name) && Objects.equals(jdbcType, other.jdbcType);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + Objects.hashCode(jdbcType);
+    }
+
     @Override
     public String toString() {
         return jdbcType == null ? name : name + ":" + jdbcType;
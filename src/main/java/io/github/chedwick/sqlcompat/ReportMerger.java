@@ -0,0 +1,182 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Combines the JSON reports written by individual shards into a single report with the same layout
+ * as an unsharded run. JSON Lines reports are accepted as input as well.
+ */
+final class ReportMerger {
+    private long total;
+    private long failures;
+    private boolean deadlineExceeded;
+    private final Map<String, Map<String, Object>> databases = new LinkedHashMap<>();
+    private final Map<String, List<Object>> entriesByDatabase = new LinkedHashMap<>();
+    private final TreeSet<Long> shardIndexes = new TreeSet<>();
+    private final Map<Long, String> shardPlans = new TreeMap<>();
+    private long shardCount;
+    private int reports;
+
+    void add(Path report) throws IOException {
+        String json = Files.readString(report, StandardCharsets.UTF_8);
+        try {
+            add(json);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed report " + report + ": " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void add(String json) {
+        if (json.stripLeading().startsWith("{\"type\":")) {
+            addLines(json);
+            return;
+        }
+        if (!(Json.parse(json) instanceof Map<?, ?> parsed)) {
+            throw new IllegalArgumentException("Report root is not an object");
+        }
+        merge((Map<String, Object>) parsed);
+    }
+
+    /**
+     * Folds a JSON Lines report: entry lines are grouped by database, the summary line supplies the
+     * top-level fields.
+     */
+    @SuppressWarnings("unchecked")
+    private void addLines(String jsonl) {
+        Map<String, Object> root = null;
+        Map<String, Object> byDatabase = new LinkedHashMap<>();
+        for (String line : jsonl.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (!(Json.parse(line) instanceof Map<?, ?> parsed)) {
+                throw new IllegalArgumentException("Report line is not an object");
+            }
+            Map<String, Object> record = (Map<String, Object>) parsed;
+            Object type = record.remove("type");
+            if ("summary".equals(type)) {
+                root = record;
+            } else if ("entry".equals(type)) {
+                ((List<Object>) byDatabase.computeIfAbsent(String.valueOf(record.get("database")),
+                        k -> new ArrayList<>())).add(record);
+            }
+        }
+        if (root == null) {
+            throw new IllegalArgumentException("Report has no summary line, the run may not have finished");
+        }
+        root.put("entriesByDatabase", byDatabase);
+        merge(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void merge(Map<String, Object> root) {
+        reports++;
+        total += asLong(root.get("total"));
+        failures += asLong(root.get("failures"));
+        deadlineExceeded |= Boolean.TRUE.equals(root.get("deadlineExceeded"));
+        if (root.get("shard") instanceof Map<?, ?> shard) {
+            shardIndexes.add(asLong(shard.get("index")));
+            if (shard.get("plan") instanceof String plan) {
+                shardPlans.put(asLong(shard.get("index")), plan);
+            }
+            shardCount = Math.max(shardCount, asLong(shard.get("count")));
+        }
+        if (root.get("databases") instanceof List<?> dbs) {
+            for (Object db : dbs) {
+                if (db instanceof Map<?, ?> summary) {
+                    mergeSummary((Map<String, Object>) summary);
+                }
+            }
+        }
+        if (root.get("entriesByDatabase") instanceof Map<?, ?> byDb) {
+            for (Map.Entry<?, ?> entry : byDb.entrySet()) {
+                if (entry.getValue() instanceof List<?> list) {
+                    entriesByDatabase.computeIfAbsent(String.valueOf(entry.getKey()), k -> new ArrayList<>()).addAll(list);
+                }
+            }
+        }
+    }
+
+    int reportCount() {
+        return reports;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long failures() {
+        return failures;
+    }
+
+    /**
+     * Shard indexes below the declared shard count for which no report was merged.
+     */
+    List<Long> missingShards() {
+        List<Long> missing = new ArrayList<>();
+        for (long i = 0; i < shardCount; i++) {
+            if (!shardIndexes.contains(i)) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * The sharding plan fingerprint of each shard when they differ, i.e. the shards scanned different
+     * statements or balanced them by different histories, so that statements may have been validated
+     * twice or not at all; empty when they agree.
+     */
+    Map<Long, String> conflictingPlans() {
+        return new HashSet<>(shardPlans.values()).size() > 1 ? shardPlans : Map.of();
+    }
+
+    String toJson() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("total", total);
+        root.put("failures", failures);
+        root.put("deadlineExceeded", deadlineExceeded);
+        if (shardCount > 0) {
+            Map<String, Object> shards = new LinkedHashMap<>();
+            shards.put("count", shardCount);
+            shards.put("merged", new ArrayList<>(shardIndexes));
+            root.put("shards", shards);
+        }
+        root.put("databases", new ArrayList<>(databases.values()));
+        root.put("entriesByDatabase", entriesByDatabase);
+        StringBuilder sb = new StringBuilder();
+        Json.write(sb, root);
+        return sb.toString();
+    }
+
+    private void mergeSummary(Map<String, Object> summary) {
+        String label = String.valueOf(summary.get("label"));
+        Map<String, Object> merged = databases.computeIfAbsent(label, k -> new LinkedHashMap<>());
+        for (Map.Entry<String, Object> field : summary.entrySet()) {
+            Object value = field.getValue();
+            Object existing = merged.get(field.getKey());
+            if (existing == null) {
+                merged.put(field.getKey(), value);
+            } else if (value instanceof Long n && existing instanceof Long m) {
+                merged.put(field.getKey(), m + n);
+            } else if (value instanceof Boolean b && existing instanceof Boolean a) {
+                merged.put(field.getKey(), a || b);
+            }
+        }
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number n ? n.longValue() : 0L;
+    }
+}
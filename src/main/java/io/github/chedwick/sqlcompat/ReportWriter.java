@@ -0,0 +1,192 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams validation results to the report file as they complete, so that memory use does not grow
+ * with the number of statements.
+ * <p>
+ * {@link Format#JSON} writes the classic single-document report with the entries first and the
+ * summary fields last. {@link Format#JSONL} writes one {@code "type":"entry"} object per line followed
+ * by a {@code "type":"summary"} footer line.
+ */
+final class ReportWriter implements Closeable {
+
+    enum Format {
+        JSON, JSONL;
+
+        static Format parse(String value) {
+            return value == null || value.isBlank() ? JSON : valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Writer out;
+    private final Format format;
+    private String currentDatabase;
+    private boolean firstEntry = true;
+
+    private ReportWriter(Writer out, Format format) throws IOException {
+        this.out = out;
+        this.format = format;
+        if (format == Format.JSON) {
+            out.write("{\"entriesByDatabase\":{");
+        }
+    }
+
+    static ReportWriter open(Path path, Format format) throws IOException {
+        Path parent = path.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new ReportWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), format);
+    }
+
+    static ReportWriter to(Writer out, Format format) throws IOException {
+        return new ReportWriter(out instanceof BufferedWriter ? out : new BufferedWriter(out), format);
+    }
+
+    void entry(ValidationResult r, String module) throws IOException {
+        if (format == Format.JSONL) {
+            out.write("{\"type\":\"entry\",");
+        } else {
+            if (!r.databaseLabel().equals(currentDatabase)) {
+                if (currentDatabase != null) {
+                    out.write("],");
+                }
+                out.write('"');
+                escapeTo(out, r.databaseLabel());
+                out.write("\":[");
+                currentDatabase = r.databaseLabel();
+                firstEntry = true;
+            }
+            if (!firstEntry) {
+                out.write(',');
+            }
+            firstEntry = false;
+            out.write('{');
+        }
+        out.write("\"id\":\"");
+        escapeTo(out, r.statement().namespace());
+        if (!r.statement().namespace().isBlank()) {
+            out.write('.');
+        }
+        escapeTo(out, r.statement().id());
+        out.write("\",\"kind\":\"");
+        out.write(r.statement().kind().name());
+        out.write("\",\"file\":\"");
+        escapeTo(out, r.statement().sourceFile().toString());
+        out.write("\",");
+        if (module != null) {
+            out.write("\"module\":\"");
+            escapeTo(out, module);
+            out.write("\",");
+        }
+        out.write("\"database\":\"");
+        escapeTo(out, r.databaseLabel());
+        out.write("\",\"success\":");
+        out.write(r.success() ? "true" : "false");
+        out.write(",\"status\":\"");
+        out.write(r.status().name());
+        out.write("\",\"durationMillis\":");
+        out.write(Long.toString(r.durationMillis()));
+        if (!Double.isNaN(r.planCost())) {
+            out.write(",\"planCost\":");
+            out.write(Double.toString(r.planCost()));
+        }
+        out.write(",\"error\":");
+        if (r.errorMessage() == null) {
+            out.write("null");
+        } else {
+            out.write('"');
+            escapeTo(out, r.errorMessage());
+            out.write('"');
+        }
+        if (r.schemas() != null) {
+            out.write(",\"schemas\":{\"total\":");
+            out.write(Integer.toString(r.schemas().total()));
+            out.write(",\"failed\":");
+            out.write(Integer.toString(r.schemas().failures().size()));
+            out.write(",\"failures\":{");
+            boolean firstSchema = true;
+            for (Map.Entry<String, String> failure : r.schemas().failures().entrySet()) {
+                if (!firstSchema) {
+                    out.write(',');
+                }
+                firstSchema = false;
+                out.write('"');
+                escapeTo(out, failure.getKey());
+                out.write("\":\"");
+                escapeTo(out, failure.getValue());
+                out.write('"');
+            }
+            out.write("}}");
+        }
+        out.write('}');
+        if (format == Format.JSONL) {
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Writes the summary and closes the report. {@code summaryFields} is the comma-separated list of
+     * top-level summary members, without surrounding braces.
+     */
+    void finish(String summaryFields) throws IOException {
+        if (format == Format.JSONL) {
+            out.write("{\"type\":\"summary\",");
+            out.write(summaryFields);
+            out.write("}\n");
+        } else {
+            if (currentDatabase != null) {
+                out.write(']');
+            }
+            out.write("},");
+            out.write(summaryFields);
+            out.write('}');
+        }
+        out.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Escapes straight into the writer, copying unescaped runs in one call instead of building an
+     * intermediate string per value.
+     */
+    static void escapeTo(Writer out, String raw) throws IOException {
+        int runStart = 0;
+        int length = raw.length();
+        for (int i = 0; i < length; i++) {
+            char c = raw.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case '"' -> "\\\"";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                default -> null;
+            };
+            if (replacement != null) {
+                if (i > runStart) {
+                    out.write(raw, runStart, i - runStart);
+                }
+                out.write(replacement);
+                runStart = i + 1;
+            }
+        }
+        if (runStart < length) {
+            out.write(raw, runStart, length - runStart);
+        }
+    }
+}
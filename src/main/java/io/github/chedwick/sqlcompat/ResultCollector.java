@@ -0,0 +1,82 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Receives results as they complete. Successful results are streamed to the report and the listener and then
+ * dropped; only counters and the failures are kept in memory.
+ */
+final class ResultCollector {
+    private final ValidatorLog log;
+    private final ReportWriter report;
+    private final Function<SqlStatement, String> moduleOf;
+    private final Consumer<ValidationResult> listener;
+    private final List<ValidationResult> failures = new ArrayList<>();
+    private final Map<String, int[]> modules = new LinkedHashMap<>();
+    private long total;
+    private long notValidated;
+    private boolean reportBroken;
+
+    ResultCollector(ValidatorLog log, ReportWriter report, Function<SqlStatement, String> moduleOf,
+                    Consumer<ValidationResult> listener) {
+        this.log = log;
+        this.report = report;
+        this.moduleOf = moduleOf;
+        this.listener = listener;
+    }
+
+    void accept(ValidationResult result) {
+        total++;
+        if (result.failed()) {
+            failures.add(result);
+        } else if (!result.completed()) {
+            notValidated++;
+        }
+        String module = moduleOf.apply(result.statement());
+        if (module != null) {
+            int[] counts = modules.computeIfAbsent(module, k -> new int[2]);
+            counts[0]++;
+            if (result.failed()) {
+                counts[1]++;
+            }
+        }
+        if (report != null && !reportBroken) {
+            try {
+                report.entry(result, module);
+            } catch (IOException e) {
+                reportBroken = true;
+                log.warn("Failed to write report entry, report will be incomplete: " + e.getMessage());
+            }
+        }
+        listener.accept(result);
+    }
+
+    long total() {
+        return total;
+    }
+
+    long failureCount() {
+        return failures.size();
+    }
+
+    long notValidated() {
+        return notValidated;
+    }
+
+    List<ValidationResult> failures() {
+        return failures;
+    }
+
+    /**
+     * Per-module result and failure counts, in first-seen order; empty when validating a single module.
+     */
+    Map<String, int[]> modules() {
+        return modules;
+    }
+}
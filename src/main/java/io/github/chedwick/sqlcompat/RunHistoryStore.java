@@ -0,0 +1,555 @@
+package io.github.chedwick.sqlcompat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only, memory-mapped store of per-statement metrics of every run: files {@code keys}, {@code runs},
+ * {@code samples} (fixed-size records chained per key) and {@code index} (the newest record of each key).
+ */
+final class RunHistoryStore {
+    static final String KEYS = "keys";
+    static final String RUNS = "runs";
+    static final String SAMPLES = "samples";
+    static final String INDEX = "index";
+    static final String LOCK = "lock";
+    static final String COMPACTED = "compacted";
+    private static final String DONE = "done";
+
+    private static final int MAGIC = 0x53514c48; // "SQLH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    /**
+     * key, run, previous, durationNanos, planCost, status, sqlHash.
+     */
+    static final int RECORD_BYTES = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+    /**
+     * Records per mapping; a single mapping cannot exceed 2 GB.
+     */
+    static final int RECORDS_PER_CHUNK = 1 << 24;
+
+
+    private final Path directory;
+    private final int recordsPerChunk;
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private long keysLength;
+    private int runCount;
+    private long[] heads = new long[0];
+    private long sampleCount;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private int retainRuns;
+
+    /**
+     * One metric of one statement on one database in one run.
+     */
+    record Sample(int run, ValidationResult.Status status, long durationNanos, double planCost, int sqlHash) {
+        boolean passed() {
+            return status == ValidationResult.Status.PASSED;
+        }
+
+        boolean failed() {
+            return status == ValidationResult.Status.FAILED || status == ValidationResult.Status.TIMED_OUT;
+        }
+    }
+
+    private RunHistoryStore(Path directory, int recordsPerChunk) {
+        this.directory = directory;
+        this.recordsPerChunk = recordsPerChunk;
+    }
+
+    /**
+     * Opens the store in {@code directory}, creating it on first use.
+     */
+    static RunHistoryStore open(Path directory) throws IOException {
+        return open(directory, RECORDS_PER_CHUNK);
+    }
+
+    static RunHistoryStore open(Path directory, int recordsPerChunk) throws IOException {
+        Files.createDirectories(directory);
+        RunHistoryStore store = new RunHistoryStore(directory, recordsPerChunk);
+        store.locked(store::load);
+        return store;
+    }
+
+    /**
+     * Keeps the last {@code runs} runs when a run is appended; 0 keeps every run.
+     */
+    void retainRuns(int runs) {
+        this.retainRuns = Math.max(0, runs);
+    }
+
+    private interface Action {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs {@code action} holding the store's lock, after finishing a compaction a previous build left
+     * half-way. The lock file itself is never replaced, unlike the files compaction moves in.
+     */
+    private void locked(Action action) throws IOException {
+        try (FileChannel lock = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             FileLock ignored = lock.lock()) {
+            finishCompaction();
+            action.run();
+        }
+    }
+
+    private void load() throws IOException {
+        keys.clear();
+        keyIds.clear();
+        Path keysFile = directory.resolve(KEYS);
+        ByteBuffer keyBytes = ByteBuffer.wrap(Files.isRegularFile(keysFile) ? Files.readAllBytes(keysFile) : new byte[0]);
+        // A torn last entry is ignored and overwritten by the next run.
+        while (keyBytes.remaining() >= 2) {
+            int length = keyBytes.getShort(keyBytes.position()) & 0xffff;
+            if (keyBytes.remaining() < 2 + length) {
+                break;
+            }
+            String key = new String(keyBytes.array(), keyBytes.position() + 2, length, StandardCharsets.UTF_8);
+            keyBytes.position(keyBytes.position() + 2 + length);
+            keyIds.put(key, keys.size());
+            keys.add(key);
+        }
+        keysLength = keyBytes.position();
+        Path runsFile = directory.resolve(RUNS);
+        runCount = Files.isRegularFile(runsFile) ? (int) (Files.size(runsFile) / Long.BYTES) : 0;
+        remap();
+        if (!loadIndex()) {
+            rebuildIndex();
+        }
+    }
+
+    private void remap() throws IOException {
+        Path samplesFile = directory.resolve(SAMPLES);
+        chunks = new MappedByteBuffer[0];
+        sampleCount = 0L;
+        if (!Files.isRegularFile(samplesFile) || Files.size(samplesFile) < HEADER_BYTES) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(samplesFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading until the header is complete.
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_BYTES) {
+                throw new IOException("Not a version " + VERSION + " history samples file: " + samplesFile);
+            }
+            long records = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+            MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((records + recordsPerChunk - 1) / recordsPerChunk)];
+            for (int i = 0; i < mapped.length; i++) {
+                long first = (long) i * recordsPerChunk;
+                long count = Math.min(recordsPerChunk, records - first);
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, offsetOf(first), count * RECORD_BYTES);
+            }
+            chunks = mapped;
+            sampleCount = records;
+        }
+    }
+
+    private boolean loadIndex() throws IOException {
+        Path indexFile = directory.resolve(INDEX);
+        if (!Files.isRegularFile(indexFile)) {
+            return sampleCount == 0L && keys.isEmpty();
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (index.remaining() < 12 || index.getLong() != sampleCount) {
+            return false;
+        }
+        int count = index.getInt();
+        if (count != keys.size() || index.remaining() != count * Long.BYTES) {
+            return false;
+        }
+        heads = new long[count];
+        index.asLongBuffer().get(heads);
+        return true;
+    }
+
+    private void rebuildIndex() {
+        heads = new long[keys.size()];
+        Arrays.fill(heads, -1L);
+        for (long i = 0; i < sampleCount; i++) {
+            int key = chunk(i).getInt(positionOf(i));
+            if (key >= 0 && key < heads.length) {
+                heads[key] = offsetOf(i);
+            }
+        }
+    }
+
+    private static long offsetOf(long record) {
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+
+    private static long recordAt(long offset) {
+        return (offset - HEADER_BYTES) / RECORD_BYTES;
+    }
+
+    private ByteBuffer chunk(long record) {
+        return chunks[(int) (record / recordsPerChunk)];
+    }
+
+    private int positionOf(long record) {
+        return (int) (record % recordsPerChunk) * RECORD_BYTES;
+    }
+
+    int runCount() {
+        return runCount;
+    }
+
+    int keyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Keys in the order they were first recorded, as {@code database\tfullId\tkind}, followed by
+     * {@code \tdatabaseId} for a variant.
+     */
+    List<String> keys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * The samples of a statement on a database from the last {@code lastRuns} runs, oldest first.
+     */
+    List<Sample> samples(String database, SqlStatement stmt, int lastRuns) {
+        Integer id = keyIds.get(key(database, stmt));
+        return id == null ? List.of() : samples(id, lastRuns);
+    }
+
+    List<Sample> samples(int keyId, int lastRuns) {
+        int firstRun = runCount - Math.max(1, lastRuns);
+        List<Sample> samples = new ArrayList<>();
+        long offset = heads[keyId];
+        while (offset >= 0) {
+            Sample sample = sampleAt(offset);
+            if (sample.run() < firstRun) {
+                break;
+            }
+            samples.add(sample);
+            long record = recordAt(offset);
+            offset = chunk(record).getLong(positionOf(record) + 8);
+        }
+        Collections.reverse(samples);
+        return samples;
+    }
+
+    /**
+     * The newest sample of a key, or null when it has none.
+     */
+    Sample latest(int keyId) {
+        return heads[keyId] < 0 ? null : sampleAt(heads[keyId]);
+    }
+
+    private Sample sampleAt(long offset) {
+        long record = recordAt(offset);
+        ByteBuffer chunk = chunk(record);
+        int at = positionOf(record);
+        return new Sample(chunk.getInt(at + 4), status(chunk.getInt(at + 32), record), chunk.getLong(at + 16),
+                chunk.getDouble(at + 24), chunk.getInt(at + 36));
+    }
+
+    /**
+     * The code a status is stored as; codes never change, unlike the order of the enum.
+     */
+    static int statusCode(ValidationResult.Status status) {
+        return switch (status) {
+            case PASSED -> 1;
+            case FAILED -> 2;
+            case TIMED_OUT -> 3;
+            case CANCELLED -> 4;
+            case NOT_STARTED -> 5;
+        };
+    }
+
+    private ValidationResult.Status status(int code, long record) {
+        return switch (code) {
+            case 1 -> ValidationResult.Status.PASSED;
+            case 2 -> ValidationResult.Status.FAILED;
+            case 3 -> ValidationResult.Status.TIMED_OUT;
+            case 4 -> ValidationResult.Status.CANCELLED;
+            case 5 -> ValidationResult.Status.NOT_STARTED;
+            default -> throw new IllegalStateException("Unknown status code " + code + " in record " + record
+                    + " of " + directory.resolve(SAMPLES));
+        };
+    }
+
+    /**
+     * Starts recording a run; nothing is written until {@link Run#commit()}.
+     */
+    Run startRun(long epochMillis) {
+        return new Run(epochMillis);
+    }
+
+    private void append(Run run) throws IOException {
+        locked(() -> {
+            // Another build may have appended since this store was opened.
+            load();
+            appendLocked(run);
+            if (retainRuns > 0 && runCount > retainRuns + retainRuns / 2) {
+                compact(runCount - retainRuns);
+            }
+        });
+    }
+
+    private void appendLocked(Run run) throws IOException {
+        int number = runCount;
+        ByteArrayOutputStream newKeys = new ByteArrayOutputStream();
+        long[] newHeads = Arrays.copyOf(heads, heads.length);
+        int[] ids = new int[run.keys.size()];
+        for (int local = 0; local < ids.length; local++) {
+            String key = run.keys.get(local);
+            Integer id = keyIds.get(key);
+            if (id == null) {
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                if (utf8.length > 0xffff) {
+                    ids[local] = -1;
+                    continue;
+                }
+                id = keys.size();
+                keys.add(key);
+                keyIds.put(key, id);
+                newKeys.write(utf8.length >>> 8);
+                newKeys.write(utf8.length);
+                newKeys.write(utf8);
+                newHeads = Arrays.copyOf(newHeads, keys.size());
+                newHeads[id] = -1L;
+            }
+            ids[local] = id;
+        }
+
+        // Keys and the run go first: a crash before the samples leaves unused keys and an empty run.
+        writeAt(directory.resolve(KEYS), keysLength, ByteBuffer.wrap(newKeys.toByteArray()));
+        keysLength += newKeys.size();
+        writeAt(directory.resolve(RUNS), (long) number * Long.BYTES,
+                ByteBuffer.allocate(Long.BYTES).putLong(0, run.epochMillis));
+        runCount = number + 1;
+        long size = offsetOf(sampleCount);
+        long written = 0L;
+        try (FileChannel samples = FileChannel.open(directory.resolve(SAMPLES), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            if (samples.size() < HEADER_BYTES) {
+                writeFully(samples, ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC).putInt(4, VERSION)
+                        .putInt(8, RECORD_BYTES), 0);
+            }
+            samples.truncate(size);
+            ByteBuffer records = ByteBuffer.allocate(Math.min(Math.max(run.size, 1), 4096) * RECORD_BYTES);
+            for (int i = 0; i < run.size; i++) {
+                int id = ids[run.key[i]];
+                if (id < 0) {
+                    continue;
+                }
+                long offset = size + written + records.position();
+                records.putInt(id).putInt(number).putLong(newHeads[id]).putLong(run.durationNanos[i])
+                        .putDouble(run.planCost[i]).putInt(run.status[i]).putInt(run.sqlHash[i]);
+                newHeads[id] = offset;
+                if (!records.hasRemaining()) {
+                    written += flush(samples, records, size + written);
+                }
+            }
+            written += flush(samples, records, size + written);
+            samples.force(false);
+        }
+        heads = newHeads;
+        writeIndex(directory, recordAt(size + written), heads);
+        remap();
+    }
+
+    /**
+     * Rewrites the store with the runs from {@code firstRun} on, renumbered from 0, and the keys that
+     * still have samples in them.
+     */
+    private void compact(int firstRun) throws IOException {
+        Path staging = directory.resolve(COMPACTED);
+        Files.createDirectories(staging);
+        for (String name : List.of(DONE, KEYS, RUNS, SAMPLES, INDEX)) {
+            Files.deleteIfExists(staging.resolve(name));
+        }
+        int[] newIds = new int[keys.size()];
+        Arrays.fill(newIds, -1);
+        long[] newHeads = new long[keys.size()];
+        int kept = 0;
+        ByteArrayOutputStream newKeys = new ByteArrayOutputStream();
+        long written = 0L;
+        try (FileChannel out = FileChannel.open(staging.resolve(SAMPLES), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC).putInt(4, VERSION)
+                    .putInt(8, RECORD_BYTES), 0);
+            ByteBuffer records = ByteBuffer.allocate(4096 * RECORD_BYTES);
+            // Records keep their order, so every chain still runs from the end of the file backwards.
+            for (long i = 0; i < sampleCount; i++) {
+                ByteBuffer chunk = chunk(i);
+                int at = positionOf(i);
+                int key = chunk.getInt(at);
+                int run = chunk.getInt(at + 4);
+                if (run < firstRun || key < 0 || key >= keys.size()) {
+                    continue;
+                }
+                if (newIds[key] < 0) {
+                    newIds[key] = kept;
+                    newHeads[kept++] = -1L;
+                    byte[] utf8 = keys.get(key).getBytes(StandardCharsets.UTF_8);
+                    newKeys.write(utf8.length >>> 8);
+                    newKeys.write(utf8.length);
+                    newKeys.write(utf8);
+                }
+                int id = newIds[key];
+                long offset = HEADER_BYTES + written + records.position();
+                records.putInt(id).putInt(run - firstRun).putLong(newHeads[id]).putLong(chunk.getLong(at + 16))
+                        .putDouble(chunk.getDouble(at + 24)).putInt(chunk.getInt(at + 32)).putInt(chunk.getInt(at + 36));
+                newHeads[id] = offset;
+                if (!records.hasRemaining()) {
+                    written += flush(out, records, HEADER_BYTES + written);
+                }
+            }
+            written += flush(out, records, HEADER_BYTES + written);
+            out.force(false);
+        }
+        Files.write(staging.resolve(KEYS), newKeys.toByteArray());
+        byte[] runs = Files.readAllBytes(directory.resolve(RUNS));
+        Files.write(staging.resolve(RUNS), Arrays.copyOfRange(runs, firstRun * Long.BYTES, runCount * Long.BYTES));
+        writeIndex(staging, written / RECORD_BYTES, Arrays.copyOf(newHeads, kept));
+        Files.createFile(staging.resolve(DONE));
+        finishCompaction();
+        load();
+    }
+
+    /**
+     * Moves a complete compaction into place. Each move replaces one file atomically, and the marker
+     * goes last, so an interrupted finish is simply repeated.
+     */
+    private void finishCompaction() throws IOException {
+        Path staging = directory.resolve(COMPACTED);
+        if (!Files.isRegularFile(staging.resolve(DONE))) {
+            return;
+        }
+        for (String name : List.of(KEYS, RUNS, SAMPLES, INDEX)) {
+            Path file = staging.resolve(name);
+            if (Files.exists(file)) {
+                Files.move(file, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.delete(staging.resolve(DONE));
+        Files.delete(staging);
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer records, long position) throws IOException {
+        records.flip();
+        int length = records.remaining();
+        writeFully(channel, records, position);
+        records.clear();
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        int start = bytes.position();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, position + bytes.position() - start);
+        }
+    }
+
+    private static void writeAt(Path file, long position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(position);
+            writeFully(channel, bytes, position);
+            channel.force(false);
+        }
+    }
+
+    private static void writeIndex(Path directory, long records, long[] heads) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(12 + heads.length * Long.BYTES);
+        index.putLong(records).putInt(heads.length);
+        index.asLongBuffer().put(heads);
+        Path tmp = directory.resolve(INDEX + ".tmp");
+        Files.write(tmp, index.array());
+        Files.move(tmp, directory.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(String database, String fullId, String kind) {
+        return database + "\t" + fullId + "\t" + kind;
+    }
+
+    /**
+     * The key of {@code stmt} on {@code database}; each {@code databaseId} variant has its own.
+     */
+    static String key(String database, SqlStatement stmt) {
+        String key = key(database, stmt.fullId(), stmt.kind().name());
+        return stmt.databaseId() == null ? key : key + "\t" + stmt.databaseId();
+    }
+
+    /**
+     * Metrics of one run, buffered as primitives until the run is over, so that a large run does not
+     * keep its results alive. Statements that were cancelled or never started are left out: they say
+     * nothing about the statement.
+     */
+    final class Run {
+        private final long epochMillis;
+        private final Map<String, Integer> keyIds = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private int[] key = new int[64];
+        private long[] durationNanos = new long[64];
+        private double[] planCost = new double[64];
+        private int[] status = new int[64];
+        private int[] sqlHash = new int[64];
+        private int size;
+
+        private Run(long epochMillis) {
+            this.epochMillis = epochMillis;
+        }
+
+        synchronized void record(ValidationResult result) {
+            if (!result.completed()) {
+                return;
+            }
+            if (size == key.length) {
+                int capacity = size * 2;
+                key = Arrays.copyOf(key, capacity);
+                durationNanos = Arrays.copyOf(durationNanos, capacity);
+                planCost = Arrays.copyOf(planCost, capacity);
+                status = Arrays.copyOf(status, capacity);
+                sqlHash = Arrays.copyOf(sqlHash, capacity);
+            }
+            String name = RunHistoryStore.key(result.databaseLabel(), result.statement());
+            Integer id = keyIds.get(name);
+            if (id == null) {
+                id = keys.size();
+                keys.add(name);
+                keyIds.put(name, id);
+            }
+            key[size] = id;
+            durationNanos[size] = result.durationNanos();
+            planCost[size] = result.planCost();
+            status[size] = statusCode(result.status());
+            sqlHash[size] = ValidationHistory.sqlHash(result.statement());
+            size++;
+        }
+
+        /**
+         * Appends the run and returns its number.
+         */
+        synchronized int commit() throws IOException {
+            append(this);
+            return runCount - 1;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds statements whose newer half of runs in a {@link RunHistoryStore} is slower or costlier than the older half.
+ */
+final class RunTrends {
+
+    /**
+     * Fewest passed samples each half needs before its percentile means anything.
+     */
+    static final int MIN_SAMPLES_PER_HALF = 2;
+
+    private RunTrends() {
+    }
+
+    /**
+     * The trend of one statement on one database; {@code databaseId} is null unless it is a variant.
+     */
+    record Trend(String database, String fullId, String kind, String databaseId, int samples, int failures,
+                 double baselineP95Millis, double recentP95Millis, double baselineCost, double recentCost) {
+
+        /**
+         * Relative growth of the p95 duration, e.g. 0.25 for 25% slower; NaN without a baseline.
+         */
+        double durationGrowth() {
+            return growth(baselineP95Millis, recentP95Millis);
+        }
+
+        double costGrowth() {
+            return growth(baselineCost, recentCost);
+        }
+
+        String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(fullId).append(" (").append(kind);
+            if (databaseId != null) {
+                sb.append(", databaseId ").append(databaseId);
+            }
+            sb.append(") [").append(database).append("]");
+            if (!Double.isNaN(durationGrowth())) {
+                sb.append(String.format(Locale.ROOT, " p95 %.1f -> %.1f ms (%+.0f%%)",
+                        baselineP95Millis, recentP95Millis, durationGrowth() * 100));
+            }
+            if (!Double.isNaN(costGrowth())) {
+                sb.append(String.format(Locale.ROOT, " cost %.2f -> %.2f (%+.0f%%)",
+                        baselineCost, recentCost, costGrowth() * 100));
+            }
+            if (failures > 0) {
+                sb.append(", ").append(failures).append(" failure(s)");
+            }
+            return sb.append(" over ").append(samples).append(" run(s)").toString();
+        }
+
+        String toJson() {
+            return "{\"id\":\"" + Json.escape(fullId) + "\",\"kind\":\"" + kind + "\",\"databaseId\":"
+                    + (databaseId == null ? "null" : "\"" + Json.escape(databaseId) + "\"") + ",\"database\":\""
+                    + Json.escape(database) + "\",\"samples\":" + samples + ",\"failures\":" + failures
+                    + ",\"baselineP95Millis\":" + number(baselineP95Millis) + ",\"recentP95Millis\":" + number(recentP95Millis)
+                    + ",\"p95Growth\":" + number(durationGrowth())
+                    + ",\"baselineCost\":" + number(baselineCost) + ",\"recentCost\":" + number(recentCost)
+                    + ",\"costGrowth\":" + number(costGrowth()) + "}";
+        }
+    }
+
+    /**
+     * Statements whose p95 duration or plan cost grew by more than {@code threshold} (0.2 for 20%) over
+     * the last {@code lastRuns} runs, largest growth first. Duration growth only counts once the newer
+     * p95 reaches {@code minMillis}, so that sub-millisecond jitter is not reported as drift.
+     */
+    static List<Trend> regressions(RunHistoryStore store, int lastRuns, double threshold, double minMillis) {
+        List<Trend> regressed = new ArrayList<>();
+        List<String> keys = store.keys();
+        for (int id = 0; id < keys.size(); id++) {
+            List<RunHistoryStore.Sample> samples = store.samples(id, lastRuns);
+            Trend trend = trend(keys.get(id), samples);
+            if (trend == null) {
+                continue;
+            }
+            boolean slower = trend.durationGrowth() > threshold && trend.recentP95Millis() >= minMillis;
+            boolean costlier = trend.costGrowth() > threshold;
+            if (slower || costlier) {
+                regressed.add(trend);
+            }
+        }
+        regressed.sort(Comparator.comparingDouble(RunTrends::worstGrowth).reversed());
+        return regressed;
+    }
+
+    static Trend trend(String key, List<RunHistoryStore.Sample> samples) {
+        if (samples.isEmpty()) {
+            return null;
+        }
+        // A variant's key ends in its databaseId.
+        String[] parts = key.split("\t", -1);
+        int half = samples.size() / 2;
+        List<RunHistoryStore.Sample> older = samples.subList(0, half);
+        List<RunHistoryStore.Sample> newer = samples.subList(half, samples.size());
+        int failures = 0;
+        for (RunHistoryStore.Sample sample : samples) {
+            if (sample.failed()) {
+                failures++;
+            }
+        }
+        return new Trend(parts[0], parts[1], parts[2], parts.length > 3 ? parts[3] : null, samples.size(), failures,
+                p95Millis(older), p95Millis(newer), medianCost(older), medianCost(newer));
+    }
+
+    private static double p95Millis(List<RunHistoryStore.Sample> samples) {
+        long[] durations = samples.stream().filter(RunHistoryStore.Sample::passed)
+                .mapToLong(RunHistoryStore.Sample::durationNanos).toArray();
+        if (durations.length < MIN_SAMPLES_PER_HALF) {
+            return Double.NaN;
+        }
+        Arrays.sort(durations);
+        int rank = (int) Math.ceil(0.95 * durations.length) - 1;
+        return durations[Math.max(0, rank)] / 1_000_000.0;
+    }
+
+    private static double medianCost(List<RunHistoryStore.Sample> samples) {
+        double[] costs = samples.stream().filter(RunHistoryStore.Sample::passed)
+                .mapToDouble(RunHistoryStore.Sample::planCost).filter(c -> !Double.isNaN(c)).toArray();
+        if (costs.length < MIN_SAMPLES_PER_HALF) {
+            return Double.NaN;
+        }
+        Arrays.sort(costs);
+        return costs[costs.length / 2];
+    }
+
+    private static double growth(double baseline, double recent) {
+        if (Double.isNaN(baseline) || Double.isNaN(recent) || baseline <= 0) {
+            return Double.NaN;
+        }
+        return recent / baseline - 1;
+    }
+
+    private static double worstGrowth(Trend trend) {
+        double worst = Double.NEGATIVE_INFINITY;
+        if (!Double.isNaN(trend.durationGrowth())) {
+            worst = trend.durationGrowth();
+        }
+        if (!Double.isNaN(trend.costGrowth())) {
+            worst = Math.max(worst, trend.costGrowth());
+        }
+        return worst;
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
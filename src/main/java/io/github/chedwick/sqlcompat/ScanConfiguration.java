@@ -0,0 +1,203 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeAliasRegistry;
+import org.apache.ibatis.type.TypeException;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The MyBatis configuration mappers are parsed into; public because {@code XMLConfigBuilder} instantiates
+ * it reflectively. Type names the plugin cannot load resolve to {@code Object}, and fragments, result maps
+ * and caches it does not declare are looked up in its parents.
+ */
+public final class ScanConfiguration extends Configuration {
+    private final TypeAliasRegistry aliases = new LenientTypeAliasRegistry(super.getTypeAliasRegistry());
+    private final Map<String, XNode> fragments = new Fragments();
+    private List<ScanConfiguration> parents = List.of();
+    private final Set<String> hidden = new HashSet<>();
+
+    @Override
+    public TypeAliasRegistry getTypeAliasRegistry() {
+        return aliases;
+    }
+
+    @Override
+    public boolean hasMapper(Class<?> type) {
+        // Never bind the namespace interface should it be on the plugin classpath; its annotations are
+        // read from bytecode by AnnotationMapperScanner instead.
+        return true;
+    }
+
+    /**
+     * Looks up what this configuration does not declare in {@code parents}, e.g. the configurations
+     * of the project or of the other modules of the reactor.
+     */
+    void inherit(List<ScanConfiguration> parents) {
+        this.parents = List.copyOf(parents);
+    }
+
+    /**
+     * Stops looking up elements of {@code namespaces} in the parents, for files parsed again.
+     */
+    void hide(Collection<String> namespaces) {
+        hidden.addAll(namespaces);
+    }
+
+    /**
+     * Forgets every parsed element and hidden namespace, keeping the settings and parents, so the
+     * configuration can parse the next file.
+     */
+    void reset() {
+        mappedStatements.clear();
+        caches.clear();
+        resultMaps.clear();
+        parameterMaps.clear();
+        keyGenerators.clear();
+        loadedResources.clear();
+        sqlFragments.clear();
+        incompleteStatements.clear();
+        incompleteCacheRefs.clear();
+        incompleteResultMaps.clear();
+        incompleteMethods.clear();
+        cacheRefMap.clear();
+        hidden.clear();
+    }
+
+    @Override
+    public Map<String, XNode> getSqlFragments() {
+        return fragments;
+    }
+
+    @Override
+    public ResultMap getResultMap(String id) {
+        ResultMap resultMap = lookup(id, c -> own(c.resultMaps, id));
+        if (resultMap == null) {
+            throw new IllegalArgumentException("Result Maps collection does not contain value for " + id);
+        }
+        return resultMap;
+    }
+
+    @Override
+    public boolean hasResultMap(String id) {
+        return lookup(id, c -> own(c.resultMaps, id)) != null;
+    }
+
+    @Override
+    public Cache getCache(String id) {
+        Cache cache = lookup(id, c -> own(c.caches, id));
+        if (cache == null) {
+            throw new IllegalArgumentException("Caches collection does not contain value for " + id);
+        }
+        return cache;
+    }
+
+    @Override
+    public boolean hasCache(String id) {
+        return lookup(id, c -> own(c.caches, id)) != null;
+    }
+
+    /**
+     * Finds {@code id} in this configuration or, breadth first, in the parents, skipping those behind
+     * a configuration that hides its namespace.
+     */
+    private <T> T lookup(String id, Function<ScanConfiguration, T> own) {
+        T found = own.apply(this);
+        if (found != null || parents.isEmpty() || hides(id)) {
+            return found;
+        }
+        Set<ScanConfiguration> visited = new HashSet<>();
+        visited.add(this);
+        Deque<ScanConfiguration> queue = new ArrayDeque<>(parents);
+        while (!queue.isEmpty()) {
+            ScanConfiguration parent = queue.poll();
+            if (!visited.add(parent)) {
+                continue;
+            }
+            found = own.apply(parent);
+            if (found != null) {
+                return found;
+            }
+            if (!parent.hides(id)) {
+                queue.addAll(parent.parents);
+            }
+        }
+        return null;
+    }
+
+    private static <T> T own(Map<String, T> elements, String id) {
+        return elements.containsKey(id) ? elements.get(id) : null;
+    }
+
+    private boolean hides(String id) {
+        if (hidden.isEmpty()) {
+            return false;
+        }
+        for (int dot = id.indexOf('.'); dot >= 0; dot = id.indexOf('.', dot + 1)) {
+            if (hidden.contains(id.substring(0, dot))) {
+                return true;
+            }
+        }
+        return hidden.contains(id);
+    }
+
+    /**
+     * The fragments builders declare into and includes resolve against: writes and membership checks
+     * stay local, reads fall back to the parents.
+     */
+    private final class Fragments extends AbstractMap<String, XNode> {
+
+        @Override
+        public XNode get(Object id) {
+            XNode fragment = lookup((String) id, c -> own(c.sqlFragments, (String) id));
+            if (fragment == null) {
+                throw new IllegalArgumentException("XML fragments parsed from previous mappers does not contain value for " + id);
+            }
+            return fragment;
+        }
+
+        @Override
+        public boolean containsKey(Object id) {
+            return sqlFragments.containsKey(id);
+        }
+
+        @Override
+        public XNode put(String id, XNode fragment) {
+            return sqlFragments.put(id, fragment);
+        }
+
+        @Override
+        public Set<Entry<String, XNode>> entrySet() {
+            return sqlFragments.entrySet();
+        }
+    }
+
+    private static final class LenientTypeAliasRegistry extends TypeAliasRegistry {
+
+        LenientTypeAliasRegistry(TypeAliasRegistry registered) {
+            // Carries over the aliases Configuration registers for itself (JDBC, POOLED, ...).
+            registered.getTypeAliases().forEach(this::registerAlias);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Class<T> resolveAlias(String string) {
+            try {
+                return super.resolveAlias(string);
+            } catch (TypeException e) {
+                return (Class<T>) Object.class;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in each phase of parsing mapper files: the DOM pass that collects {@code <if>} hints,
+ * MyBatis' own mapper builder and the extraction of bound statements.
+ */
+final class ScanMetrics {
+    final LatencyHistogram file = new LatencyHistogram();
+    final LatencyHistogram dom = new LatencyHistogram();
+    final LatencyHistogram build = new LatencyHistogram();
+    final LatencyHistogram extract = new LatencyHistogram();
+    private final LongAdder statements = new LongAdder();
+    private final Map<String, LongAdder> skipped = new ConcurrentHashMap<>();
+
+    void statements(int count) {
+        statements.add(count);
+    }
+
+    void skipped(String reason) {
+        skipped.computeIfAbsent(reason, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Files passed over during discovery, by reason, sorted by reason.
+     */
+    Map<String, Long> skipped() {
+        Map<String, Long> counts = new TreeMap<>();
+        skipped.forEach((reason, count) -> counts.put(reason, count.sum()));
+        return counts;
+    }
+
+    String toJson() {
+        StringBuilder skippedJson = new StringBuilder();
+        Json.write(skippedJson, skipped());
+        return "{\"files\":" + file.count() + ",\"statements\":" + statements.sum()
+                + ",\"totalMillis\":" + LatencyHistogram.millis(file.totalNanos())
+                + ",\"skipped\":" + skippedJson
+                + ",\"phases\":{\"file\":" + file.toJson() + ",\"dom\":" + dom.toJson()
+                + ",\"build\":" + build.toJson() + ",\"extract\":" + extract.toJson() + "}}";
+    }
+
+    String describe() {
+        return file.count() + " file(s), " + statements.sum() + " statement(s) in "
+                + LatencyHistogram.millis(file.totalNanos()) + " ms (dom " + LatencyHistogram.millis(dom.totalNanos())
+                + " ms, build " + LatencyHistogram.millis(build.totalNanos()) + " ms, extract "
+                + LatencyHistogram.millis(extract.totalNanos()) + " ms)"
+                + (skipped.isEmpty() ? "" : "; skipped " + skipped());
+    }
+}
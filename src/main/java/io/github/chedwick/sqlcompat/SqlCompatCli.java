@@ -0,0 +1,320 @@
+package io.github.chedwick.sqlcompat;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line entry point of the runnable JAR, for builds and git hooks that should not pay for a
+ * Maven JVM: scans mapper XMLs and validates them with the same {@link Validator} the Maven goals use.
+ * <p>
+ * Exits with 0 when every statement passed, 1 when some failed or the run deadline passed and 2 on bad
+ * arguments or errors.
+ */
+public final class SqlCompatCli {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java -jar sql-compat-cli.jar --jdbc-url URL [options]",
+            "  --jdbc-url URL            target database to validate against",
+            "  --username USER, --password PASS",
+            "  --origin-jdbc-url URL     validate against this database first; the target only if it passes",
+            "  --origin-username USER, --origin-password PASS",
+            "  --mapper-dir DIR          directory to scan, repeatable (default src/main/resources)",
+            "  --include GLOB            mapper files to scan, repeatable (default **/*Mapper.xml)",
+            "  --exclude GLOB            mapper files to skip, repeatable",
+            "  --config FILE             mybatis-config.xml (default: one at the root of a mapper directory)",
+            "  --database-id ID, --origin-database-id ID",
+            "  --schemas A,B             PostgreSQL schemas to validate every statement in",
+            "  --execute                 execute statements (rolled back) instead of running EXPLAIN",
+            "  --threads N               connections per database (default 4)",
+            "  --timeout SECONDS         per-statement timeout (default 8)",
+            "  --budget KIND=SECONDS     timeout for select, insert, update or delete statements, repeatable",
+            "  --cancel-grace SECONDS    overrun allowed before a statement is cancelled (default 2)",
+            "  --run-timeout SECONDS     stop starting statements after this long (default 0, no limit)",
+            "  --max-failures N          stop after N failures (default 0, validate everything)",
+            "  --report FILE             write every result to FILE",
+            "  --report-format FORMAT    json (default) or jsonl",
+            "  --scan-only               parse the mappers and report the statements found, without a database",
+            "  --dry-run                 validate against an in-process stand-in that accepts every statement",
+            "  --verbose                 log debug messages");
+
+    private SqlCompatCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, ValidatorLog.stderr(Arrays.asList(args).contains("--verbose"))));
+    }
+
+    static int run(String[] args, PrintStream out, ValidatorLog log) {
+        Arguments arguments;
+        try {
+            arguments = Arguments.parse(args);
+        } catch (IllegalArgumentException e) {
+            log.error(e.getMessage());
+            out.println(USAGE);
+            return 2;
+        }
+        if (arguments.help) {
+            out.println(USAGE);
+            return 0;
+        }
+        try {
+            return run(arguments, out, log);
+        } catch (IOException | ValidationException | RuntimeException e) {
+            log.error(e.getMessage() == null ? e.toString() : e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int run(Arguments arguments, PrintStream out, ValidatorLog log)
+            throws IOException, ValidationException {
+        MapperScanner scanner = new MapperScanner(log, arguments.mapperDirectories, arguments.includes, arguments.excludes);
+        MybatisConfig config = loadConfig(arguments, log);
+        scanner.config(config);
+        List<SqlStatement> statements = scanner.scan();
+        log.info("Found " + statements.size() + " mapped statement(s); scan: " + scanner.metrics().describe());
+        if (arguments.scanOnly) {
+            for (SqlStatement stmt : statements) {
+                out.println(stmt.fullId() + " (" + stmt.kind() + ") " + stmt.sourceFile());
+            }
+            return 0;
+        }
+        if (statements.isEmpty()) {
+            log.warn("No mapper statements found. Check --mapper-dir/--include/--exclude.");
+            return 0;
+        }
+
+        Validator validator = new Validator(log, new Validator.Options()
+                .executeStatements(arguments.executeStatements)
+                .threadCount(arguments.threads)
+                .statementTimeoutSeconds(arguments.timeoutSeconds)
+                .kindBudgets(arguments.kindBudgets)
+                .cancelGraceSeconds(arguments.cancelGraceSeconds)
+                .maxFailures(arguments.maxFailures)
+                .runTimeoutSeconds(arguments.runTimeoutSeconds));
+        ReportWriter report = arguments.reportFile == null ? null
+                : ReportWriter.open(Path.of(arguments.reportFile), arguments.reportFormat);
+        ResultCollector collector = new ResultCollector(log, report, stmt -> null, result -> {
+        });
+        Validator.ValidationPass pass;
+        try (Database origin = arguments.originJdbcUrl == null ? null
+                : database("origin", arguments.originJdbcUrl, arguments.originUsername, arguments.originPassword,
+                arguments.originDatabaseId, arguments, config);
+             Database target = database("target", arguments.jdbcUrl, arguments.username, arguments.password,
+                     arguments.databaseId, arguments, config)) {
+            pass = validator.validatePass(statements, ValidationHistory.empty(), origin, target,
+                    Validator.RunDeadline.of(arguments.runTimeoutSeconds), null, collector::accept);
+        } catch (ValidationException | RuntimeException e) {
+            if (report != null) {
+                report.close();
+            }
+            throw e;
+        }
+        List<Validator.ValidationSummary> summaries = Stream.of(pass.origin(), pass.target())
+                .filter(Objects::nonNull).toList();
+        boolean deadlineExceeded = summaries.stream().anyMatch(Validator.ValidationSummary::deadlineExceeded);
+        if (report != null) {
+            report.finish("\"total\":" + collector.total() + ",\"failures\":" + collector.failureCount()
+                    + ",\"deadlineExceeded\":" + deadlineExceeded + ",\"databases\":["
+                    + summaries.stream().map(Validator.ValidationSummary::toJson).collect(Collectors.joining(","))
+                    + "]");
+        }
+
+        for (ValidationResult result : collector.failures()) {
+            out.println((result.status() == ValidationResult.Status.TIMED_OUT ? "TIME " : "FAIL ")
+                    + result.statement().fullId() + " (" + result.statement().kind() + ") ["
+                    + result.databaseLabel() + "] " + result.errorMessage());
+        }
+        long failures = collector.failureCount();
+        long notValidated = collector.notValidated();
+        out.println(failures + " failure(s) out of " + collector.total() + " validation(s)"
+                + (notValidated > 0 ? ", " + notValidated + " not validated" : ""));
+        if (deadlineExceeded) {
+            log.error("Run deadline of " + arguments.runTimeoutSeconds + "s exceeded");
+        }
+        return failures > 0 || deadlineExceeded ? 1 : 0;
+    }
+
+    private static MybatisConfig loadConfig(Arguments arguments, ValidatorLog log) throws IOException {
+        Path file = arguments.configFile == null ? null : Path.of(arguments.configFile);
+        for (int i = 0; file == null && i < arguments.mapperDirectories.size(); i++) {
+            Path candidate = Path.of(arguments.mapperDirectories.get(i), "mybatis-config.xml");
+            if (Files.isRegularFile(candidate)) {
+                file = candidate;
+            }
+        }
+        return file == null ? null : MybatisConfig.load(file, log);
+    }
+
+    private static Database database(String label, String url, String user, String pass, String databaseId,
+                                     Arguments arguments, MybatisConfig config) {
+        int threads = arguments.threads;
+        Database database = arguments.dryRun ? new Database(label, standIn(label))
+                : new Database(label, url, user, pass, (u, us, p) -> Database.hikari(u, us, p, threads),
+                () -> DriverManager.getConnection(url, user, pass));
+        return database
+                .databaseId(databaseId)
+                .schemas(arguments.schemas)
+                .mybatisConfig(config);
+    }
+
+    /**
+     * A {@code DataSource} whose connections accept every statement, so that a dry run, such as the one
+     * the AppCDS archive is recorded from, takes the validation path without a driver or database.
+     */
+    static DataSource standIn(String label) {
+        return jdbcStub(DataSource.class, "stand-in " + label);
+    }
+
+    private static <T> T jdbcStub(Class<T> type, String name) {
+        Object stub = Proxy.newProxyInstance(SqlCompatCli.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Class<?> returns = method.getReturnType();
+                    if (method.getName().equals("equals") && returns == boolean.class && args.length == 1) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode") && returns == int.class) {
+                        return System.identityHashCode(proxy);
+                    } else if (method.getName().equals("toString") && returns == String.class) {
+                        return name;
+                    } else if (returns.isPrimitive() && returns != void.class) {
+                        // false, 0, ...: no rows, no update counts, nothing to report
+                        return Array.get(Array.newInstance(returns, 1), 0);
+                    } else if (returns.isInterface() && (returns.getName().startsWith("java.sql.")
+                            || returns.getName().startsWith("javax.sql."))) {
+                        return jdbcStub(returns, name);
+                    }
+                    return null;
+                });
+        return type.cast(stub);
+    }
+
+    /**
+     * Parsed command line; every option takes its value as the next argument.
+     */
+    static final class Arguments {
+        String jdbcUrl;
+        String username;
+        String password;
+        String originJdbcUrl;
+        String originUsername;
+        String originPassword;
+        List<String> mapperDirectories = new ArrayList<>();
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        String configFile;
+        String databaseId;
+        String originDatabaseId;
+        List<String> schemas = List.of();
+        boolean executeStatements;
+        int threads = 4;
+        int timeoutSeconds = 8;
+        Map<SqlStatement.Kind, Integer> kindBudgets = new EnumMap<>(SqlStatement.Kind.class);
+        int cancelGraceSeconds = 2;
+        int runTimeoutSeconds;
+        int maxFailures;
+        String reportFile;
+        ReportWriter.Format reportFormat = ReportWriter.Format.JSON;
+        boolean scanOnly;
+        boolean dryRun;
+        boolean help;
+
+        static Arguments parse(String[] args) {
+            Arguments parsed = new Arguments();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--help", "-h" -> parsed.help = true;
+                    case "--execute" -> parsed.executeStatements = true;
+                    case "--scan-only" -> parsed.scanOnly = true;
+                    case "--dry-run" -> parsed.dryRun = true;
+                    case "--verbose" -> {
+                        // read by main before parsing
+                    }
+                    case "--jdbc-url" -> parsed.jdbcUrl = value(args, ++i, arg);
+                    case "--username" -> parsed.username = value(args, ++i, arg);
+                    case "--password" -> parsed.password = value(args, ++i, arg);
+                    case "--origin-jdbc-url" -> parsed.originJdbcUrl = value(args, ++i, arg);
+                    case "--origin-username" -> parsed.originUsername = value(args, ++i, arg);
+                    case "--origin-password" -> parsed.originPassword = value(args, ++i, arg);
+                    case "--mapper-dir" -> parsed.mapperDirectories.add(value(args, ++i, arg));
+                    case "--include" -> parsed.includes.add(value(args, ++i, arg));
+                    case "--exclude" -> parsed.excludes.add(value(args, ++i, arg));
+                    case "--config" -> parsed.configFile = value(args, ++i, arg);
+                    case "--database-id" -> parsed.databaseId = value(args, ++i, arg);
+                    case "--origin-database-id" -> parsed.originDatabaseId = value(args, ++i, arg);
+                    case "--schemas" -> parsed.schemas = List.of(value(args, ++i, arg).split("\\s*,\\s*"));
+                    case "--threads" -> parsed.threads = number(args, ++i, arg);
+                    case "--timeout" -> parsed.timeoutSeconds = number(args, ++i, arg);
+                    case "--budget" -> parsed.budget(value(args, ++i, arg));
+                    case "--cancel-grace" -> parsed.cancelGraceSeconds = number(args, ++i, arg);
+                    case "--run-timeout" -> parsed.runTimeoutSeconds = number(args, ++i, arg);
+                    case "--max-failures" -> parsed.maxFailures = number(args, ++i, arg);
+                    case "--report" -> parsed.reportFile = value(args, ++i, arg);
+                    case "--report-format" -> parsed.reportFormat = format(value(args, ++i, arg));
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (parsed.mapperDirectories.isEmpty()) {
+                parsed.mapperDirectories.add("src/main/resources");
+            }
+            if (parsed.includes.isEmpty()) {
+                parsed.includes.add("**/*Mapper.xml");
+            }
+            if (parsed.jdbcUrl == null && !parsed.scanOnly && !parsed.dryRun && !parsed.help) {
+                throw new IllegalArgumentException("--jdbc-url is required");
+            }
+            return parsed;
+        }
+
+        private void budget(String value) {
+            int eq = value.indexOf('=');
+            SqlStatement.Kind kind = SqlStatement.Kind.fromTagName(eq < 0 ? null : value.substring(0, eq).trim());
+            if (kind == SqlStatement.Kind.UNKNOWN) {
+                throw new IllegalArgumentException("--budget needs KIND=SECONDS with a kind of select, insert,"
+                        + " update or delete, got " + value);
+            }
+            try {
+                kindBudgets.put(kind, Integer.parseInt(value.substring(eq + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--budget needs a number of seconds, got " + value);
+            }
+        }
+
+        private static ReportWriter.Format format(String value) {
+            try {
+                return ReportWriter.Format.parse(value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("--report-format needs json or jsonl, got " + value);
+            }
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length || args[index].startsWith("--")) {
+                throw new IllegalArgumentException(option + " needs a value");
+            }
+            return args[index];
+        }
+
+        private static int number(String[] args, int index, String option) {
+            String value = value(args, index, option);
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(option + " needs a number, got " + value);
+            }
+        }
+    }
+}
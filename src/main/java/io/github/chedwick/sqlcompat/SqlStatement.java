@@ -32,14 +32,25 @@ public final class SqlStatement {
     private final Path sourceFile;
     private final String rawSql;
     private final List<ParameterSpec> parameters;
+    private final String databaseId;
 
     public SqlStatement(String id, String namespace, Kind kind, Path sourceFile, String rawSql, List<ParameterSpec> parameters) {
+        this(id, namespace, kind, sourceFile, rawSql, parameters, null);
+    }
+
+    /**
+     * @param databaseId the {@code databaseId} this variant is rendered for, or null when it applies to
+     *                   every database without a variant of its own
+     */
+    public SqlStatement(String id, String namespace, Kind kind, Path sourceFile, String rawSql, List<ParameterSpec> parameters,
+                        String databaseId) {
         this.id = Objects.requireNonNull(id, "id");
         this.namespace = namespace == null ? "" : namespace;
         this.kind = Objects.requireNonNull(kind, "kind");
         this.sourceFile = Objects.requireNonNull(sourceFile, "sourceFile");
         this.rawSql = Objects.requireNonNull(rawSql, "rawSql");
         this.parameters = List.copyOf(parameters == null ? Collections.emptyList() : parameters);
+        this.databaseId = databaseId == null || databaseId.isBlank() ? null : databaseId;
     }
 
     public String id() {
@@ -70,8 +81,19 @@ public final class SqlStatement {
         return parameters;
     }
 
+    public String databaseId() {
+        return databaseId;
+    }
+
+    /**
+     * This statement as the variant MyBatis renders for {@code databaseId}.
+     */
+    public SqlStatement forDatabase(String databaseId) {
+        return new SqlStatement(id, namespace, kind, sourceFile, rawSql, parameters, databaseId);
+    }
+
     @Override
     public String toString() {
-        return fullId() + " (" + kind + ") from " + sourceFile;
+        return fullId() + " (" + kind + (databaseId == null ? "" : ", " + databaseId) + ") from " + sourceFile;
     }
 }
@@ -0,0 +1,66 @@
+package io.github.chedwick.sqlcompat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed statements grouped by mapper file, so that a changed file can be re-parsed on its own and
+ * only the statements whose SQL or parameters differ are revalidated.
+ */
+final class StatementIndex {
+    private final Map<Path, Map<String, SqlStatement>> byFile = new LinkedHashMap<>();
+
+    /**
+     * Replaces the statements of one file and returns those that are new or changed.
+     */
+    List<SqlStatement> update(Path file, List<SqlStatement> parsed) {
+        Map<String, SqlStatement> previous = byFile.get(normalize(file));
+        Map<String, SqlStatement> current = new LinkedHashMap<>();
+        List<SqlStatement> affected = new ArrayList<>();
+        for (SqlStatement stmt : parsed) {
+            String key = key(stmt);
+            current.put(key, stmt);
+            SqlStatement old = previous == null ? null : previous.get(key);
+            if (old == null || !sameContent(old, stmt)) {
+                affected.add(stmt);
+            }
+        }
+        byFile.put(normalize(file), current);
+        return affected;
+    }
+
+    /**
+     * Forgets a deleted file and returns the statements it contained.
+     */
+    List<SqlStatement> remove(Path file) {
+        Map<String, SqlStatement> removed = byFile.remove(normalize(file));
+        return removed == null ? List.of() : new ArrayList<>(removed.values());
+    }
+
+    List<SqlStatement> all() {
+        List<SqlStatement> all = new ArrayList<>();
+        for (Map<String, SqlStatement> statements : byFile.values()) {
+            all.addAll(statements.values());
+        }
+        return all;
+    }
+
+    int fileCount() {
+        return byFile.size();
+    }
+
+    private static boolean sameContent(SqlStatement a, SqlStatement b) {
+        return a.rawSql().equals(b.rawSql()) && a.parameters().toString().equals(b.parameters().toString());
+    }
+
+    private static String key(SqlStatement stmt) {
+        return stmt.fullId() + "|" + stmt.kind() + "|" + stmt.databaseId();
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.chedwick.sqlcompat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Picks the statements a time-budgeted run validates, for builds that cannot afford full coverage.
+ * <p>
+ * Statements are grouped into strata by namespace, kind and mapper file and taken round-robin across
+ * strata, so every mapper gets its share before any gets a second statement. Suspect statements (never
+ * validated, failed last time or changed since) go first. The sample grows until the durations expected
+ * from history fill the budget on every thread.
+ * <p>
+ * The {@code databaseId} variants of a statement are taken or dropped together: each database validates
+ * one of them, so the sample and its counts are in statements as the databases see them.
+ */
+final class StatementSampling {
+
+    /**
+     * Assumed cost of a statement until the history has recorded any durations.
+     */
+    static final long DEFAULT_ESTIMATE_MILLIS = 100L;
+
+    private StatementSampling() {
+    }
+
+    /**
+     * @param statements the sampled statements with all their variants
+     * @param sampled    how many statements were sampled, counting a statement's variants once
+     * @param total      how many statements there are, counting a statement's variants once
+     */
+    record Plan(List<SqlStatement> statements, int sampled, int total, int suspects, long estimatedMillis) {
+        String describe() {
+            return sampled + " of " + total + " statement(s), " + suspects + " suspect, estimated "
+                    + estimatedMillis + " ms of statement time";
+        }
+    }
+
+    /**
+     * Returns the sample in priority order. The first statement is always included, so that even a
+     * budget smaller than any statement validates something.
+     */
+    static Plan plan(List<SqlStatement> statements, ValidationHistory history, long budgetMillis, int threads, long seed) {
+        Map<String, List<SqlStatement>> byStatement = new LinkedHashMap<>();
+        for (SqlStatement stmt : statements) {
+            byStatement.computeIfAbsent(stmt.fullId() + "|" + stmt.kind() + "|" + stmt.sourceFile(),
+                    k -> new ArrayList<>()).add(stmt);
+        }
+        List<Candidate> suspects = new ArrayList<>();
+        List<Candidate> others = new ArrayList<>();
+        List<Long> known = new ArrayList<>();
+        for (List<SqlStatement> variants : byStatement.values()) {
+            // Each database ran one variant; variants no database ran yet add nothing.
+            long expected = -1L;
+            boolean suspect = false;
+            for (SqlStatement stmt : variants) {
+                long millis = history.expectedMillis(stmt);
+                if (millis >= 0) {
+                    expected = Math.max(expected, 0L) + millis;
+                }
+                suspect |= history.suspect(stmt);
+            }
+            if (expected >= 0) {
+                known.add(expected);
+            }
+            (suspect ? suspects : others).add(new Candidate(variants, suspect, expected, rank(variants.get(0), seed)));
+        }
+        long fallback = DEFAULT_ESTIMATE_MILLIS;
+        if (!known.isEmpty()) {
+            known.sort(null);
+            fallback = known.get(known.size() / 2);
+        }
+
+        List<Candidate> ordered = roundRobin(suspects, seed);
+        ordered.addAll(roundRobin(others, seed));
+        long capacity = budgetMillis * Math.max(1, threads);
+        long used = 0L;
+        List<SqlStatement> sample = new ArrayList<>();
+        int sampled = 0;
+        int suspectCount = 0;
+        for (Candidate candidate : ordered) {
+            long cost = candidate.expectedMillis < 0 ? fallback : candidate.expectedMillis;
+            // Keep going past a statement that does not fit: a cheaper one further down may still.
+            if (sampled > 0 && used + cost > capacity) {
+                continue;
+            }
+            used += cost;
+            sample.addAll(candidate.variants);
+            sampled++;
+            if (candidate.suspect) {
+                suspectCount++;
+            }
+        }
+        return new Plan(sample, sampled, byStatement.size(), suspectCount, used);
+    }
+
+    /**
+     * Interleaves the strata: the first statement of each, then the second of each, and so on. Both the
+     * order within a stratum and the order of the strata rotate with the seed.
+     */
+    private static List<Candidate> roundRobin(List<Candidate> candidates, long seed) {
+        Map<String, List<Candidate>> strata = new TreeMap<>();
+        for (Candidate candidate : candidates) {
+            SqlStatement stmt = candidate.variants.get(0);
+            strata.computeIfAbsent(stmt.namespace() + "|" + stmt.kind() + "|" + stmt.sourceFile(), k -> new ArrayList<>())
+                    .add(candidate);
+        }
+        List<List<Candidate>> groups = new ArrayList<>(strata.values());
+        for (List<Candidate> group : groups) {
+            group.sort(Comparator.comparingLong(Candidate::rank));
+        }
+        groups.sort(Comparator.comparingLong(group -> group.get(0).rank));
+        List<Candidate> ordered = new ArrayList<>(candidates.size());
+        for (int round = 0; ordered.size() < candidates.size(); round++) {
+            for (List<Candidate> group : groups) {
+                if (round < group.size()) {
+                    ordered.add(group.get(round));
+                }
+            }
+        }
+        return ordered;
+    }
+
+    private static long rank(SqlStatement stmt, long seed) {
+        CRC32 crc = new CRC32();
+        crc.update((seed + "|" + stmt.fullId() + "|" + stmt.kind()).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private record Candidate(List<SqlStatement> variants, boolean suspect, long expectedMillis, long rank) {
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.chedwick.sqlcompat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Deterministically partitions statements across CI nodes so that every node, given the same mapper
+ * files, agrees on which statements it owns without any coordination.
+ */
+final class StatementSharding {
+
+    private StatementSharding() {
+    }
+
+    /**
+     * Returns the statements owned by {@code shardIndex}, preserving their original order.
+     *
+     * @see #assign(List, int, ValidationHistory)
+     */
+    static List<SqlStatement> select(List<SqlStatement> statements, int shardIndex, int shardCount,
+                                     ValidationHistory history) {
+        if (shardCount <= 1) {
+            return statements;
+        }
+        return assign(statements, shardCount, history).owned(shardIndex);
+    }
+
+    /**
+     * Splits the statements across {@code shardCount} shards.
+     * <p>
+     * Without history, ownership is a stable hash of {@code fullId|kind}. With history, statements are
+     * assigned longest-first to the currently lightest shard, which balances wall-clock time rather than
+     * statement counts; every node must then see the same history directory for the plan to agree, which
+     * merge-reports checks through {@link Assignment#fingerprint()}.
+     * <p>
+     * Either way, all statements with the same {@code fullId|kind}, e.g. its {@code databaseId} variants,
+     * go to one shard, so each shard validates whichever variant a database picks.
+     */
+    static Assignment assign(List<SqlStatement> statements, int shardCount, ValidationHistory history) {
+        int[] owner = history == null || history.size() == 0
+                ? hashOwners(statements, shardCount)
+                : weightedOwners(statements, shardCount, history);
+        return new Assignment(statements, owner);
+    }
+
+    /**
+     * Which shard owns each statement.
+     */
+    static final class Assignment {
+        private final List<SqlStatement> statements;
+        private final int[] owner;
+
+        private Assignment(List<SqlStatement> statements, int[] owner) {
+            this.statements = statements;
+            this.owner = owner;
+        }
+
+        List<SqlStatement> owned(int shardIndex) {
+            List<SqlStatement> selected = new ArrayList<>();
+            for (int i = 0; i < statements.size(); i++) {
+                if (owner[i] == shardIndex) {
+                    selected.add(statements.get(i));
+                }
+            }
+            return selected;
+        }
+
+        /**
+         * Hash of every statement and its owner, independent of scan order and checkout location. Shards
+         * that scanned different statements or balanced by different histories disagree on it.
+         */
+        String fingerprint() {
+            List<String> lines = new ArrayList<>(statements.size());
+            for (int i = 0; i < statements.size(); i++) {
+                SqlStatement stmt = statements.get(i);
+                lines.add(stmt.fullId() + "|" + stmt.kind() + "|" + stmt.databaseId() + "|" + owner[i]);
+            }
+            Collections.sort(lines);
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (String line : lines) {
+                    digest.update(line.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '\n');
+                }
+                return HexFormat.of().formatHex(digest.digest(), 0, 8);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+
+    static int shardOf(SqlStatement stmt, int shardCount) {
+        CRC32 crc = new CRC32();
+        crc.update((stmt.fullId() + "|" + stmt.kind()).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shardCount);
+    }
+
+    private static int[] hashOwners(List<SqlStatement> statements, int shardCount) {
+        int[] owner = new int[statements.size()];
+        for (int i = 0; i < statements.size(); i++) {
+            owner[i] = shardOf(statements.get(i), shardCount);
+        }
+        return owner;
+    }
+
+    private static int[] weightedOwners(List<SqlStatement> statements, int shardCount, ValidationHistory history) {
+        long fallback = history.medianDuration();
+        Map<String, List<Integer>> groups = new TreeMap<>();
+        for (int i = 0; i < statements.size(); i++) {
+            groups.computeIfAbsent(statements.get(i).fullId() + "|" + statements.get(i).kind(), k -> new ArrayList<>())
+                    .add(i);
+        }
+        Map<String, Long> weight = new HashMap<>();
+        groups.forEach((key, members) -> {
+            // Each database ran one variant; variants no database ran yet add nothing.
+            long expected = -1L;
+            for (int i : members) {
+                long millis = history.expectedMillis(statements.get(i));
+                if (millis >= 0) {
+                    expected = Math.max(expected, 0L) + millis;
+                }
+            }
+            weight.put(key, expected < 0 ? fallback : expected);
+        });
+        // Groups are keyed by id, which breaks ties so that the plan does not depend on scan order.
+        List<String> order = new ArrayList<>(groups.keySet());
+        order.sort(Comparator.<String>comparingLong(weight::get).reversed());
+        long[] load = new long[shardCount];
+        int[] owner = new int[statements.size()];
+        for (String key : order) {
+            int lightest = 0;
+            for (int s = 1; s < shardCount; s++) {
+                if (load[s] < load[lightest]) {
+                    lightest = s;
+                }
+            }
+            for (int i : groups.get(key)) {
+                owner[i] = lightest;
+            }
+            // Count every statement as at least 1ms so zero-cost ones still spread out.
+            load[lightest] += Math.max(1L, weight.get(key));
+        }
+        return owner;
+    }
+}
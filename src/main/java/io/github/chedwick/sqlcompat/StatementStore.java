@@ -0,0 +1,207 @@
+package io.github.chedwick.sqlcompat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the statements of a scan with their namespaces, ids, files, SQL and parameters shared between
+ * statements; duplicates are found by a {@code long} key built from the ids of those parts.
+ */
+final class StatementStore {
+    private static final String NO_DATABASE_ID = "";
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, String> sqlTexts = new HashMap<>();
+    private final Map<ParameterSpec, ParameterSpec> specs = new HashMap<>();
+    private final Map<List<ParameterSpec>, List<ParameterSpec>> signatures = new HashMap<>();
+    private final Map<Path, Integer> fileIds = new HashMap<>();
+    private final List<Path> files = new ArrayList<>();
+    private Path lastFile;
+    private int lastFileId;
+    private final LongIntMap names = new LongIntMap();
+    private final LongIntMap variants = new LongIntMap();
+    private final LongIntMap index = new LongIntMap();
+    private final List<SqlStatement> statements = new ArrayList<>();
+
+    /**
+     * Adds a statement unless one with the same full id, kind and {@code databaseId} from the same
+     * mapper file is already stored.
+     *
+     * @return the stored, compacted statement, or null for a duplicate
+     */
+    SqlStatement add(SqlStatement stmt) {
+        SqlStatement compact = intern(stmt);
+        long name = (long) stringId(compact.namespace()) << 32 | stringId(compact.id());
+        int nameId = names.putIfAbsent(name, names.size());
+        long variant = (long) fileId(stmt.sourceFile()) << 32
+                | (long) stringId(compact.databaseId() == null ? NO_DATABASE_ID : compact.databaseId()) << 3
+                | compact.kind().ordinal();
+        int variantId = variants.putIfAbsent(variant, variants.size());
+        if (index.putIfAbsent((long) nameId << 32 | variantId, statements.size()) != statements.size()) {
+            return null;
+        }
+        statements.add(compact);
+        return compact;
+    }
+
+    /**
+     * The same statement with its parts shared with the statements seen before; the statement itself
+     * when all of them already are.
+     */
+    SqlStatement intern(SqlStatement stmt) {
+        String namespace = string(stmt.namespace());
+        String id = string(stmt.id());
+        Path file = files.get(fileId(stmt.sourceFile()));
+        String sql = sql(stmt.rawSql());
+        List<ParameterSpec> parameters = signature(stmt.parameters());
+        String databaseId = stmt.databaseId() == null ? null : string(stmt.databaseId());
+        if (namespace == stmt.namespace() && id == stmt.id() && file == stmt.sourceFile() && sql == stmt.rawSql()
+                && parameters == stmt.parameters() && databaseId == stmt.databaseId()) {
+            return stmt;
+        }
+        return new SqlStatement(id, namespace, stmt.kind(), file, sql, parameters, databaseId);
+    }
+
+    List<SqlStatement> statements() {
+        return statements;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    int fileCount() {
+        return files.size();
+    }
+
+    int signatureCount() {
+        return signatures.size();
+    }
+
+    /**
+     * Distinct SQL texts among the interned statements.
+     */
+    int sqlCount() {
+        return sqlTexts.size();
+    }
+
+    private String string(String value) {
+        return strings.get(stringId(value));
+    }
+
+    private String sql(String value) {
+        String existing = sqlTexts.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    private List<ParameterSpec> signature(List<ParameterSpec> parameters) {
+        List<ParameterSpec> existing = signatures.get(parameters);
+        if (existing != null) {
+            return existing;
+        }
+        List<ParameterSpec> shared = new ArrayList<>(parameters.size());
+        for (ParameterSpec spec : parameters) {
+            ParameterSpec known = specs.putIfAbsent(spec, spec);
+            shared.add(known == null ? spec : known);
+        }
+        List<ParameterSpec> signature = List.copyOf(shared);
+        signatures.put(signature, signature);
+        return signature;
+    }
+
+    private int stringId(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Files are told apart by absolute path, so that one mapper reached through two spellings of its
+     * directory is still the same file, stored under the first spelling. Statements arrive file by
+     * file, so the last file is remembered rather than made absolute again.
+     */
+    private int fileId(Path file) {
+        if (file != lastFile) {
+            Integer id = fileIds.putIfAbsent(file.toAbsolutePath(), files.size());
+            if (id == null) {
+                id = files.size();
+                files.add(file);
+            }
+            lastFile = file;
+            lastFileId = id;
+        }
+        return lastFileId;
+    }
+
+    /**
+     * Open-addressing map from {@code long} keys to non-negative {@code int} values.
+     */
+    private static final class LongIntMap {
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private boolean[] used = new boolean[64];
+        private int size;
+
+        /**
+         * Maps {@code key} to {@code value} unless it is mapped already.
+         *
+         * @return the value now mapped to {@code key}
+         */
+        int putIfAbsent(long key, int value) {
+            int slot = slot(keys, used, key);
+            if (used[slot]) {
+                return values[slot];
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            used[slot] = true;
+            if (++size * 4 > keys.length * 3) {
+                grow();
+            }
+            return value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = slot(keys, used, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    used[slot] = true;
+                }
+            }
+        }
+
+        private static int slot(long[] keys, boolean[] used, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+    }
+}
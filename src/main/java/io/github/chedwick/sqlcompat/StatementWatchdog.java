@@ -0,0 +1,199 @@
+package io.github.chedwick.sqlcompat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Polices in-flight statements and cancels the ones that overrun their budget.
+ * <p>
+ * The first step is {@link Statement#cancel()}; if the statement is still running one grace
+ * period later, {@code pg_cancel_backend} is issued over a separate control connection.
+ */
+final class StatementWatchdog implements AutoCloseable {
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * Opens a connection outside the validation pool, which may be exhausted by stuck statements.
+     */
+    @FunctionalInterface
+    interface ControlConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ValidatorLog log;
+    private final ControlConnectionFactory controlConnections;
+    private final long graceNanos;
+    private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService timer;
+
+    StatementWatchdog(ValidatorLog log, ControlConnectionFactory controlConnections, long graceNanos) {
+        this.log = log;
+        this.controlConnections = controlConnections;
+        this.graceNanos = Math.max(0, graceNanos);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sql-valid-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.scheduleWithFixedDelay(this::poll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a statement that is about to execute. A budget of zero or less disables the
+     * per-statement check; the statement can still be cancelled through {@link #cancelAll(String, boolean)}.
+     */
+    Handle begin(SqlStatement stmt, Connection conn, PreparedStatement ps, long budgetNanos) {
+        long id = sequence.incrementAndGet();
+        InFlight entry = new InFlight(id, stmt, ps, backendPid(conn), System.nanoTime(), budgetNanos);
+        inFlight.put(id, entry);
+        return new Handle(this, entry);
+    }
+
+    /**
+     * Cancels every statement still in flight, e.g. when the run deadline has been reached
+     * ({@code timeout} true) or the run is stopped early for another reason.
+     */
+    void cancelAll(String reason, boolean timeout) {
+        for (InFlight entry : inFlight.values()) {
+            cancel(entry, reason, timeout, System.nanoTime());
+        }
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        inFlight.clear();
+    }
+
+    private void poll() {
+        long now = System.nanoTime();
+        for (InFlight entry : inFlight.values()) {
+            if (entry.cancelledAt == 0L) {
+                if (entry.budgetNanos > 0 && now - entry.startedAt > entry.budgetNanos + graceNanos) {
+                    cancel(entry, "exceeded statement budget of "
+                            + TimeUnit.NANOSECONDS.toSeconds(entry.budgetNanos) + "s", true, now);
+                }
+            } else if (!entry.backendCancelled && now - entry.cancelledAt > graceNanos) {
+                cancelBackend(entry);
+            }
+        }
+    }
+
+    private void cancel(InFlight entry, String reason, boolean timeout, long now) {
+        synchronized (entry) {
+            if (entry.cancelledAt != 0L) {
+                return;
+            }
+            entry.reason = reason;
+            entry.timeout = timeout;
+            entry.cancelledAt = now;
+        }
+        log.warn("Cancelling " + entry.statement.fullId() + ": " + reason);
+        try {
+            entry.ps.cancel();
+        } catch (SQLException | RuntimeException e) {
+            log.debug("Statement.cancel failed for " + entry.statement.fullId() + ": " + e.getMessage());
+        }
+    }
+
+    private void cancelBackend(InFlight entry) {
+        entry.backendCancelled = true;
+        if (entry.backendPid == null || controlConnections == null) {
+            return;
+        }
+        log.warn("Statement " + entry.statement.fullId() + " ignored cancel; issuing pg_cancel_backend("
+                + entry.backendPid + ")");
+        try (Connection control = controlConnections.open();
+             PreparedStatement ps = control.prepareStatement("SELECT pg_cancel_backend(?)")) {
+            ps.setInt(1, entry.backendPid);
+            ps.execute();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("pg_cancel_backend failed for " + entry.statement.fullId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the PostgreSQL backend pid without a round trip by unwrapping the driver connection.
+     */
+    private static Integer backendPid(Connection conn) {
+        try {
+            Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+            if (!conn.isWrapperFor(pgConnection)) {
+                return null;
+            }
+            Object unwrapped = conn.unwrap(pgConnection);
+            return (Integer) pgConnection.getMethod("getBackendPID").invoke(unwrapped);
+        } catch (SQLException | ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final class InFlight {
+        private final long id;
+        private final SqlStatement statement;
+        private final PreparedStatement ps;
+        private final Integer backendPid;
+        private final long startedAt;
+        private final long budgetNanos;
+        private volatile long cancelledAt;
+        private volatile boolean backendCancelled;
+        private volatile String reason;
+        private volatile boolean timeout;
+
+        private InFlight(long id, SqlStatement statement, PreparedStatement ps, Integer backendPid,
+                         long startedAt, long budgetNanos) {
+            this.id = id;
+            this.statement = statement;
+            this.ps = ps;
+            this.backendPid = backendPid;
+            this.startedAt = startedAt;
+            this.budgetNanos = budgetNanos;
+        }
+    }
+
+    /**
+     * Registration returned by {@link #begin}; closing it deregisters the statement.
+     */
+    static final class Handle implements AutoCloseable {
+        private final StatementWatchdog owner;
+        private final InFlight entry;
+
+        private Handle(StatementWatchdog owner, InFlight entry) {
+            this.owner = owner;
+            this.entry = entry;
+        }
+
+        boolean cancelled() {
+            return entry.cancelledAt != 0L;
+        }
+
+        String reason() {
+            return entry.reason;
+        }
+
+        /**
+         * True when the cancellation was caused by a budget or deadline rather than an early stop.
+         */
+        boolean timedOut() {
+            return entry.timeout;
+        }
+
+        @Override
+        public void close() {
+            owner.inFlight.remove(entry.id);
+        }
+    }
+}
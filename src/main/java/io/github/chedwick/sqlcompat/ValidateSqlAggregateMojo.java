@@ -0,0 +1,234 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates the mappers of every module in the reactor in a single pass, sharing one pool per database
+ * and one report. Results are attributed back to their module by source file location.
+ * <p>
+ * Each module is scanned with its own scanner and plugin settings, falling back to the aggregator's;
+ * references to fragments, result maps and caches of other modules resolve across the reactor. Both
+ * databases pick their {@code databaseId} with the first {@code databaseIdProvider} a module declares.
+ */
+@Mojo(name = "validate-sql-aggregate", aggregator = true, defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class ValidateSqlAggregateMojo extends ValidateSqlMojo {
+
+    private static final String PLUGIN_KEY = "io.github.chedwick:mybatis-sql-compat-checker";
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * Module base directories, longest first so that nested modules win over their parents.
+     */
+    private final Map<Path, String> moduleRoots = new LinkedHashMap<>();
+    private final Map<Path, String> moduleByFile = new HashMap<>();
+
+    @Override
+    List<SqlStatement> scanStatements(List<String> directories, List<String> includePatterns,
+                                      List<String> excludePatterns) throws MojoExecutionException {
+        List<MavenProject> projects = reactorProjects == null ? List.of() : reactorProjects;
+        List<Map.Entry<Path, String>> roots = new ArrayList<>();
+        ScanMetrics metrics = new ScanMetrics();
+        scanMetrics(metrics);
+        StatementStore store = new StatementStore();
+        List<SqlStatement> statements = new ArrayList<>();
+        List<ModuleScan> modules = new ArrayList<>();
+        List<MapperScanner> prepared = new ArrayList<>();
+        MapperScanner first = null;
+        MybatisConfig providerConfig = null;
+        String providerModule = null;
+        int directoryCount = 0;
+        for (MavenProject project : projects) {
+            if (project.getBasedir() == null) {
+                continue;
+            }
+            Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+            roots.add(Map.entry(basedir, project.getArtifactId()));
+            ModuleSettings settings = ModuleSettings.of(project, log());
+            List<String> moduleDirectories = new ArrayList<>();
+            for (String dir : settings.directories() == null ? directories : settings.directories()) {
+                Path path = basedir.resolve(dir).normalize();
+                if (Files.isDirectory(path)) {
+                    moduleDirectories.add(path.toString());
+                }
+            }
+            String configFile = settings.mybatisConfigFile() != null ? settings.mybatisConfigFile() : mybatisConfigFile();
+            MybatisConfig config = readMybatisConfig(
+                    configFile == null || configFile.isBlank() ? null : basedir.resolve(configFile).toString(),
+                    moduleDirectories);
+            MapperScanner scanner = new MapperScanner(log(), moduleDirectories,
+                    settings.includes() == null ? includePatterns : settings.includes(),
+                    settings.excludes() == null ? excludePatterns : settings.excludes());
+            scanner.config(config);
+            scanner.metrics(metrics);
+            if (!moduleDirectories.isEmpty()) {
+                directoryCount += moduleDirectories.size();
+                try {
+                    scanner.prepare();
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Failed to scan mapper XML files", e);
+                }
+                prepared.add(scanner);
+            }
+            modules.add(new ModuleScan(project, scanner, config == null ? "" : config.fingerprint(),
+                    !moduleDirectories.isEmpty()));
+            if (first == null) {
+                first = scanner;
+            }
+            if (config != null && config.hasDatabaseIdProvider()) {
+                if (providerConfig == null || !providerConfig.hasDatabaseIdProvider()) {
+                    providerConfig = config;
+                    providerModule = project.getArtifactId();
+                } else if (!providerConfig.fingerprint().equals(config.fingerprint())) {
+                    getLog().warn("Module " + project.getArtifactId() + " has its own databaseIdProvider; the databases"
+                            + " pick their databaseId with the one of " + providerModule + ". Set originDatabaseId and"
+                            + " targetDatabaseId if they differ.");
+                }
+            } else if (providerConfig == null && config != null) {
+                providerConfig = config;
+                providerModule = project.getArtifactId();
+            }
+        }
+        // Resolve references between modules before any statement is extracted.
+        MapperScanner.resolveReactor(prepared);
+        for (ModuleScan module : modules) {
+            if (module.mappers()) {
+                try {
+                    statements.addAll(module.scanner().complete(store));
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Failed to scan mapper XML files", e);
+                }
+            }
+            if (scanAnnotations()) {
+                statements.addAll(scanAnnotatedClasses(module.scanner(), classDirectories(List.of(module.project())),
+                        module.fingerprint(), store));
+            }
+        }
+        roots.sort((a, b) -> Integer.compare(b.getKey().getNameCount(), a.getKey().getNameCount()));
+        moduleRoots.clear();
+        moduleByFile.clear();
+        for (Map.Entry<Path, String> root : roots) {
+            moduleRoots.put(root.getKey(), root.getValue());
+        }
+        databaseIdConfig(providerConfig);
+        getLog().info("Aggregated " + directoryCount + " mapper director(ies) from " + projects.size() + " module(s)");
+        if (scanDependencies()) {
+            if (first == null) {
+                first = new MapperScanner(log(), List.of(), includePatterns, excludePatterns);
+            }
+            statements.addAll(scanDependencyJars(first, includePatterns, excludePatterns, store));
+        }
+        return statements;
+    }
+
+    private record ModuleScan(MavenProject project, MapperScanner scanner, String fingerprint, boolean mappers) {
+    }
+
+    /**
+     * The scan settings a module configures for this plugin, in its plugin configuration or in an
+     * execution of validate-sql; null for each one it leaves to the aggregator's.
+     */
+    record ModuleSettings(List<String> directories, List<String> includes, List<String> excludes,
+                          String mybatisConfigFile) {
+
+        static ModuleSettings of(MavenProject project, ValidatorLog log) {
+            Plugin plugin = project.getPlugin(PLUGIN_KEY);
+            Xpp3Dom configuration = null;
+            if (plugin != null) {
+                if (plugin.getConfiguration() instanceof Xpp3Dom dom) {
+                    configuration = new Xpp3Dom(dom);
+                }
+                for (PluginExecution execution : plugin.getExecutions()) {
+                    if (execution.getGoals().contains("validate-sql")
+                            && execution.getConfiguration() instanceof Xpp3Dom dom) {
+                        configuration = configuration == null
+                                ? new Xpp3Dom(dom)
+                                : Xpp3Dom.mergeXpp3Dom(new Xpp3Dom(dom), configuration);
+                    }
+                }
+            }
+            if (configuration == null) {
+                return new ModuleSettings(null, null, null, null);
+            }
+            String module = project.getArtifactId();
+            return new ModuleSettings(values(configuration, "mapperDirectories", module, log),
+                    values(configuration, "includes", module, log), values(configuration, "excludes", module, log),
+                    value(configuration.getChild("mybatisConfigFile"), module, log));
+        }
+
+        private static List<String> values(Xpp3Dom configuration, String name, String module, ValidatorLog log) {
+            Xpp3Dom list = configuration.getChild(name);
+            if (list == null) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            for (Xpp3Dom child : list.getChildren()) {
+                String value = value(child, module, log);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * The element's text, or null when it is missing, blank or an expression left unresolved.
+         */
+        private static String value(Xpp3Dom element, String module, ValidatorLog log) {
+            if (element == null || element.getValue() == null || element.getValue().isBlank()) {
+                return null;
+            }
+            if (element.getValue().contains("${")) {
+                log.warn("Ignoring <" + element.getName() + ">" + element.getValue() + "</" + element.getName()
+                        + "> of module " + module + ": the aggregator cannot resolve the expression");
+                return null;
+            }
+            return element.getValue().trim();
+        }
+    }
+
+    @Override
+    List<Path> dependencyJars() throws MojoExecutionException {
+        return dependencyJars(reactorProjects == null ? List.of() : reactorProjects);
+    }
+
+    @Override
+    List<Path> classDirectories() {
+        return classDirectories(reactorProjects == null ? List.of() : reactorProjects);
+    }
+
+    @Override
+    String moduleOf(SqlStatement stmt) {
+        Path file = stmt.sourceFile();
+        String cached = moduleByFile.get(file);
+        if (cached != null) {
+            return cached;
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        String module = "<unknown>";
+        for (Map.Entry<Path, String> root : moduleRoots.entrySet()) {
+            if (absolute.startsWith(root.getKey())) {
+                module = root.getValue();
+                break;
+            }
+        }
+        moduleByFile.put(file, module);
+        return module;
+    }
+}
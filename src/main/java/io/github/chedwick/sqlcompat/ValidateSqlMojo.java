@@ -2,29 +2,43 @@ package io.github.chedwick.sqlcompat;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.util.artifact.JavaScopes;
+import org.eclipse.aether.util.filter.DependencyFilterUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.Savepoint;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
-import java.util.LinkedHashMap;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 
 /**
@@ -62,11 +76,18 @@ public class ValidateSqlMojo extends AbstractMojo {
     private List<String> excludes = new ArrayList<>();
 
     @Parameter(property = "validateSql.statementTimeoutSeconds", defaultValue = "8")
-    private int statementTimeoutSeconds;
+    private int statementTimeoutSeconds = 8;
 
     @Parameter(property = "validateSql.reportPath", defaultValue = "${project.build.directory}/sql-valid-report.json")
     private String reportPath;
 
+    /**
+     * Report layout: "json" for a single document, "jsonl" for one entry per line plus a summary line.
+     * Either way entries are streamed to disk as they complete.
+     */
+    @Parameter(property = "validateSql.reportFormat", defaultValue = "json")
+    private String reportFormat;
+
     /**
      * When true, execute the statements; otherwise run EXPLAIN which avoids writes.
      */
@@ -74,55 +95,265 @@ public class ValidateSqlMojo extends AbstractMojo {
     private boolean executeStatements;
 
     @Parameter(property = "validateSql.threadCount", defaultValue = "4")
-    private int threadCount;
+    private int threadCount = 4;
+
+    /**
+     * Wall-clock limit for the whole run in seconds; 0 disables it. When reached, in-flight statements
+     * are cancelled, queued ones are reported as never started and a partial report is written.
+     */
+    @Parameter(property = "validateSql.runTimeoutSeconds", defaultValue = "0")
+    private int runTimeoutSeconds;
+
+    /**
+     * Per-kind statement budgets in seconds (keys SELECT, INSERT, UPDATE, DELETE), overriding
+     * statementTimeoutSeconds for that kind.
+     */
+    @Parameter
+    private Map<String, String> statementBudgets = new HashMap<>();
+
+    /**
+     * How long a statement may overrun its budget before the watchdog calls Statement.cancel, and how
+     * long after that before it escalates to pg_cancel_backend over a separate connection.
+     */
+    @Parameter(property = "validateSql.cancelGraceSeconds", defaultValue = "2")
+    private int cancelGraceSeconds = 2;
+
+    /**
+     * Directory of the append-only run history that records every statement's duration, plan cost and
+     * status per database and run. Runs are scheduled from each statement's latest sample: ones that
+     * failed or changed since are validated first, the rest longest-first. The history-trends goal
+     * reports drift over it. Blank, the default, disables it.
+     */
+    @Parameter(property = "validateSql.historyDirectory")
+    private String historyDirectory;
+
+    /**
+     * Runs the history keeps; older ones are compacted away once half as many again have piled up.
+     * 0 keeps every run.
+     */
+    @Parameter(property = "validateSql.historyRetainRuns", defaultValue = "100")
+    private int historyRetainRuns = 100;
+
+    /**
+     * Stop validating once this many statements have failed; 0 validates everything.
+     */
+    @Parameter(property = "validateSql.maxFailures", defaultValue = "0")
+    private int maxFailures;
+
+    /**
+     * Zero-based index of the shard validated by this run; see shardCount.
+     */
+    @Parameter(property = "validateSql.shardIndex", defaultValue = "0")
+    private int shardIndex;
+
+    /**
+     * Number of CI nodes the statements are split across. Each node runs with its own shardIndex and
+     * the merge-reports goal combines their reports.
+     */
+    @Parameter(property = "validateSql.shardCount", defaultValue = "1")
+    private int shardCount = 1;
+
+    /**
+     * Balance shards by historical duration instead of a plain hash of the statement id. All nodes must
+     * share the same history directory for the partitions to line up.
+     */
+    @Parameter(property = "validateSql.shardByDuration", defaultValue = "false")
+    private boolean shardByDuration;
+
+    /**
+     * Also validate mapper XMLs packaged inside the project's runtime dependency JARs.
+     */
+    @Parameter(property = "validateSql.scanDependencies", defaultValue = "false")
+    private boolean scanDependencies;
+
+    /**
+     * {@code groupId:artifactId} patterns ({@code *} wildcards) of the dependencies to scan; empty scans all.
+     */
+    @Parameter(property = "validateSql.dependencyIncludes")
+    private List<String> dependencyIncludes = new ArrayList<>();
+
+    /**
+     * Cache of statements parsed from dependency JARs, keyed by JAR checksum and shared between builds.
+     * Blank disables caching.
+     */
+    @Parameter(property = "validateSql.dependencyCacheDirectory", defaultValue = "${user.home}/.m2/sql-compat-cache")
+    private String dependencyCacheDirectory;
+
+    /**
+     * Also validate statements declared with {@code @Select}/{@code @Insert}/{@code @Update}/{@code @Delete}
+     * on mapper interfaces, read from the compiled classes without loading them. Off by default, like
+     * scanDependencies, so that existing builds do not start validating SQL they never did.
+     */
+    @Parameter(property = "validateSql.scanAnnotations", defaultValue = "false")
+    private boolean scanAnnotations;
+
+    /**
+     * Statements extracted from annotated classes, keyed by class file checksum. Blank disables caching.
+     */
+    @Parameter(property = "validateSql.annotationCacheFile",
+            defaultValue = "${project.build.directory}/sql-compat-annotation-cache.json")
+    private String annotationCacheFile;
+
+    /**
+     * The project's {@code mybatis-config.xml}, for settings, type aliases, type handlers and the
+     * {@code databaseIdProvider}. When blank, a {@code mybatis-config.xml} at the root of a mapper
+     * directory is used if present.
+     */
+    @Parameter(property = "validateSql.mybatisConfigFile")
+    private String mybatisConfigFile;
+
+    /**
+     * {@code databaseId} of the origin database, overriding the config's {@code databaseIdProvider}.
+     */
+    @Parameter(property = "validateSql.originDatabaseId")
+    private String originDatabaseId;
+
+    /**
+     * {@code databaseId} of the target database, overriding the config's {@code databaseIdProvider}.
+     */
+    @Parameter(property = "validateSql.targetDatabaseId")
+    private String targetDatabaseId;
+
+    /**
+     * PostgreSQL schemas, e.g. one per tenant, to validate every statement against instead of the
+     * connection's default {@code search_path}. Each statement is prepared once per connection and run in
+     * every schema under its own savepoint.
+     */
+    @Parameter(property = "validateSql.schemas")
+    private List<String> schemas = new ArrayList<>();
+
+    /**
+     * Query run on each database whose first column lists the schemas to validate against, e.g.
+     * {@code SELECT nspname FROM pg_namespace WHERE nspname LIKE 'tenant%'}. Ignored when schemas is set.
+     */
+    @Parameter(property = "validateSql.schemaQuery")
+    private String schemaQuery;
+
+    /**
+     * Wall-clock budget in seconds for a sampled run; 0 validates every statement. A stratified sample
+     * across namespaces, kinds and mapper files, suspect statements first, is sized from the history to
+     * fit, and statements not started when the budget is spent are left out of the run.
+     */
+    @Parameter(property = "validateSql.sampleBudgetSeconds", defaultValue = "0")
+    private int sampleBudgetSeconds;
+
+    /**
+     * Seed rotating which statements a sampled run picks; blank changes it daily so that successive
+     * builds cover different statements.
+     */
+    @Parameter(property = "validateSql.sampleSeed")
+    private String sampleSeed;
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    /**
+     * Resolves runtime dependencies on demand, only when scanDependencies asks for their JARs, so that
+     * other runs neither pay for resolution nor fail on dependencies that cannot be resolved.
+     */
+    @Component
+    private ProjectDependenciesResolver dependenciesResolver;
+
+    private Validator validator;
+    private MybatisConfig mybatisConfig;
+    private ScanMetrics scanMetrics;
+    private StatementSampling.Plan samplePlan;
+    private String shardPlan;
+    private Validator.RunDeadline sampleDeadline;
 
     @Override
     public void execute() throws MojoExecutionException {
         Objects.requireNonNull(jdbcUrl, "jdbcUrl");
         Objects.requireNonNull(originJdbcUrl, "originJdbcUrl");
-        MapperScanner scanner = new MapperScanner(getLog(), mapperDirectories, includes, excludes);
-        List<SqlStatement> statements;
-        try {
-            statements = scanner.scan();
-        } catch (Exception e) {
-            throw new MojoExecutionException("Failed to scan mapper XML files", e);
-        }
+        prepareRun();
+        Validator.RunDeadline deadline = Validator.RunDeadline.of(runTimeoutSeconds);
+        List<SqlStatement> statements = scanStatements(mapperDirectories, includes, excludes);
         if (statements.isEmpty()) {
             getLog().warn("No mapper statements found. Check mapperDirectories/includes/excludes.");
             return;
         }
 
+        RunHistoryStore store = openHistory();
+        ValidationHistory history = loadHistory(store);
+        if (shardCount > 1) {
+            int scanned = statements.size();
+            StatementSharding.Assignment assignment = StatementSharding.assign(statements, shardCount,
+                    shardByDuration ? history : null);
+            statements = assignment.owned(shardIndex);
+            shardPlan = assignment.fingerprint();
+            getLog().info("Shard " + shardIndex + "/" + shardCount + " owns " + statements.size() + " of " + scanned
+                    + " mapped statements" + (shardByDuration && history.size() > 0 ? " (balanced by history)" : "")
+                    + ", plan " + shardPlan);
+            if (statements.isEmpty()) {
+                ReportWriter report = openReport();
+                finishReport(report, newCollector(report, null), new Validator.ValidationSummary("origin", 0, 0, 0, 0, false, null), null);
+                return;
+            }
+        }
+        if (sampleBudgetSeconds > 0) {
+            samplePlan = StatementSampling.plan(statements, history, TimeUnit.SECONDS.toMillis(sampleBudgetSeconds),
+                    Math.max(1, threadCount), sampleSeed());
+            sampleDeadline = Validator.RunDeadline.of(sampleBudgetSeconds);
+            statements = samplePlan.statements();
+            getLog().info("Sampling " + samplePlan.describe() + " for a " + sampleBudgetSeconds + "s budget");
+        }
         getLog().info("Found " + statements.size() + " mapped statements. Validating...");
-        List<ValidationResult> results = new ArrayList<>();
-        ValidationSummary originSummary = validateDatabase("origin", originJdbcUrl, originUsername, originPassword, statements, results);
-        ValidationSummary targetSummary = null;
-        if (originSummary.failures == 0) {
-            targetSummary = validateDatabase("target", jdbcUrl, username, password, statements, results);
-        } else {
-            getLog().warn("Skipping target database validation because origin database had failures.");
+        ReportWriter report = openReport();
+        RunHistoryStore.Run run = store == null ? null : store.startRun(System.currentTimeMillis());
+        ResultCollector collector = newCollector(report, run);
+        Validator.ValidationPass pass;
+        try (Database origin = originDatabase(); Database target = targetDatabase()) {
+            pass = validatePass(statements, history, origin, target, deadline, collector);
+        } catch (MojoExecutionException | RuntimeException e) {
+            closeQuietly(report);
+            throw e;
         }
+        Validator.ValidationSummary originSummary = pass.origin();
+        Validator.ValidationSummary targetSummary = pass.target();
 
-        long total = results.size();
-        long failures = results.stream().filter(r -> !r.success).count();
-        try {
-            writeReport(results, originSummary, targetSummary);
-        } catch (Exception e) {
-            getLog().warn("Failed to write report: " + e.getMessage());
-        }
+        long total = collector.total();
+        long failures = collector.failureCount();
+        finishReport(report, collector, originSummary, targetSummary);
+        commitRun(run);
         getLog().info("Validation summary:");
-        getLog().info(" - origin: " + originSummary.failures + " failure(s) out of " + originSummary.total);
+        getLog().info(" - origin: " + originSummary.describe());
         if (targetSummary != null) {
-            getLog().info(" - target: " + targetSummary.failures + " failure(s) out of " + targetSummary.total);
+            getLog().info(" - target: " + targetSummary.describe());
         } else {
             getLog().info(" - target: skipped");
         }
-        for (ValidationResult result : results) {
-            if (result.success) {
-                getLog().info("OK   " + result.statement.fullId() + " (" + result.statement.kind() + ") [" + result.databaseLabel + "]");
-            } else {
-                getLog().error("FAIL " + result.statement.fullId() + " (" + result.statement.kind() + ") [" + result.databaseLabel + "] " + result.errorMessage);
+        if (scanMetrics != null) {
+            getLog().info(" - scan: " + scanMetrics.describe());
+        }
+        getLog().info(" - origin timings: " + originSummary.metrics().describe());
+        if (targetSummary != null) {
+            getLog().info(" - target timings: " + targetSummary.metrics().describe());
+        }
+        if (samplePlan != null) {
+            getLog().info(" - sample coverage: " + coverage(originSummary, targetSummary));
+        }
+        for (Map.Entry<String, int[]> module : collector.modules().entrySet()) {
+            getLog().info(" - module " + module.getKey() + ": " + module.getValue()[1] + " failure(s) out of " + module.getValue()[0]);
+        }
+        if (failures > 0) {
+            getLog().error("Failed statements:");
+            for (ValidationResult failure : collector.failures()) {
+                logResult(failure);
             }
         }
+        long unvalidated = collector.notValidated();
+        boolean deadlineExceeded = originSummary.deadlineExceeded() || (targetSummary != null && targetSummary.deadlineExceeded());
+        if (deadlineExceeded) {
+            throw new MojoExecutionException("Run deadline of " + runTimeoutSeconds + "s exceeded: " + failures
+                    + " failure(s), " + unvalidated + " statement(s) not validated");
+        }
+        if (maxFailures > 0 && failures >= maxFailures) {
+            throw new MojoExecutionException("Validation stopped after " + failures + " failure(s) (maxFailures="
+                    + maxFailures + "); " + unvalidated + " statement(s) not validated");
+        }
         if (failures > 0) {
             throw new MojoExecutionException("Validation failed for " + failures + " statement(s)");
         }
@@ -138,217 +369,525 @@ public class ValidateSqlMojo extends AbstractMojo {
         getLog().info(successMsg.toString());
     }
 
-    private ValidationSummary validateDatabase(String label,
-                                               String url,
-                                               String user,
-                                               String pass,
-                                               List<SqlStatement> statements,
-                                               List<ValidationResult> collector) throws MojoExecutionException {
-        getLog().info("Validating against " + label + " database: " + url + " with " + Math.max(1, threadCount) + " thread(s)");
-        DataSource dataSource = createDataSource(url, user, pass);
-        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
-        int failures = 0;
+    /**
+     * Resolves and checks the settings shared by every validation pass.
+     */
+    void prepareRun() throws MojoExecutionException {
+        validator = new Validator(log(), new Validator.Options()
+                .executeStatements(executeStatements)
+                .threadCount(threadCount)
+                .statementTimeoutSeconds(statementTimeoutSeconds)
+                .kindBudgets(resolveBudgets())
+                .cancelGraceSeconds(cancelGraceSeconds)
+                .maxFailures(maxFailures)
+                .runTimeoutSeconds(runTimeoutSeconds));
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new MojoExecutionException("Invalid shard " + shardIndex + " of " + shardCount
+                    + "; shardIndex must be between 0 and shardCount - 1");
+        }
+    }
+
+    private long sampleSeed() {
+        if (sampleSeed == null || sampleSeed.isBlank()) {
+            return LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        }
         try {
-            List<Future<ValidationResult>> futures = new ArrayList<>();
-            for (SqlStatement stmt : statements) {
-                futures.add(executor.submit((Callable<ValidationResult>) () -> validateWithDataSource(label, dataSource, stmt)));
+            return Long.parseLong(sampleSeed.trim());
+        } catch (NumberFormatException e) {
+            return sampleSeed.trim().hashCode();
+        }
+    }
+
+    private String coverage(Validator.ValidationSummary origin, Validator.ValidationSummary target) {
+        int total = samplePlan.total();
+        StringBuilder sb = new StringBuilder();
+        for (Validator.ValidationSummary summary : Arrays.asList(origin, target)) {
+            if (summary == null) {
+                continue;
             }
+            sb.append(sb.length() == 0 ? "" : ", ").append(summary.label()).append(' ').append(summary.total())
+                    .append(" of ").append(total).append(" (")
+                    .append(String.format(Locale.ROOT, "%.1f", total == 0 ? 100.0 : summary.total() * 100.0 / total))
+                    .append("%)");
+        }
+        return sb.toString();
+    }
+
+    MapperScanner newScanner() throws MojoExecutionException {
+        MapperScanner scanner = new MapperScanner(log(), mapperDirectories, includes, excludes);
+        scanner.config(loadMybatisConfig(mapperDirectories));
+        return scanner;
+    }
+
+    Database originDatabase() {
+        return database("origin", originJdbcUrl, originUsername, originPassword, originDatabaseId);
+    }
+
+    Database targetDatabase() {
+        return database("target", jdbcUrl, username, password, targetDatabaseId);
+    }
+
+    private Database database(String label, String url, String user, String pass, String databaseId) {
+        return new Database(label, url, user, pass, this::createDataSource, () -> openControlConnection(url, user, pass))
+                .databaseId(databaseId)
+                .schemas(schemas)
+                .schemaQuery(schemaQuery)
+                .mybatisConfig(mybatisConfig);
+    }
+
+    /**
+     * Maven's log behind the interface the Maven-free classes log to.
+     */
+    ValidatorLog log() {
+        return new MavenLog(getLog());
+    }
 
-            for (Future<ValidationResult> future : futures) {
-                try {
-                    ValidationResult result = future.get();
-                    collector.add(result);
-                    if (!result.success) {
-                        failures++;
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new MojoExecutionException("Validation interrupted for " + label, e);
-                } catch (ExecutionException e) {
-                    failures++;
-                    collector.add(ValidationResult.failure(new SqlStatement("<unknown>", label, SqlStatement.Kind.UNKNOWN, Path.of("<n/a>"), "", List.of()), label, label + ": " + e.getCause().getMessage()));
+    /**
+     * Loads {@code mybatisConfigFile}, or a {@code mybatis-config.xml} found at the root of one of
+     * {@code directories}; null when there is none. The first config loaded is also the one whose
+     * {@code databaseIdProvider} the databases use.
+     */
+    MybatisConfig loadMybatisConfig(List<String> directories) throws MojoExecutionException {
+        if (mybatisConfig == null) {
+            mybatisConfig = readMybatisConfig(mybatisConfigFile, directories);
+        }
+        return mybatisConfig;
+    }
+
+    /**
+     * Loads {@code configFile} when set, or else the first {@code mybatis-config.xml} at the root of
+     * {@code directories}; null when there is none.
+     */
+    final MybatisConfig readMybatisConfig(String configFile, List<String> directories) throws MojoExecutionException {
+        Path file = null;
+        if (configFile != null && !configFile.isBlank()) {
+            file = Path.of(configFile);
+        } else if (directories != null) {
+            for (String dir : directories) {
+                Path candidate = Path.of(dir, "mybatis-config.xml");
+                if (Files.isRegularFile(candidate)) {
+                    file = candidate;
+                    break;
                 }
             }
-        } finally {
-            executor.shutdownNow();
-            if (dataSource instanceof AutoCloseable closeable) {
-                try {
-                    closeable.close();
-                } catch (Exception ignored) {
-                    // best effort
-                }
+        }
+        if (file == null) {
+            return null;
+        }
+        MybatisConfig config;
+        try {
+            config = MybatisConfig.load(file, log());
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        getLog().info("Using MyBatis config " + file.toAbsolutePath()
+                + (config.hasDatabaseIdProvider() ? " with its databaseIdProvider" : ""));
+        return config;
+    }
+
+    /**
+     * Uses {@code config}'s {@code databaseIdProvider} for the databases instead of loading one.
+     */
+    final void databaseIdConfig(MybatisConfig config) {
+        this.mybatisConfig = config;
+    }
+
+    final String mybatisConfigFile() {
+        return mybatisConfigFile;
+    }
+
+    /**
+     * The validator running this goal's statements, configured from its parameters.
+     */
+    Validator validator() {
+        return validator;
+    }
+
+    /**
+     * Validates against the origin database and, if that passes, the target database.
+     */
+    Validator.ValidationPass validatePass(List<SqlStatement> statements,
+                                ValidationHistory history,
+                                Database origin,
+                                Database target,
+                                Validator.RunDeadline deadline,
+                                ResultCollector results) throws MojoExecutionException {
+        try {
+            return validator().validatePass(statements, history, origin, target, deadline, sampleDeadline, results::accept);
+        } catch (ValidationException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    void logResult(ValidationResult result) {
+        String line = result.statement().fullId() + " (" + result.statement().kind() + ") [" + result.databaseLabel() + "]";
+        switch (result.status()) {
+            case PASSED -> getLog().info("OK   " + line);
+            case NOT_STARTED -> getLog().warn("SKIP " + line + " never started");
+            case CANCELLED -> getLog().warn("STOP " + line + " " + result.errorMessage());
+            case TIMED_OUT -> getLog().error("TIME " + line + " " + result.errorMessage());
+            default -> getLog().error("FAIL " + line + " " + result.errorMessage());
+        }
+    }
+
+    List<SqlStatement> scanStatements(List<String> directories, List<String> includePatterns,
+                                      List<String> excludePatterns) throws MojoExecutionException {
+        MapperScanner scanner = new MapperScanner(log(), directories, includePatterns, excludePatterns);
+        MybatisConfig config = loadMybatisConfig(directories);
+        scanner.config(config);
+        scanMetrics = scanner.metrics();
+        StatementStore store = new StatementStore();
+        List<SqlStatement> statements = new ArrayList<>(scanMappers(scanner, store));
+        if (scanAnnotations) {
+            statements.addAll(scanAnnotatedClasses(scanner, classDirectories(), configFingerprint(), store));
+        }
+        if (scanDependencies) {
+            statements.addAll(scanDependencyJars(scanner, includePatterns, excludePatterns, store));
+        }
+        return statements;
+    }
+
+    final List<SqlStatement> scanMappers(MapperScanner scanner, StatementStore store) throws MojoExecutionException {
+        try {
+            return scanner.scan(store);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to scan mapper XML files", e);
+        }
+    }
+
+    /**
+     * Records the scan timings reported at the end of the run.
+     */
+    final void scanMetrics(ScanMetrics metrics) {
+        this.scanMetrics = metrics;
+    }
+
+    final boolean scanAnnotations() {
+        return scanAnnotations;
+    }
+
+    final boolean scanDependencies() {
+        return scanDependencies;
+    }
+
+    final List<SqlStatement> scanAnnotatedClasses(MapperScanner scanner, List<Path> directories, String fingerprint,
+                                                  StatementStore store) throws MojoExecutionException {
+        if (directories.isEmpty()) {
+            return List.of();
+        }
+        AnnotationMapperScanner annotations = new AnnotationMapperScanner(log(), scanner,
+                annotationCacheFile == null || annotationCacheFile.isBlank() ? null : Path.of(annotationCacheFile),
+                fingerprint);
+        try {
+            List<SqlStatement> statements = new ArrayList<>();
+            for (SqlStatement stmt : annotations.scan(directories)) {
+                addScanned(store, stmt, statements);
             }
+            getLog().info("Scanned annotated mapper classes in " + directories.size() + " director(ies), "
+                    + annotations.hits() + " of " + (annotations.hits() + annotations.misses()) + " from cache: "
+                    + statements.size() + " mapped statement(s)");
+            return statements;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to scan annotated mapper classes", e);
+        }
+    }
+
+    /**
+     * Adds {@code stmt} to the store and to {@code statements} unless the store already holds it.
+     */
+    private void addScanned(StatementStore store, SqlStatement stmt, List<SqlStatement> statements) {
+        SqlStatement stored = store.add(stmt);
+        if (stored == null) {
+            getLog().info("Skipping duplicate mapped statement: " + stmt.fullId() + "|" + stmt.kind() + "|"
+                    + stmt.databaseId() + "|" + stmt.sourceFile());
+        } else {
+            statements.add(stored);
         }
-        return new ValidationSummary(label, statements.size(), failures);
     }
 
-    private ValidationResult validateWithDataSource(String dbLabel,
-                                                    DataSource dataSource,
-                                                    SqlStatement stmt) {
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-            if (!executeStatements) {
-                conn.setReadOnly(true);
+    private String configFingerprint() {
+        return mybatisConfig == null ? "" : mybatisConfig.fingerprint();
+    }
+
+    /**
+     * Compiled class directories to look for annotated mapper interfaces in.
+     */
+    List<Path> classDirectories() {
+        return project == null ? List.of() : classDirectories(List.of(project));
+    }
+
+    final List<Path> classDirectories(List<MavenProject> projects) {
+        List<Path> directories = new ArrayList<>();
+        for (MavenProject p : projects) {
+            if (p.getBuild() != null && p.getBuild().getOutputDirectory() != null) {
+                directories.add(Path.of(p.getBuild().getOutputDirectory()));
             }
-            ValidationResult result = validateStatement(conn, stmt, dbLabel);
+        }
+        return directories;
+    }
+
+    final List<SqlStatement> scanDependencyJars(MapperScanner scanner, List<String> includePatterns,
+                                                List<String> excludePatterns, StatementStore store)
+            throws MojoExecutionException {
+        DependencyMapperCache cache = new DependencyMapperCache(
+                dependencyCacheDirectory == null || dependencyCacheDirectory.isBlank() ? null : Path.of(dependencyCacheDirectory),
+                log());
+        String settings = includePatterns + "|" + excludePatterns + "|" + configFingerprint();
+        List<SqlStatement> statements = new ArrayList<>();
+        List<Path> jars = dependencyJars();
+        for (Path jar : jars) {
             try {
-                conn.rollback();
-            } catch (SQLException ignored) {
-                // ignore rollback issues on close
+                List<SqlStatement> found = cache.scan(jar, scanner, settings);
+                if (!found.isEmpty()) {
+                    getLog().info(" - found " + found.size() + " mapped statement(s) in " + jar.getFileName());
+                }
+                for (SqlStatement stmt : found) {
+                    addScanned(store, stmt, statements);
+                }
+            } catch (Exception e) {
+                throw new MojoExecutionException("Failed to scan mapper XML files in " + jar, e);
             }
-            return result;
-        } catch (Exception e) {
-            return ValidationResult.failure(stmt, dbLabel, dbLabel + ": " + e.getMessage());
         }
+        getLog().info("Scanned " + jars.size() + " dependency JAR(s), " + cache.hits() + " from cache: "
+                + statements.size() + " mapped statement(s)");
+        return statements;
     }
 
-    private ValidationResult validateStatement(Connection conn, SqlStatement stmt, String dbLabel) {
-        String preparedSql = toPreparedSql(stmt.rawSql());
-        String sqlToRun = executeStatements ? preparedSql : "EXPLAIN (FORMAT JSON) " + preparedSql;
-        ParameterGenerator generator = new ParameterGenerator();
-        Savepoint sp = null;
+    /**
+     * Dependency JARs to look for mappers in, filtered by {@code dependencyIncludes}.
+     */
+    List<Path> dependencyJars() throws MojoExecutionException {
+        return project == null ? List.of() : dependencyJars(List.of(project));
+    }
+
+    final List<Path> dependencyJars(List<MavenProject> projects) throws MojoExecutionException {
+        Set<String> modules = new HashSet<>();
+        for (MavenProject p : projects) {
+            modules.add(p.getGroupId() + ":" + p.getArtifactId());
+        }
+        Set<Path> jars = new LinkedHashSet<>();
+        for (MavenProject p : projects) {
+            for (Map.Entry<String, File> artifact : runtimeArtifacts(p).entrySet()) {
+                File file = artifact.getValue();
+                // Modules of the same build are scanned from their source directories.
+                if (file == null || !file.getName().endsWith(".jar")
+                        || modules.contains(artifact.getKey()) || !matchesDependency(artifact.getKey())) {
+                    continue;
+                }
+                jars.add(file.toPath());
+            }
+        }
+        return new ArrayList<>(jars);
+    }
+
+    /**
+     * The runtime dependencies of {@code p} by {@code groupId:artifactId}, resolved for this goal.
+     * Without a resolver, e.g. outside a Maven session, the artifacts the project already resolved.
+     */
+    private Map<String, File> runtimeArtifacts(MavenProject p) throws MojoExecutionException {
+        Map<String, File> artifacts = new LinkedHashMap<>();
+        if (dependenciesResolver == null || session == null) {
+            for (Artifact artifact : p.getArtifacts()) {
+                artifacts.put(artifact.getGroupId() + ":" + artifact.getArtifactId(), artifact.getFile());
+            }
+            return artifacts;
+        }
+        DefaultDependencyResolutionRequest request = new DefaultDependencyResolutionRequest(p, session.getRepositorySession());
+        request.setResolutionFilter(DependencyFilterUtils.classpathFilter(JavaScopes.RUNTIME));
         try {
-            sp = conn.setSavepoint("sql_valid");
-            try (PreparedStatement ps = conn.prepareStatement(sqlToRun)) {
-                ps.setQueryTimeout(statementTimeoutSeconds);
-                generator.bind(ps, stmt.parameters());
-                ps.execute();
+            for (Dependency dependency : dependenciesResolver.resolve(request).getDependencies()) {
+                org.eclipse.aether.artifact.Artifact artifact = dependency.getArtifact();
+                artifacts.put(artifact.getGroupId() + ":" + artifact.getArtifactId(), artifact.getFile());
             }
-            if (sp != null) {
-                conn.rollback(sp);
+        } catch (DependencyResolutionException e) {
+            throw new MojoExecutionException("Failed to resolve the runtime dependencies of " + p.getId()
+                    + " for scanDependencies", e);
+        }
+        return artifacts;
+    }
+
+    private boolean matchesDependency(String coordinates) {
+        if (dependencyIncludes == null || dependencyIncludes.isEmpty()) {
+            return true;
+        }
+        for (String pattern : dependencyIncludes) {
+            if (SelectorUtils.match(pattern.trim(), coordinates)) {
+                return true;
             }
-            return ValidationResult.success(stmt, dbLabel);
+        }
+        return false;
+    }
+
+    /**
+     * Module a statement belongs to when validating several modules at once; null for a single module.
+     */
+    String moduleOf(SqlStatement stmt) {
+        return null;
+    }
+
+    private RunHistoryStore openHistory() {
+        if (historyDirectory == null || historyDirectory.isBlank()) {
+            return null;
+        }
+        try {
+            RunHistoryStore store = RunHistoryStore.open(Path.of(historyDirectory));
+            store.retainRuns(historyRetainRuns);
+            return store;
         } catch (Exception e) {
+            getLog().warn("Failed to open run history " + historyDirectory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ValidationHistory loadHistory(RunHistoryStore store) {
+        if (store == null) {
+            return ValidationHistory.empty();
+        }
+        ValidationHistory history = ValidationHistory.of(store);
+        if (history.size() > 0) {
+            getLog().info("Scheduling with history of " + history.size() + " statement run(s) from " + historyDirectory);
+        }
+        return history;
+    }
+
+    private Map<SqlStatement.Kind, Integer> resolveBudgets() throws MojoExecutionException {
+        Map<SqlStatement.Kind, Integer> resolved = new EnumMap<>(SqlStatement.Kind.class);
+        if (statementBudgets == null) {
+            return resolved;
+        }
+        for (Map.Entry<String, String> entry : statementBudgets.entrySet()) {
+            SqlStatement.Kind kind = SqlStatement.Kind.fromTagName(entry.getKey());
+            if (kind == SqlStatement.Kind.UNKNOWN) {
+                throw new MojoExecutionException("Unknown statement kind in statementBudgets: " + entry.getKey());
+            }
             try {
-                if (sp != null) {
-                    conn.rollback(sp);
-                }
-            } catch (SQLException ignored) {
-                // ignore rollback problems
+                resolved.put(kind, Integer.parseInt(entry.getValue().trim()));
+            } catch (RuntimeException e) {
+                throw new MojoExecutionException("Invalid budget for " + kind + ": " + entry.getValue(), e);
             }
-            return ValidationResult.failure(stmt, dbLabel, dbLabel + ": " + e.getMessage());
         }
+        return resolved;
     }
 
-    private static String toPreparedSql(String myBatisSql) {
-        if (myBatisSql == null) {
-            return "";
-        }
-        // Replace #{...} with ? to use JDBC parameters.
-        return Pattern.compile("#\\{[^}]+}").matcher(myBatisSql).replaceAll("?");
+    static String toPreparedSql(String myBatisSql) {
+        return Validator.toPreparedSql(myBatisSql);
     }
 
-    private void writeReport(List<ValidationResult> results, ValidationSummary origin, ValidationSummary target) throws Exception {
+    private ReportWriter openReport() {
         if (reportPath == null || reportPath.isBlank()) {
+            return null;
+        }
+        try {
+            return ReportWriter.open(Path.of(reportPath), ReportWriter.Format.parse(reportFormat));
+        } catch (Exception e) {
+            getLog().warn("Failed to open report " + reportPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ResultCollector newCollector(ReportWriter report, RunHistoryStore.Run run) {
+        return new ResultCollector(log(), report, this::moduleOf, result -> {
+            logResult(result);
+            if (run != null) {
+                run.record(result);
+            }
+        });
+    }
+
+    private void commitRun(RunHistoryStore.Run run) {
+        if (run == null) {
             return;
         }
-        Path out = Path.of(reportPath);
-        Path parent = out.getParent();
-        if (parent != null) {
-            java.nio.file.Files.createDirectories(parent);
+        try {
+            int number = run.commit();
+            getLog().info("Recorded run " + (number + 1) + " with " + run.size() + " sample(s) in " + historyDirectory);
+        } catch (Exception e) {
+            getLog().warn("Failed to record run history: " + e.getMessage());
+        }
+    }
+
+    private void finishReport(ReportWriter report, ResultCollector collector, Validator.ValidationSummary origin,
+                              Validator.ValidationSummary target) {
+        if (report == null) {
+            return;
         }
         StringBuilder sb = new StringBuilder();
-        sb.append("{\"total\":").append(results.size()).append(",");
-        long failures = results.stream().filter(r -> !r.success).count();
-        sb.append("\"failures\":").append(failures).append(",");
+        sb.append("\"total\":").append(collector.total()).append(",");
+        sb.append("\"failures\":").append(collector.failureCount()).append(",");
+        boolean deadlineExceeded = origin.deadlineExceeded() || (target != null && target.deadlineExceeded());
+        sb.append("\"deadlineExceeded\":").append(deadlineExceeded).append(",");
+        if (samplePlan != null) {
+            sb.append("\"sampling\":{\"budgetSeconds\":").append(sampleBudgetSeconds)
+                    .append(",\"statements\":").append(samplePlan.total())
+                    .append(",\"sampled\":").append(samplePlan.sampled())
+                    .append(",\"suspects\":").append(samplePlan.suspects())
+                    .append(",\"estimatedMillis\":").append(samplePlan.estimatedMillis()).append("},");
+        }
+        if (shardCount > 1) {
+            sb.append("\"shard\":{\"index\":").append(shardIndex).append(",\"count\":").append(shardCount);
+            if (shardPlan != null) {
+                sb.append(",\"plan\":\"").append(shardPlan).append('"');
+            }
+            sb.append("},");
+        }
+        Map<String, int[]> modules = collector.modules();
+        if (!modules.isEmpty()) {
+            sb.append("\"modules\":[");
+            int moduleIdx = 0;
+            for (Map.Entry<String, int[]> module : modules.entrySet()) {
+                sb.append("{\"module\":\"").append(escape(module.getKey())).append("\",\"total\":").append(module.getValue()[0])
+                        .append(",\"failures\":").append(module.getValue()[1]).append("}");
+                if (++moduleIdx < modules.size()) {
+                    sb.append(",");
+                }
+            }
+            sb.append("],");
+        }
         sb.append("\"databases\":[");
         sb.append(origin.toJson());
         if (target != null) {
             sb.append(",").append(target.toJson());
         }
-        sb.append("],");
-        sb.append("\"entriesByDatabase\":{");
-        Map<String, List<ValidationResult>> byDb = groupByDatabase(results);
-        int dbIdx = 0;
-        for (Map.Entry<String, List<ValidationResult>> entry : byDb.entrySet()) {
-            sb.append("\"").append(escape(entry.getKey())).append("\":");
-            writeEntriesArray(sb, entry.getValue());
-            if (dbIdx < byDb.size() - 1) {
-                sb.append(",");
-            }
-            dbIdx++;
-        }
-        sb.append("}}");
-        java.nio.file.Files.writeString(out, sb.toString());
-        getLog().info("Wrote validation report to " + out.toAbsolutePath());
-    }
-
-    private static Map<String, List<ValidationResult>> groupByDatabase(List<ValidationResult> results) {
-        Map<String, List<ValidationResult>> byDb = new LinkedHashMap<>();
-        for (ValidationResult r : results) {
-            byDb.computeIfAbsent(r.databaseLabel, k -> new ArrayList<>()).add(r);
-        }
-        return byDb;
-    }
-
-    private static void writeEntriesArray(StringBuilder sb, List<ValidationResult> results) {
-        sb.append("[");
-        for (int i = 0; i < results.size(); i++) {
-            ValidationResult r = results.get(i);
-            sb.append("{\"id\":\"").append(escape(r.statement.fullId())).append("\",");
-            sb.append("\"kind\":\"").append(r.statement.kind()).append("\",");
-            sb.append("\"file\":\"").append(escape(r.statement.sourceFile().toString())).append("\",");
-            sb.append("\"database\":\"").append(escape(r.databaseLabel)).append("\",");
-            sb.append("\"success\":").append(r.success).append(",");
-            sb.append("\"error\":");
-            if (r.errorMessage == null) {
-                sb.append("null");
-            } else {
-                sb.append("\"").append(escape(r.errorMessage)).append("\"");
-            }
-            sb.append("}");
-            if (i < results.size() - 1) {
-                sb.append(",");
-            }
+        sb.append("],\"metrics\":{");
+        if (scanMetrics != null) {
+            sb.append("\"scan\":").append(scanMetrics.toJson()).append(",");
         }
-        sb.append("]");
-    }
-
-    private static String escape(String raw) {
-        StringBuilder sb = new StringBuilder();
-        for (char c : raw.toCharArray()) {
-            switch (c) {
-                case '\\' -> sb.append("\\\\");
-                case '"' -> sb.append("\\\"");
-                case '\n' -> sb.append("\\n");
-                case '\r' -> sb.append("\\r");
-                case '\t' -> sb.append("\\t");
-                default -> sb.append(c);
+        sb.append("\"databases\":[");
+        if (origin.metrics() != null) {
+            sb.append(origin.metrics().toJson());
+            if (target != null) {
+                sb.append(",").append(target.metrics().toJson());
             }
         }
-        return sb.toString();
+        sb.append("]}");
+        try {
+            report.finish(sb.toString());
+            getLog().info("Wrote validation report to " + Path.of(reportPath).toAbsolutePath());
+        } catch (Exception e) {
+            getLog().warn("Failed to write report: " + e.getMessage());
+        }
     }
 
-    DataSource createDataSource(String url, String user, String pass) {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(url);
-        if (user != null) {
-            config.setUsername(user);
+    private static void closeQuietly(ReportWriter report) {
+        if (report == null) {
+            return;
         }
-        if (pass != null) {
-            config.setPassword(pass);
+        try {
+            report.close();
+        } catch (Exception ignored) {
+            // best effort
         }
-        int threads = Math.max(1, threadCount);
-        config.setMaximumPoolSize(threads);
-        config.setMinimumIdle(0);
-        config.setAutoCommit(false);
-        config.setPoolName("sql-valid-" + Math.abs(url.hashCode()));
-        return new HikariDataSource(config);
     }
 
-    private record ValidationResult(SqlStatement statement, boolean success, String errorMessage, String databaseLabel) {
-        static ValidationResult success(SqlStatement stmt, String dbLabel) {
-            return new ValidationResult(stmt, true, null, dbLabel);
-        }
+    private static String escape(String raw) {
+        return Json.escape(raw);
+    }
 
-        static ValidationResult failure(SqlStatement stmt, String dbLabel, String error) {
-            return new ValidationResult(stmt, false, error, dbLabel);
-        }
+    Connection openControlConnection(String url, String user, String pass) throws SQLException {
+        return DriverManager.getConnection(url, user, pass);
     }
 
-    private record ValidationSummary(String label, int total, int failures) {
-        String toJson() {
-            return "{\"label\":\"" + escape(label) + "\",\"total\":" + total + ",\"failures\":" + failures + "}";
-        }
+    DataSource createDataSource(String url, String user, String pass) {
+        return Database.hikari(url, user, pass, threadCount);
     }
 }
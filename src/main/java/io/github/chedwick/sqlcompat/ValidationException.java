@@ -0,0 +1,16 @@
+package io.github.chedwick.sqlcompat;
+
+/**
+ * A validation run could not be carried out, as opposed to statements failing validation, which is
+ * reported through their {@link ValidationResult}.
+ */
+public class ValidationException extends Exception {
+
+    public ValidationException(String message) {
+        super(message);
+    }
+
+    public ValidationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
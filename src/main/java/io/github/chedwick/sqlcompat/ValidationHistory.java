@@ -0,0 +1,194 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-statement outcomes and durations from previous runs, used to schedule the next one: for every
+ * statement and database, the latest sample the {@link RunHistoryStore} holds, together with the
+ * {@code databaseId} of the variant the database ran.
+ */
+final class ValidationHistory {
+
+    record Entry(String sqlHash, ValidationResult.Status status, long durationMillis, String databaseId) {
+        boolean failed() {
+            return status == ValidationResult.Status.FAILED || status == ValidationResult.Status.TIMED_OUT;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+    private Map<String, List<Entry>> byStatement;
+
+    private ValidationHistory(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static ValidationHistory empty() {
+        return new ValidationHistory(new HashMap<>());
+    }
+
+    /**
+     * The latest sample of every statement on every database in {@code store}.
+     */
+    static ValidationHistory of(RunHistoryStore store) {
+        Map<String, Entry> entries = new HashMap<>();
+        Map<String, Integer> runs = new HashMap<>();
+        List<String> keys = store.keys();
+        for (int id = 0; id < keys.size(); id++) {
+            RunHistoryStore.Sample sample = store.latest(id);
+            String[] parts = keys.get(id).split("\t", -1);
+            if (sample == null || parts.length < 3) {
+                continue;
+            }
+            // A database that switched variants has a key for each; the one it ran last counts.
+            String key = key(parts[0], parts[1], parts[2]);
+            Integer run = runs.get(key);
+            if (run == null || sample.run() > run) {
+                runs.put(key, sample.run());
+                entries.put(key, new Entry(Integer.toHexString(sample.sqlHash()), sample.status(),
+                        sample.durationNanos() / 1_000_000L, parts.length > 3 ? parts[3] : ""));
+            }
+        }
+        return new ValidationHistory(entries);
+    }
+
+    Entry lookup(String database, SqlStatement stmt) {
+        return entries.get(key(database, stmt.fullId(), stmt.kind().name()));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Total recorded duration of the statement across the databases that ran this variant of it, or -1
+     * when it was never seen.
+     */
+    long expectedMillis(SqlStatement stmt) {
+        List<Entry> recorded = entriesOf(stmt);
+        if (recorded.isEmpty()) {
+            return -1L;
+        }
+        long total = 0L;
+        for (Entry entry : recorded) {
+            total += entry.durationMillis();
+        }
+        return total;
+    }
+
+    /**
+     * True when the statement is worth validating before the others: it was never validated, failed on
+     * some database last time, or its SQL changed since. Only the databases that ran this variant count;
+     * another database's variant of the same id renders different SQL by design.
+     */
+    boolean suspect(SqlStatement stmt) {
+        List<Entry> recorded = entriesOf(stmt);
+        if (recorded.isEmpty()) {
+            return true;
+        }
+        String sqlHash = fingerprint(stmt);
+        for (Entry entry : recorded) {
+            if (entry.failed() || !entry.sqlHash().equals(sqlHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Entry> entriesOf(SqlStatement stmt) {
+        if (byStatement == null) {
+            Map<String, List<Entry>> index = new HashMap<>();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                String key = e.getKey();
+                index.computeIfAbsent(key.substring(key.indexOf('\t') + 1), k -> new ArrayList<>()).add(e.getValue());
+            }
+            byStatement = index;
+        }
+        String databaseId = variant(stmt);
+        List<Entry> recorded = new ArrayList<>();
+        for (Entry entry : byStatement.getOrDefault(stmt.fullId() + "\t" + stmt.kind().name(), List.of())) {
+            if (entry.databaseId().equals(databaseId)) {
+                recorded.add(entry);
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Orders statements so that the ones most likely to fail run first: failed last time, changed or
+     * never seen. Within each group the longest statements go first (LPT), which keeps the thread pool
+     * busy until the end instead of leaving one long statement running alone.
+     */
+    List<SqlStatement> schedule(String database, List<SqlStatement> statements) {
+        if (entries.isEmpty()) {
+            return statements;
+        }
+        long fallback = medianDuration();
+        List<Scheduled> scheduled = new ArrayList<>(statements.size());
+        for (SqlStatement stmt : statements) {
+            Entry entry = lookup(database, stmt);
+            boolean suspect = entry == null || entry.failed() || !entry.sqlHash().equals(fingerprint(stmt));
+            long expected = entry == null ? fallback : entry.durationMillis();
+            scheduled.add(new Scheduled(stmt, suspect, expected));
+        }
+        scheduled.sort(Comparator.comparing((Scheduled s) -> !s.suspect)
+                .thenComparing(Comparator.comparingLong(Scheduled::expectedMillis).reversed()));
+        List<SqlStatement> ordered = new ArrayList<>(scheduled.size());
+        for (Scheduled s : scheduled) {
+            ordered.add(s.statement);
+        }
+        return ordered;
+    }
+
+    /**
+     * Merges completed results into the history, as the next run will see them once they are in the
+     * store. Statements that were cancelled or never started keep their previous entry so that they are
+     * not mistaken for cheap ones next time.
+     */
+    void record(List<ValidationResult> results) {
+        for (ValidationResult r : results) {
+            record(r);
+        }
+    }
+
+    void record(ValidationResult r) {
+        if (!r.completed()) {
+            return;
+        }
+        byStatement = null;
+        SqlStatement stmt = r.statement();
+        entries.put(key(r.databaseLabel(), stmt.fullId(), stmt.kind().name()),
+                new Entry(fingerprint(stmt), r.status(), r.durationMillis(), variant(stmt)));
+    }
+
+    /**
+     * Stable fingerprint of the rendered SQL; {@link String#hashCode()} is specified and therefore
+     * identical across JVMs.
+     */
+    static String fingerprint(SqlStatement stmt) {
+        return Integer.toHexString(sqlHash(stmt));
+    }
+
+    static int sqlHash(SqlStatement stmt) {
+        return stmt.rawSql().hashCode();
+    }
+
+    private static String variant(SqlStatement stmt) {
+        return stmt.databaseId() == null ? "" : stmt.databaseId();
+    }
+
+    long medianDuration() {
+        long[] durations = entries.values().stream().mapToLong(Entry::durationMillis).sorted().toArray();
+        return durations.length == 0 ? 0L : durations[durations.length / 2];
+    }
+
+    private static String key(String database, String fullId, String kind) {
+        return database + "\t" + fullId + "\t" + kind;
+    }
+
+    private record Scheduled(SqlStatement statement, boolean suspect, long expectedMillis) {
+    }
+}
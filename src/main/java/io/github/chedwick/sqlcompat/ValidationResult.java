@@ -0,0 +1,86 @@
+package io.github.chedwick.sqlcompat;
+
+import java.util.Map;
+
+/**
+ * Outcome of validating one statement against one database. With schema fan-out, {@code schemas} holds
+ * the per-schema outcome the status aggregates; otherwise it is null. {@code planCost} is the planner's total
+ * cost estimate from {@code EXPLAIN}, or NaN when the statement was executed or did not pass.
+ */
+public record ValidationResult(SqlStatement statement, Status status, String errorMessage, String databaseLabel,
+                               long durationNanos, SchemaCoverage schemas, double planCost) {
+
+    public enum Status {
+        PASSED, FAILED, TIMED_OUT, CANCELLED, NOT_STARTED
+    }
+
+    static ValidationResult success(SqlStatement stmt, String dbLabel) {
+        return new ValidationResult(stmt, Status.PASSED, null, dbLabel, 0L, null, Double.NaN);
+    }
+
+    static ValidationResult failure(SqlStatement stmt, String dbLabel, String error) {
+        return new ValidationResult(stmt, Status.FAILED, error, dbLabel, 0L, null, Double.NaN);
+    }
+
+    static ValidationResult timedOut(SqlStatement stmt, String dbLabel, String error) {
+        return new ValidationResult(stmt, Status.TIMED_OUT, error, dbLabel, 0L, null, Double.NaN);
+    }
+
+    static ValidationResult cancelled(SqlStatement stmt, String dbLabel, String reason) {
+        return new ValidationResult(stmt, Status.CANCELLED, reason, dbLabel, 0L, null, Double.NaN);
+    }
+
+    static ValidationResult notStarted(SqlStatement stmt, String dbLabel) {
+        return new ValidationResult(stmt, Status.NOT_STARTED, null, dbLabel, 0L, null, Double.NaN);
+    }
+
+    /**
+     * Aggregates the outcome of one statement across {@code coverage.total()} schemas: passed when it
+     * passed in every schema, timed out when it only ever ran out of time, failed otherwise.
+     */
+    static ValidationResult acrossSchemas(SqlStatement stmt, String dbLabel, SchemaCoverage coverage, boolean onlyTimeouts) {
+        if (coverage.failures().isEmpty()) {
+            return new ValidationResult(stmt, Status.PASSED, null, dbLabel, 0L, coverage, Double.NaN);
+        }
+        Map.Entry<String, String> first = coverage.failures().entrySet().iterator().next();
+        String message = dbLabel + ": " + coverage.describe() + ", first " + first.getKey() + ": " + first.getValue();
+        return new ValidationResult(stmt, onlyTimeouts ? Status.TIMED_OUT : Status.FAILED, message, dbLabel, 0L, coverage, Double.NaN);
+    }
+
+    ValidationResult withDuration(long nanos) {
+        return new ValidationResult(statement, status, errorMessage, databaseLabel, nanos, schemas, planCost);
+    }
+
+    ValidationResult withPlanCost(double cost) {
+        return new ValidationResult(statement, status, errorMessage, databaseLabel, durationNanos, schemas, cost);
+    }
+
+    public long durationMillis() {
+        return durationNanos / 1_000_000L;
+    }
+
+    public boolean success() {
+        return status == Status.PASSED;
+    }
+
+    public boolean failed() {
+        return status == Status.FAILED || status == Status.TIMED_OUT;
+    }
+
+    /**
+     * True when the statement produced a verdict, as opposed to being cancelled or never started.
+     */
+    public boolean completed() {
+        return status == Status.PASSED || failed();
+    }
+
+    /**
+     * Error message per failing schema, in validation order, out of {@code total} schemas.
+     */
+    public record SchemaCoverage(int total, Map<String, String> failures) {
+
+        String describe() {
+            return "fails in " + failures.size() + " of " + total + " schemas";
+        }
+    }
+}
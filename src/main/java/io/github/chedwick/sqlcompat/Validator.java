@@ -0,0 +1,680 @@
+package io.github.chedwick.sqlcompat;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Validates parsed statements against an optional origin and a target database inside rolled-back
+ * transactions; the target is skipped when the origin fails.
+ */
+public final class Validator {
+
+    /**
+     * How statements are run; the defaults match the Maven goals'.
+     */
+    public static final class Options {
+        private boolean executeStatements;
+        private int threadCount = 4;
+        private int statementTimeoutSeconds = 8;
+        private Map<SqlStatement.Kind, Integer> kindBudgets = Map.of();
+        private int cancelGraceSeconds = 2;
+        private int maxFailures;
+        private int runTimeoutSeconds;
+
+        /**
+         * Execute the statements (still rolled back) instead of running {@code EXPLAIN}.
+         */
+        public Options executeStatements(boolean executeStatements) {
+            this.executeStatements = executeStatements;
+            return this;
+        }
+
+        public Options threadCount(int threadCount) {
+            this.threadCount = threadCount;
+            return this;
+        }
+
+        public Options statementTimeoutSeconds(int statementTimeoutSeconds) {
+            this.statementTimeoutSeconds = statementTimeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Per-kind statement budgets in seconds, overriding statementTimeoutSeconds for that kind.
+         */
+        public Options kindBudgets(Map<SqlStatement.Kind, Integer> kindBudgets) {
+            this.kindBudgets = kindBudgets.isEmpty() ? Map.of() : new EnumMap<>(kindBudgets);
+            return this;
+        }
+
+        /**
+         * How long a statement may overrun its budget before it is cancelled, and how long after that
+         * before cancellation escalates to {@code pg_cancel_backend}.
+         */
+        public Options cancelGraceSeconds(int cancelGraceSeconds) {
+            this.cancelGraceSeconds = cancelGraceSeconds;
+            return this;
+        }
+
+        /**
+         * Stop validating a database once this many statements have failed; 0 validates everything.
+         */
+        public Options maxFailures(int maxFailures) {
+            this.maxFailures = maxFailures;
+            return this;
+        }
+
+        /**
+         * Wall-clock limit in seconds, only used to word the stop reason; the limit itself is the
+         * deadline passed with each run.
+         */
+        Options runTimeoutSeconds(int runTimeoutSeconds) {
+            this.runTimeoutSeconds = runTimeoutSeconds;
+            return this;
+        }
+    }
+
+    /**
+     * Equivalent to {@code SET LOCAL search_path}, but preparable so that one statement serves every schema.
+     */
+    private static final String SET_SEARCH_PATH = "SELECT set_config('search_path', ?, true)";
+
+    /**
+     * The first total cost in a JSON plan is the root node's, i.e. the whole statement's.
+     */
+    private static final Pattern TOTAL_COST = Pattern.compile("\"Total Cost\"\\s*:\\s*([0-9.eE+-]+)");
+
+    private final ValidatorLog log;
+    private final boolean executeStatements;
+    private final int threadCount;
+    private final int statementTimeoutSeconds;
+    private final Map<SqlStatement.Kind, Integer> kindBudgets;
+    private final int cancelGraceSeconds;
+    private final int maxFailures;
+    private final int runTimeoutSeconds;
+
+    public Validator(ValidatorLog log, Options options) {
+        this.log = log;
+        this.executeStatements = options.executeStatements;
+        this.threadCount = options.threadCount;
+        this.statementTimeoutSeconds = options.statementTimeoutSeconds;
+        this.kindBudgets = options.kindBudgets;
+        this.cancelGraceSeconds = options.cancelGraceSeconds;
+        this.maxFailures = options.maxFailures;
+        this.runTimeoutSeconds = options.runTimeoutSeconds;
+    }
+
+    /**
+     * Validates {@code statements} against {@code target}, after {@code origin} when it is not null, and
+     * returns every result in completion order. Pools the databases create stay open until they are closed.
+     */
+    public List<ValidationResult> validate(List<SqlStatement> statements, Database origin, Database target)
+            throws ValidationException {
+        List<ValidationResult> results = new ArrayList<>();
+        validatePass(statements, ValidationHistory.empty(), origin, target, RunDeadline.of(0), null, results::add);
+        return results;
+    }
+
+    /**
+     * The statements MyBatis would run on {@code database}: for every id its {@code databaseId}
+     * variant if there is one, otherwise the statement without a {@code databaseId}.
+     */
+    List<SqlStatement> statementsFor(Database database, List<SqlStatement> statements) throws ValidationException {
+        boolean variants = false;
+        for (SqlStatement stmt : statements) {
+            if (stmt.databaseId() != null) {
+                variants = true;
+                break;
+            }
+        }
+        if (!variants) {
+            return statements;
+        }
+        String databaseId = database.databaseId();
+        List<SqlStatement> selected = selectVariants(statements, databaseId);
+        log.info("Database " + database.label() + " has databaseId " + databaseId + ": validating "
+                + selected.size() + " of " + statements.size() + " statement variant(s)");
+        return selected;
+    }
+
+    static List<SqlStatement> selectVariants(List<SqlStatement> statements, String databaseId) {
+        Map<String, SqlStatement> selected = new LinkedHashMap<>();
+        for (SqlStatement stmt : statements) {
+            String key = stmt.fullId() + "|" + stmt.kind() + "|" + stmt.sourceFile();
+            if (stmt.databaseId() == null) {
+                selected.putIfAbsent(key, stmt);
+            } else if (stmt.databaseId().equals(databaseId)) {
+                selected.put(key, stmt);
+            }
+        }
+        return new ArrayList<>(selected.values());
+    }
+
+    /**
+     * Validates against the origin database, when there is one, and if that passes the target database.
+     * A sampled run leaves the target at least half of what remains of {@code sampleDeadline}.
+     */
+    ValidationPass validatePass(List<SqlStatement> statements,
+                                ValidationHistory history,
+                                Database origin,
+                                Database target,
+                                RunDeadline deadline,
+                                RunDeadline sampleDeadline,
+                                Consumer<ValidationResult> results) throws ValidationException {
+        RunDeadline unbounded = RunDeadline.of(0);
+        ValidationSummary originSummary = null;
+        if (origin != null) {
+            originSummary = validateDatabase(origin,
+                    history.schedule(origin.label(), statementsFor(origin, statements)), results, deadline,
+                    sampleDeadline == null ? unbounded : sampleDeadline.share(2));
+        }
+        ValidationSummary targetSummary = null;
+        if (originSummary != null && originSummary.deadlineExceeded) {
+            log.warn("Skipping target database validation because the run deadline was reached.");
+        } else if (originSummary == null || originSummary.failures == 0) {
+            targetSummary = validateDatabase(target,
+                    history.schedule(target.label(), statementsFor(target, statements)), results, deadline,
+                    sampleDeadline == null ? unbounded : sampleDeadline);
+        } else {
+            log.warn("Skipping target database validation because origin database had failures.");
+        }
+        return new ValidationPass(originSummary, targetSummary);
+    }
+
+    private ValidationSummary validateDatabase(Database database,
+                                               List<SqlStatement> statements,
+                                               Consumer<ValidationResult> collector,
+                                               RunDeadline deadline,
+                                               RunDeadline sampleCutoff) throws ValidationException {
+        String label = database.label();
+        log.info("Validating against " + label + " database: " + database.url() + " with " + Math.max(1, threadCount) + " thread(s)");
+        DatabaseMetrics metrics = new DatabaseMetrics(label);
+        long passStart = System.nanoTime();
+        DataSource dataSource = database.dataSource();
+        metrics.poolStarted(database.poolStartNanos());
+        List<String> schemaList = database.schemas();
+        if (!schemaList.isEmpty()) {
+            log.info("Validating each statement against " + schemaList.size() + " schema(s) of the " + label + " database");
+        }
+        Map<String, Integer> schemaFailures = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        CompletionService<ValidationResult> completion = new ExecutorCompletionService<>(executor);
+        StatementWatchdog watchdog = new StatementWatchdog(log, database::openControlConnection,
+                TimeUnit.SECONDS.toNanos(Math.max(0, cancelGraceSeconds)));
+        boolean[] settled = new boolean[statements.size()];
+        int failures = 0;
+        int timedOut = 0;
+        int unvalidated = 0;
+        int unsampled = 0;
+        boolean deadlineExceeded = false;
+        try {
+            Map<Future<ValidationResult>, PendingValidation> pending = new HashMap<>();
+            List<PendingValidation> tasks = new ArrayList<>(statements.size());
+            for (int i = 0; i < statements.size(); i++) {
+                SqlStatement stmt = statements.get(i);
+                AtomicBoolean claimed = new AtomicBoolean();
+                Future<ValidationResult> future = completion.submit(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null; // withdrawn before a worker got to it
+                    }
+                    return validateWithDataSource(label, dataSource, stmt, schemaList, watchdog, metrics);
+                });
+                PendingValidation task = new PendingValidation(i, stmt, claimed, future);
+                pending.put(future, task);
+                tasks.add(task);
+            }
+
+            // Consume in completion order so that a deadline or maxFailures can stop the run early.
+            String stopReason = null;
+            boolean timeout = false;
+            boolean sampling = sampleCutoff.bounded();
+            for (int done = 0; done < tasks.size(); done++) {
+                Future<ValidationResult> future = nextCompleted(completion, label, deadline, sampling ? sampleCutoff : null);
+                if (future == null && sampling && !(deadline.bounded() && deadline.remainingNanos() == 0L)) {
+                    // Sample budget spent: drop what has not started and let in-flight statements finish.
+                    sampling = false;
+                    for (PendingValidation task : tasks) {
+                        if (!settled[task.index] && task.withdraw()) {
+                            settled[task.index] = true;
+                            unsampled++;
+                        }
+                    }
+                    log.info("Sample budget spent on " + label + "; " + unsampled + " statement(s) left out");
+                    done--;
+                    continue;
+                }
+                if (future == null) {
+                    deadlineExceeded = true;
+                    timeout = true;
+                    stopReason = "run deadline of " + runTimeoutSeconds + "s exceeded";
+                    break;
+                }
+                if (future.isCancelled()) {
+                    continue;
+                }
+                PendingValidation task = pending.get(future);
+                ValidationResult result = resultOf(task, label);
+                settled[task.index] = true;
+                collector.accept(result);
+                if (result.schemas() != null) {
+                    for (String schema : result.schemas().failures().keySet()) {
+                        schemaFailures.merge(schema, 1, Integer::sum);
+                    }
+                }
+                if (result.status() == ValidationResult.Status.TIMED_OUT) {
+                    timedOut++;
+                }
+                if (result.failed()) {
+                    failures++;
+                    if (maxFailures > 0 && failures >= maxFailures) {
+                        stopReason = "maxFailures=" + maxFailures + " reached";
+                        break;
+                    }
+                }
+            }
+            if (stopReason != null) {
+                log.error("Stopping " + label + " validation: " + stopReason + "; cancelling "
+                        + watchdog.inFlightCount() + " in-flight statement(s)");
+                // Withdraw queued work first so that a worker freed by the cancellation cannot pick it up.
+                for (PendingValidation task : tasks) {
+                    if (!settled[task.index] && task.withdraw()) {
+                        settled[task.index] = true;
+                        collector.accept(ValidationResult.notStarted(task.statement, label));
+                        unvalidated++;
+                    }
+                }
+                watchdog.cancelAll(stopReason, timeout);
+                executor.shutdownNow();
+                // One grace period for all in-flight statements, not one each.
+                long graceEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, cancelGraceSeconds));
+                for (PendingValidation task : tasks) {
+                    if (!settled[task.index]) {
+                        ValidationResult result = abandon(task, label, stopReason, timeout, graceEnd);
+                        settled[task.index] = true;
+                        collector.accept(result);
+                        if (result.status() == ValidationResult.Status.TIMED_OUT) {
+                            timedOut++;
+                        }
+                        if (result.failed()) {
+                            failures++;
+                        } else if (!result.completed()) {
+                            unvalidated++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            watchdog.close();
+            metrics.finished(System.nanoTime() - passStart);
+        }
+        logSchemaFailures(label, schemaList.size(), schemaFailures);
+        return new ValidationSummary(label, statements.size() - unsampled, failures, timedOut, unvalidated, deadlineExceeded, metrics);
+    }
+
+    /**
+     * Names the schemas most statements failed in, which usually point at the tenants whose migrations
+     * drifted.
+     */
+    private void logSchemaFailures(String label, int schemaCount, Map<String, Integer> schemaFailures) {
+        if (schemaFailures.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Integer>> worst = new ArrayList<>(schemaFailures.entrySet());
+        worst.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : worst.subList(0, Math.min(10, worst.size()))) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(entry.getKey()).append(" (").append(entry.getValue()).append(")");
+        }
+        log.warn("Statements failed in " + schemaFailures.size() + " of " + schemaCount + " schema(s) of the "
+                + label + " database; most failures: " + sb);
+    }
+
+    /**
+     * Waits for the next finished statement; returns null when the run deadline, or the sample cutoff if
+     * given, expires first.
+     */
+    private Future<ValidationResult> nextCompleted(CompletionService<ValidationResult> completion,
+                                                   String label,
+                                                   RunDeadline deadline,
+                                                   RunDeadline cutoff) throws ValidationException {
+        try {
+            if (!deadline.bounded() && cutoff == null) {
+                return completion.take();
+            }
+            long wait = Long.MAX_VALUE;
+            if (deadline.bounded()) {
+                wait = deadline.remainingNanos();
+            }
+            if (cutoff != null) {
+                wait = Math.min(wait, cutoff.remainingNanos());
+            }
+            return completion.poll(wait, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidationException("Validation interrupted for " + label, e);
+        }
+    }
+
+    private static ValidationResult resultOf(PendingValidation task, String label) {
+        try {
+            return task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ValidationResult.failure(task.statement, label, label + ": interrupted");
+        } catch (ExecutionException e) {
+            return ValidationResult.failure(task.statement, label, label + ": " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Settles a running statement after the run was stopped: it has until {@code graceEnd} to observe its
+     * cancellation before it is reported as timed out or cancelled, depending on why the run stopped.
+     */
+    private static ValidationResult abandon(PendingValidation task, String label, String reason, boolean timeout,
+                                            long graceEnd) {
+        try {
+            return task.future.get(Math.max(0L, graceEnd - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | CancellationException ignored) {
+            // fall through
+        }
+        String message = label + ": " + reason;
+        return timeout
+                ? ValidationResult.timedOut(task.statement, label, message)
+                : ValidationResult.cancelled(task.statement, label, message);
+    }
+
+    private ValidationResult validateWithDataSource(String dbLabel,
+                                                    DataSource dataSource,
+                                                    SqlStatement stmt,
+                                                    List<String> schemaList,
+                                                    StatementWatchdog watchdog,
+                                                    DatabaseMetrics metrics) {
+        JfrEvents.StatementValidation event = new JfrEvents.StatementValidation();
+        event.begin();
+        ValidationResult result = borrowAndValidate(dbLabel, dataSource, stmt, schemaList, watchdog, metrics, System.nanoTime());
+        if (event.shouldCommit()) {
+            event.fullId = stmt.fullId();
+            event.database = dbLabel;
+            event.mode = executeStatements ? "EXECUTE" : "EXPLAIN";
+            event.outcome = result.status().name();
+            event.commit();
+        }
+        return result;
+    }
+
+    private ValidationResult borrowAndValidate(String dbLabel,
+                                               DataSource dataSource,
+                                               SqlStatement stmt,
+                                               List<String> schemaList,
+                                               StatementWatchdog watchdog,
+                                               DatabaseMetrics metrics,
+                                               long start) {
+        JfrEvents.PoolBorrow borrow = new JfrEvents.PoolBorrow();
+        borrow.begin();
+        boolean borrowed = false;
+        try (Connection conn = dataSource.getConnection()) {
+            borrowed = true;
+            long acquired = metrics.acquire.recordSince(start);
+            commitBorrow(borrow, dbLabel, true);
+            conn.setAutoCommit(false);
+            if (!executeStatements) {
+                conn.setReadOnly(true);
+            }
+            ValidationResult result = schemaList.isEmpty()
+                    ? validateStatement(conn, stmt, dbLabel, watchdog, metrics, acquired)
+                    : validateAcrossSchemas(conn, stmt, dbLabel, schemaList, watchdog, metrics, acquired);
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {
+                // ignore rollback issues on close
+            }
+            long duration = System.nanoTime() - start;
+            metrics.statement.record(duration);
+            return result.withDuration(duration);
+        } catch (Exception e) {
+            if (!borrowed) {
+                commitBorrow(borrow, dbLabel, false);
+            }
+            long duration = System.nanoTime() - start;
+            metrics.statement.record(duration);
+            return ValidationResult.failure(stmt, dbLabel, dbLabel + ": " + e.getMessage())
+                    .withDuration(duration);
+        }
+    }
+
+    private static void commitBorrow(JfrEvents.PoolBorrow borrow, String dbLabel, boolean acquired) {
+        borrow.end();
+        if (borrow.shouldCommit()) {
+            borrow.database = dbLabel;
+            borrow.acquired = acquired;
+            borrow.commit();
+        }
+    }
+
+    private ValidationResult validateStatement(Connection conn, SqlStatement stmt, String dbLabel,
+                                               StatementWatchdog watchdog, DatabaseMetrics metrics, long phaseStart) {
+        String sqlToRun = sqlToRun(stmt);
+        ParameterGenerator generator = new ParameterGenerator();
+        int budgetSeconds = budgetSeconds(stmt.kind());
+        Savepoint sp = null;
+        StatementWatchdog.Handle watch = null;
+        double planCost = Double.NaN;
+        try {
+            sp = conn.setSavepoint("sql_valid");
+            try (PreparedStatement ps = conn.prepareStatement(sqlToRun)) {
+                ps.setQueryTimeout(budgetSeconds);
+                generator.bind(ps, stmt.parameters());
+                phaseStart = metrics.prepare.recordSince(phaseStart);
+                watch = watchdog.begin(stmt, conn, ps, TimeUnit.SECONDS.toNanos(budgetSeconds));
+                boolean hasResults;
+                try (StatementWatchdog.Handle ignored = watch) {
+                    hasResults = ps.execute();
+                }
+                if (hasResults && !executeStatements) {
+                    planCost = planCost(ps);
+                }
+                phaseStart = metrics.execute.recordSince(phaseStart);
+            }
+            if (sp != null) {
+                conn.rollback(sp);
+            }
+            metrics.rollback.recordSince(phaseStart);
+            return ValidationResult.success(stmt, dbLabel).withPlanCost(planCost);
+        } catch (Exception e) {
+            long rollbackStart = System.nanoTime();
+            try {
+                if (sp != null) {
+                    conn.rollback(sp);
+                }
+            } catch (SQLException ignored) {
+                // ignore rollback problems
+            }
+            metrics.rollback.recordSince(rollbackStart);
+            if (watch != null && watch.cancelled()) {
+                String message = dbLabel + ": " + watch.reason() + " (" + e.getMessage() + ")";
+                return watch.timedOut()
+                        ? ValidationResult.timedOut(stmt, dbLabel, message)
+                        : ValidationResult.cancelled(stmt, dbLabel, message);
+            }
+            if (isTimeout(e)) {
+                return ValidationResult.timedOut(stmt, dbLabel, dbLabel + ": " + e.getMessage());
+            }
+            return ValidationResult.failure(stmt, dbLabel, dbLabel + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one statement in every schema over the same connection. The statement is prepared and bound
+     * once; each schema gets its own savepoint, inside which a transaction-local {@code search_path}
+     * selects the schema, and rolling the savepoint back restores the path for the next one.
+     */
+    private ValidationResult validateAcrossSchemas(Connection conn, SqlStatement stmt, String dbLabel, List<String> schemaList,
+                                                   StatementWatchdog watchdog, DatabaseMetrics metrics, long phaseStart) {
+        String sqlToRun = sqlToRun(stmt);
+        int budgetSeconds = budgetSeconds(stmt.kind());
+        Map<String, String> failed = new LinkedHashMap<>();
+        boolean onlyTimeouts = true;
+        try (PreparedStatement searchPath = conn.prepareStatement(SET_SEARCH_PATH);
+             PreparedStatement ps = conn.prepareStatement(sqlToRun)) {
+            ps.setQueryTimeout(budgetSeconds);
+            new ParameterGenerator().bind(ps, stmt.parameters());
+            phaseStart = metrics.prepare.recordSince(phaseStart);
+            for (String schema : schemaList) {
+                Savepoint sp = conn.setSavepoint("sql_valid");
+                StatementWatchdog.Handle watch = null;
+                try {
+                    searchPath.setString(1, quoteIdentifier(schema));
+                    searchPath.execute();
+                    watch = watchdog.begin(stmt, conn, ps, TimeUnit.SECONDS.toNanos(budgetSeconds));
+                    try (StatementWatchdog.Handle ignored = watch) {
+                        ps.execute();
+                    }
+                } catch (SQLException e) {
+                    if (watch != null && watch.cancelled()) {
+                        conn.rollback(sp);
+                        String message = dbLabel + ": " + watch.reason() + " in schema " + schema + " (" + e.getMessage() + ")";
+                        return watch.timedOut()
+                                ? ValidationResult.timedOut(stmt, dbLabel, message)
+                                : ValidationResult.cancelled(stmt, dbLabel, message);
+                    }
+                    onlyTimeouts &= isTimeout(e);
+                    failed.put(schema, e.getMessage());
+                }
+                phaseStart = metrics.execute.recordSince(phaseStart);
+                conn.rollback(sp);
+                phaseStart = metrics.rollback.recordSince(phaseStart);
+            }
+        } catch (Exception e) {
+            return ValidationResult.failure(stmt, dbLabel, dbLabel + ": " + e.getMessage());
+        }
+        return ValidationResult.acrossSchemas(stmt, dbLabel,
+                new ValidationResult.SchemaCoverage(schemaList.size(), failed), onlyTimeouts);
+    }
+
+    /**
+     * Total cost of the top plan node in the {@code EXPLAIN (FORMAT JSON)} output, or NaN when there is none.
+     */
+    private static double planCost(PreparedStatement ps) {
+        try (ResultSet rs = ps.getResultSet()) {
+            if (rs != null && rs.next()) {
+                return planCost(rs.getString(1));
+            }
+        } catch (SQLException ignored) {
+            // the plan is informational; the statement itself passed
+        }
+        return Double.NaN;
+    }
+
+    static double planCost(String plan) {
+        Matcher matcher = plan == null ? null : TOTAL_COST.matcher(plan);
+        return matcher != null && matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+    }
+
+    private String sqlToRun(SqlStatement stmt) {
+        String preparedSql = toPreparedSql(stmt.rawSql());
+        return executeStatements ? preparedSql : "EXPLAIN (FORMAT JSON) " + preparedSql;
+    }
+
+    private static boolean isTimeout(Exception e) {
+        return e instanceof SQLTimeoutException || (e instanceof SQLException sql && "57014".equals(sql.getSQLState()));
+    }
+
+    static String quoteIdentifier(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    private int budgetSeconds(SqlStatement.Kind kind) {
+        return kindBudgets.getOrDefault(kind, statementTimeoutSeconds);
+    }
+
+    static String toPreparedSql(String myBatisSql) {
+        if (myBatisSql == null) {
+            return "";
+        }
+        // Replace #{...} with ? to use JDBC parameters.
+        return Pattern.compile("#\\{[^}]+}").matcher(myBatisSql).replaceAll("?");
+    }
+
+    record ValidationPass(ValidationSummary origin, ValidationSummary target) {
+    }
+
+    /**
+     * A submitted statement that runs only if its worker claims it before the coordinator withdraws it.
+     */
+    private record PendingValidation(int index, SqlStatement statement, AtomicBoolean claimed, Future<ValidationResult> future) {
+        boolean withdraw() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            future.cancel(false);
+            return true;
+        }
+    }
+
+    record RunDeadline(long expiresAtNanos, boolean bounded) {
+        static RunDeadline of(int seconds) {
+            if (seconds <= 0) {
+                return new RunDeadline(0L, false);
+            }
+            return new RunDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds), true);
+        }
+
+        long remainingNanos() {
+            return Math.max(0L, expiresAtNanos - System.nanoTime());
+        }
+
+        /**
+         * A deadline {@code 1/parts} of the remaining time away, for the first of several passes sharing it.
+         */
+        RunDeadline share(int parts) {
+            if (!bounded) {
+                return this;
+            }
+            return new RunDeadline(System.nanoTime() + remainingNanos() / Math.max(1, parts), true);
+        }
+    }
+
+    record ValidationSummary(String label, int total, int failures, int timedOut, int notValidated,
+                             boolean deadlineExceeded, DatabaseMetrics metrics) {
+        String toJson() {
+            return "{\"label\":\"" + Json.escape(label) + "\",\"total\":" + total + ",\"failures\":" + failures
+                    + ",\"timedOut\":" + timedOut + ",\"notValidated\":" + notValidated
+                    + ",\"deadlineExceeded\":" + deadlineExceeded + "}";
+        }
+
+        String describe() {
+            String text = failures + " failure(s) out of " + total;
+            if (timedOut > 0 || notValidated > 0) {
+                text += " (" + timedOut + " timed out, " + notValidated + " not validated)";
+            }
+            return text;
+        }
+    }
+}
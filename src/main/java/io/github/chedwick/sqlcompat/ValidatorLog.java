@@ -0,0 +1,46 @@
+package io.github.chedwick.sqlcompat;
+
+/**
+ * Where the scanner and validator report progress. The Maven goals adapt their own log to it; the
+ * command line and embedding applications can use {@link #stderr} or their own logging framework.
+ */
+public interface ValidatorLog {
+
+    void debug(String message);
+
+    void info(String message);
+
+    void warn(String message);
+
+    void error(String message);
+
+    /**
+     * Prints to standard error with a level prefix, like Maven's console output; debug messages only
+     * when {@code verbose}.
+     */
+    static ValidatorLog stderr(boolean verbose) {
+        return new ValidatorLog() {
+            @Override
+            public void debug(String message) {
+                if (verbose) {
+                    System.err.println("[debug] " + message);
+                }
+            }
+
+            @Override
+            public void info(String message) {
+                System.err.println("[info] " + message);
+            }
+
+            @Override
+            public void warn(String message) {
+                System.err.println("[warn] " + message);
+            }
+
+            @Override
+            public void error(String message) {
+                System.err.println("[error] " + message);
+            }
+        };
+    }
+}
@@ -0,0 +1,174 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pools and the parsed statement index warm and revalidates mapper statements as soon as
+ * their file changes on disk. Runs until interrupted.
+ */
+@Mojo(name = "watch-sql", threadSafe = true)
+public class WatchSqlMojo extends ValidateSqlMojo {
+
+    /**
+     * Quiet period after a file event before revalidating; editors often emit several events per save.
+     */
+    @Parameter(property = "watchSql.debounceMillis", defaultValue = "50")
+    private int debounceMillis;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        prepareRun();
+        MapperScanner scanner = newScanner();
+        StatementIndex index = new StatementIndex();
+        try {
+            // One full scan so that later single-file parses resolve references into the other files.
+            Map<Path, List<SqlStatement>> byFile = new LinkedHashMap<>();
+            for (SqlStatement stmt : scanner.scan()) {
+                byFile.computeIfAbsent(stmt.sourceFile(), k -> new ArrayList<>()).add(stmt);
+            }
+            byFile.forEach(index::update);
+        } catch (IOException e) {
+            getLog().warn("Full scan failed, loading mapper files one by one: " + e.getMessage());
+            for (Path file : scanner.findMapperFiles()) {
+                reparse(scanner, index, file);
+            }
+        }
+        try (Database origin = originDatabase();
+             Database target = targetDatabase();
+             WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            revalidate(index.all(), "initial scan of " + index.fileCount() + " file(s)", origin, target, false);
+            Map<WatchKey, Path> keys = new HashMap<>();
+            for (Path base : scanner.baseDirectories()) {
+                registerTree(watcher, keys, base);
+            }
+            getLog().info("Watching " + keys.size() + " director(ies) for mapper changes; press Ctrl+C to stop.");
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watcher.take(), keys, changed, watcher);
+                WatchKey more;
+                while ((more = watcher.poll(Math.max(0, debounceMillis), TimeUnit.MILLISECONDS)) != null) {
+                    collect(more, keys, changed, watcher);
+                }
+                handleChanges(scanner, index, changed, origin, target);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching mapper files.");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to watch mapper directories", e);
+        }
+    }
+
+    private void handleChanges(MapperScanner scanner, StatementIndex index, Set<Path> changed,
+                               Database origin, Database target) throws MojoExecutionException {
+        List<SqlStatement> affected = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        for (Path file : changed) {
+            if (!Files.exists(file)) {
+                List<SqlStatement> removed = index.remove(file);
+                if (!removed.isEmpty()) {
+                    getLog().info("Removed " + removed.size() + " statement(s) with deleted file " + file);
+                }
+                continue;
+            }
+            if (Files.isDirectory(file) || !scanner.isMapperFile(file) || !scanner.looksLikeMapper(file)) {
+                continue;
+            }
+            files.add(String.valueOf(file.getFileName()));
+            affected.addAll(reparse(scanner, index, file));
+        }
+        if (!files.isEmpty()) {
+            revalidate(affected, String.join(", ", files), origin, target, true);
+        }
+    }
+
+    private List<SqlStatement> reparse(MapperScanner scanner, StatementIndex index, Path file) {
+        try {
+            return index.update(file, scanner.parseMapper(file));
+        } catch (IOException e) {
+            Throwable root = e;
+            while (root.getCause() != null) {
+                root = root.getCause();
+            }
+            getLog().error("Failed to parse " + file + ": " + root.getMessage());
+            return List.of();
+        }
+    }
+
+    private void revalidate(List<SqlStatement> statements, String source, Database origin, Database target,
+                            boolean logPassed) throws MojoExecutionException {
+        if (statements.isEmpty()) {
+            getLog().info("No statement changes in " + source);
+            return;
+        }
+        long start = System.nanoTime();
+        ResultCollector results = new ResultCollector(log(), null, this::moduleOf, result -> {
+            if (logPassed || !result.success()) {
+                logResult(result);
+            }
+        });
+        validatePass(statements, ValidationHistory.empty(), origin, target, Validator.RunDeadline.of(0), results);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        getLog().info("Validated " + statements.size() + " statement(s) from " + source + " in " + millis + " ms: "
+                + results.failureCount() + " failure(s)");
+    }
+
+    private void collect(WatchKey key, Map<WatchKey, Path> keys, Set<Path> changed, WatchService watcher) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    registerTree(watcher, keys, child);
+                    try (var stream = Files.walk(child)) {
+                        stream.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } catch (IOException e) {
+                    getLog().warn("Failed to watch new directory " + child + ": " + e.getMessage());
+                }
+                continue;
+            }
+            changed.add(child);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private static void registerTree(WatchService watcher, Map<WatchKey, Path> keys, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                keys.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class AnnotationMapperScannerTest {
+
+    interface UserMapper {
+        @Select({"SELECT id, name", "FROM users WHERE id = #{id}"})
+        Map<String, Object> findById(long id);
+
+        @Select("<script>SELECT id FROM users <where><if test='name != null'>name = #{name}</if></where></script>")
+        List<Long> search(@Param("name") String name);
+
+        @Insert("INSERT INTO users (name) VALUES (#{name})")
+        int insert(@Param("name") String name);
+
+        @Update("UPDATE users SET name = #{name} WHERE id = #{id}")
+        int rename(@Param("id") long id, @Param("name") String name);
+
+        @Delete("DELETE FROM users WHERE id = #{id}")
+        int delete(long id);
+
+        @SelectProvider(type = Object.class, method = "toString")
+        List<Long> dynamic();
+
+        default int plain() {
+            return 0;
+        }
+    }
+
+    interface BookMapper {
+        @Select("<script>SELECT <include refid='demo.common.columns'/> FROM books</script>")
+        List<Map<String, Object>> findAll();
+    }
+
+    @Test
+    public void extractsAnnotatedStatementsWithoutLoadingTheClass() throws Exception {
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(), List.of(), List.of());
+        AnnotationMapperScanner annotations = new AnnotationMapperScanner(ValidatorLog.stderr(false), scanner, null, "");
+
+        Map<String, SqlStatement> byId = annotations.parseClass(classBytes(), Path.of("UserMapper.class")).stream()
+                .collect(Collectors.toMap(SqlStatement::id, Function.identity()));
+
+        assertEquals(5, byId.size());
+        String namespace = UserMapper.class.getName();
+        assertEquals(namespace + ".findById", byId.get("findById").fullId());
+        assertEquals("SELECT id, name FROM users WHERE id = ?", byId.get("findById").rawSql());
+        assertEquals(SqlStatement.Kind.SELECT, byId.get("findById").kind());
+        assertEquals("SELECT id FROM users WHERE name = ?", byId.get("search").rawSql());
+        assertEquals(SqlStatement.Kind.INSERT, byId.get("insert").kind());
+        assertEquals(2, byId.get("rename").parameters().size());
+        assertEquals(SqlStatement.Kind.DELETE, byId.get("delete").kind());
+        assertEquals(Path.of("UserMapper.class"), byId.get("delete").sourceFile());
+        assertEquals(1L, scanner.metrics().skipped().get("provider method (needs class loading)"));
+    }
+
+    @Test
+    public void cachesStatementsByClassChecksum(@TempDir Path dir) throws Exception {
+        Path classes = dir.resolve("classes");
+        Path mapperClass = classes.resolve("com/example/UserMapper.class");
+        Files.createDirectories(mapperClass.getParent());
+        Files.write(mapperClass, classBytes());
+        Files.write(classes.resolve("com/example/Plain.class"), new byte[]{(byte) 0xCA, (byte) 0xFE});
+        Path cacheFile = dir.resolve("cache.json");
+        MapperScanner scanner = spy(new MapperScanner(ValidatorLog.stderr(false), List.of(), List.of(), List.of()));
+
+        AnnotationMapperScanner first = new AnnotationMapperScanner(ValidatorLog.stderr(false), scanner, cacheFile, "");
+        List<SqlStatement> parsed = first.scan(List.of(classes));
+        AnnotationMapperScanner second = new AnnotationMapperScanner(ValidatorLog.stderr(false), scanner, cacheFile, "");
+        List<SqlStatement> cached = second.scan(List.of(classes));
+
+        verify(scanner, times(1)).parseXml(any(), any());
+        assertEquals(1, first.misses());
+        assertEquals(1, second.hits());
+        assertEquals(5, parsed.size());
+        assertEquals(parsed.size(), cached.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.get(i).fullId(), cached.get(i).fullId());
+            assertEquals(parsed.get(i).rawSql(), cached.get(i).rawSql());
+            assertEquals(mapperClass, cached.get(i).sourceFile());
+        }
+
+        Files.delete(mapperClass);
+        new AnnotationMapperScanner(ValidatorLog.stderr(false), scanner, cacheFile, "").scan(List.of(classes));
+        assertTrue(Files.readString(cacheFile).contains("\"classes\":{}"));
+    }
+
+    @Test
+    public void parsesClassesThatIncludeFragmentsOnEveryRun(@TempDir Path dir) throws Exception {
+        Path classes = dir.resolve("classes");
+        Path mapperClass = classes.resolve("com/example/BookMapper.class");
+        Files.createDirectories(mapperClass.getParent());
+        Files.write(mapperClass, classBytes(BookMapper.class));
+        Path mappers = dir.resolve("mappers");
+        Files.createDirectories(mappers);
+        Path cacheFile = dir.resolve("cache.json");
+        MapperScanner scanner = spy(new MapperScanner(ValidatorLog.stderr(false), List.of(mappers.toString()),
+                List.of("**/*Mapper.xml"), List.of()));
+
+        List<String> rendered = new ArrayList<>();
+        for (String columns : List.of("id, title", "id, title, isbn")) {
+            Files.writeString(mappers.resolve("CommonMapper.xml"), """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                    <mapper namespace="demo.common"><sql id="columns">%s</sql></mapper>
+                    """.formatted(columns));
+            scanner.scan();
+            List<SqlStatement> statements = new AnnotationMapperScanner(ValidatorLog.stderr(false), scanner, cacheFile, "")
+                    .scan(List.of(classes));
+            rendered.add(statements.get(0).rawSql().trim());
+        }
+
+        assertEquals(List.of("SELECT id, title FROM books", "SELECT id, title, isbn FROM books"), rendered);
+        verify(scanner, times(2)).parseXml(any(), any());
+        assertTrue(Files.notExists(cacheFile) || Files.readString(cacheFile).contains("\"classes\":{}"));
+    }
+
+    @Test
+    public void escapesTheDatabaseIdInTheRenderedMapper() throws Exception {
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(), List.of(), List.of());
+        String xml = AnnotationMapperScanner.toMapperXml("demo.users", Map.of("find", List.of(
+                new AnnotationMapperScanner.AnnotatedMethod("select", "SELECT 1", "pg\"<&>"))));
+
+        List<SqlStatement> statements = scanner.parseXml(xml.getBytes(StandardCharsets.UTF_8), Path.of("UserMapper.class"));
+
+        assertEquals(1, statements.size());
+        assertEquals("pg\"<&>", statements.get(0).databaseId());
+    }
+
+    private static byte[] classBytes() throws Exception {
+        return classBytes(UserMapper.class);
+    }
+
+    private static byte[] classBytes(Class<?> type) throws Exception {
+        String resource = "/" + type.getName().replace('.', '/') + ".class";
+        try (InputStream in = AnnotationMapperScannerTest.class.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DependencyMapperCacheTest {
+
+    @Test
+    public void scansJarEntriesInPlaceAndReusesCachedStatements(@TempDir Path dir) throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                DependencyMapperCacheTest.class.getClassLoader().getResource("mappers/SampleMapper.xml")).toURI());
+        Path jar = dir.resolve("shared-dao-1.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            add(zip, "mappers/SampleMapper.xml", Files.readAllBytes(mapperFile));
+            add(zip, "logback.xml", "<configuration/>".getBytes(StandardCharsets.UTF_8));
+        }
+        MapperScanner scanner = spy(new MapperScanner(ValidatorLog.stderr(false), List.of(), List.of("**/*.xml"), List.of()));
+        DependencyMapperCache cache = new DependencyMapperCache(dir.resolve("cache"), ValidatorLog.stderr(false));
+
+        List<SqlStatement> parsed = cache.scan(jar, scanner, "settings");
+        List<SqlStatement> cached = new DependencyMapperCache(dir.resolve("cache"), ValidatorLog.stderr(false))
+                .scan(jar, scanner, "settings");
+
+        verify(scanner, times(1)).scanJar(jar);
+        assertTrue(parsed.size() > 0);
+        assertEquals(Path.of(jar + "!/mappers/SampleMapper.xml"), parsed.get(0).sourceFile());
+        assertEquals(parsed.size(), cached.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.get(i).fullId(), cached.get(i).fullId());
+            assertEquals(parsed.get(i).kind(), cached.get(i).kind());
+            assertEquals(parsed.get(i).rawSql(), cached.get(i).rawSql());
+            assertEquals(parsed.get(i).sourceFile(), cached.get(i).sourceFile());
+            assertEquals(parsed.get(i).parameters().toString(), cached.get(i).parameters().toString());
+        }
+
+        cache.scan(jar, scanner, "other includes");
+        verify(scanner, times(2)).scanJar(jar);
+    }
+
+    @Test
+    public void resolvesJarReferencesAgainstTheJarOnly(@TempDir Path dir) throws Exception {
+        Path project = dir.resolve("project");
+        Files.createDirectories(project);
+        Files.writeString(project.resolve("CommonMapper.xml"), mapper("demo.common",
+                "<sql id=\"columns\">id, project_column</sql>"));
+        Path jar = dir.resolve("shared-dao-1.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            add(zip, "mappers/BookMapper.xml", mapper("demo.books",
+                    "<select id=\"findBook\">SELECT <include refid=\"demo.common.columns\"/> FROM books</select>")
+                    .getBytes(StandardCharsets.UTF_8));
+            add(zip, "mappers/CommonMapper.xml", mapper("demo.common",
+                    "<sql id=\"columns\">id, title</sql>").getBytes(StandardCharsets.UTF_8));
+        }
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(project.toString()),
+                List.of("**/*Mapper.xml"), List.of());
+        scanner.scan();
+
+        List<SqlStatement> statements = scanner.scanJar(jar);
+
+        assertEquals(1, statements.size());
+        assertEquals("SELECT id, title FROM books", statements.get(0).rawSql().trim());
+        assertEquals(Path.of(jar + "!/mappers/BookMapper.xml"), statements.get(0).sourceFile());
+    }
+
+    private static String mapper(String namespace, String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+                + "<mapper namespace=\"" + namespace + "\">" + body + "</mapper>\n";
+    }
+
+    private static void add(ZipOutputStream zip, String name, byte[] content) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+}
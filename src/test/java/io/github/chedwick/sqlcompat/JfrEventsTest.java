@@ -0,0 +1,75 @@
+package io.github.chedwick.sqlcompat;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JfrEventsTest {
+
+    @Test
+    public void mapperParseEventIsRecordedOnlyWhenEnabled(@TempDir Path tmp) throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                JfrEventsTest.class.getClassLoader().getResource("mappers/SampleMapper.xml")).toURI());
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(mapperFile.getParent().toString()),
+                List.of("**/SampleMapper.xml"), List.of());
+
+        Path dump = tmp.resolve("scan.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            scanner.parseMapper(mapperFile);
+            recording.stop();
+            recording.dump(dump);
+        }
+        assertTrue(RecordingFile.readAllEvents(dump).stream()
+                .noneMatch(e -> e.getEventType().getName().equals("io.github.chedwick.sqlcompat.MapperParse")));
+
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrEvents.MapperParse.class);
+            recording.start();
+            scanner.parseMapper(mapperFile);
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(e -> e.getEventType().getName().equals("io.github.chedwick.sqlcompat.MapperParse"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(mapperFile.toString(), events.get(0).getString("path"));
+        assertEquals(Files.size(mapperFile), events.get(0).getLong("bytes"));
+        assertTrue(events.get(0).getInt("statementCount") > 0);
+    }
+
+    @Test
+    public void sharedScanRecordsOneEventPerFileWhenEnabled(@TempDir Path tmp) throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                JfrEventsTest.class.getClassLoader().getResource("mappers/SampleMapper.xml")).toURI());
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(mapperFile.getParent().toString()),
+                List.of("**/SampleMapper.xml"), List.of());
+
+        assertNull(JfrEvents.beginMapperParse());
+        Path dump = tmp.resolve("scan.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrEvents.MapperParse.class);
+            recording.start();
+            scanner.scan();
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(e -> e.getEventType().getName().equals("io.github.chedwick.sqlcompat.MapperParse"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(mapperFile.toString(), events.get(0).getString("path"));
+    }
+}
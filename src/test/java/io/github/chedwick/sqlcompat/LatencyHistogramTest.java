@@ -0,0 +1,45 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueContiguously() {
+        for (long v : new long[] {0, 1, 63, 64, 65, 127, 128, 1_000_000, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.upperBound(index) >= v, "upper bound of " + v);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.upperBound(index - 1) < v, "previous bucket of " + v);
+            }
+        }
+    }
+
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+
+        assertEquals(100, histogram.count());
+        assertEquals(100_000_000L, histogram.maxNanos());
+        assertWithin(50_000_000L, histogram.percentileNanos(50));
+        assertWithin(90_000_000L, histogram.percentileNanos(90));
+        assertWithin(99_000_000L, histogram.percentileNanos(99));
+        assertEquals(100_000_000L, histogram.percentileNanos(100));
+
+        Map<?, ?> json = (Map<?, ?>) Json.parse(histogram.toJson());
+        assertEquals(100L, json.get("count"));
+        assertEquals(100.0, json.get("maxMillis"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.04, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -1,15 +1,18 @@
 package io.github.chedwick.sqlcompat;
 
-import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MapperScannerTest {
@@ -22,9 +25,9 @@ class MapperScannerTest {
         Path mapperDir = mapperFile.getParent();
 
         MapperScanner scanner = new MapperScanner(
-                new SystemStreamLog(),
+                ValidatorLog.stderr(false),
                 List.of(mapperDir.toString()),
-                List.of("**/*Mapper.xml"),
+                List.of("**/SampleMapper.xml"),
                 List.of()
         );
 
@@ -52,9 +55,9 @@ class MapperScannerTest {
         Path mapperDir = mapperFile.getParent();
 
         MapperScanner scanner = new MapperScanner(
-                new SystemStreamLog(),
+                ValidatorLog.stderr(false),
                 List.of(mapperDir.toString()),
-                List.of("**/*Mapper.xml"),
+                List.of("**/IfMapper.xml"),
                 List.of()
         );
 
@@ -71,4 +74,174 @@ class MapperScannerTest {
         assertTrue(stmt.rawSql().contains("WHERE id = ?"));
         assertTrue(stmt.rawSql().contains("title LIKE concat('%', ?, '%')"));
     }
+
+    @Test
+    public void isMapperFileHonorsIncludesAndExcludes() throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                MapperScannerTest.class.getClassLoader().getResource("mappers/SampleMapper.xml"))
+                .toURI());
+        Path mapperDir = mapperFile.getParent();
+
+        MapperScanner scanner = new MapperScanner(
+                ValidatorLog.stderr(false),
+                List.of(mapperDir.toString()),
+                List.of("**/*Mapper.xml"),
+                List.of("**/If*.xml")
+        );
+
+        assertTrue(scanner.isMapperFile(mapperFile));
+        assertFalse(scanner.isMapperFile(mapperDir.resolve("IfMapper.xml")));
+        assertFalse(scanner.isMapperFile(mapperDir.resolve("logback.xml")));
+        assertFalse(scanner.isMapperFile(mapperDir.getParent().resolve("SampleMapper.xml")));
+    }
+
+    @Test
+    public void scanRendersForeachWithSampleCollection(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("ForeachMapper.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                <mapper namespace="demo.foreach">
+                    <sql id="columns">id, title</sql>
+                    <select id="findByIds">
+                        SELECT <include refid="columns"/> FROM books WHERE id IN
+                        <foreach collection="ids" item="id" open="(" separator="," close=")">#{id,jdbcType=BIGINT}</foreach>
+                    </select>
+                </mapper>
+                """);
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*Mapper.xml"), List.of());
+
+        List<SqlStatement> statements = scanner.scan();
+
+        assertEquals(1, statements.size());
+        assertEquals("SELECT id, title FROM books WHERE id IN ( ? )", statements.get(0).rawSql());
+        assertEquals("BIGINT", statements.get(0).parameters().get(0).jdbcType());
+    }
+
+    @Test
+    public void scanResolvesIncludesAndResultMapsAcrossFiles(@TempDir Path dir) throws Exception {
+        // AMapper sorts first, so its references are unresolved until CommonMapper has been parsed.
+        Files.writeString(dir.resolve("AMapper.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                <mapper namespace="demo.books">
+                    <select id="findBook" resultMap="demo.common.book">
+                        SELECT <include refid="demo.common.columns"/> FROM books WHERE id = #{id,jdbcType=BIGINT}
+                    </select>
+                </mapper>
+                """);
+        Files.writeString(dir.resolve("CommonMapper.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                <mapper namespace="demo.common">
+                    <sql id="columns">id, title</sql>
+                    <resultMap id="book" type="map"><id column="id" property="id"/></resultMap>
+                    <select id="countBooks" resultType="long">SELECT count(*) FROM books</select>
+                </mapper>
+                """);
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*Mapper.xml"), List.of());
+
+        List<SqlStatement> statements = scanner.scan();
+
+        assertEquals(2, statements.size());
+        assertEquals("demo.books.findBook", statements.get(0).fullId());
+        assertEquals("SELECT id, title FROM books WHERE id = ?", statements.get(0).rawSql());
+        assertEquals(dir.resolve("AMapper.xml"), statements.get(0).sourceFile());
+        assertEquals("demo.common.countBooks", statements.get(1).fullId());
+        assertFalse(scanner.metrics().skipped().containsKey("unresolved reference"));
+
+        List<SqlStatement> reparsed = scanner.parseMapper(dir.resolve("AMapper.xml"));
+        assertEquals(1, reparsed.size());
+        assertEquals("SELECT id, title FROM books WHERE id = ?", reparsed.get(0).rawSql());
+        assertEquals(reparsed.get(0).rawSql(), scanner.parseMapper(dir.resolve("AMapper.xml")).get(0).rawSql());
+
+        // A changed file no longer sees what its old version declared.
+        Files.writeString(dir.resolve("CommonMapper.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                <mapper namespace="demo.common">
+                    <select id="listBooks">SELECT <include refid="columns"/> FROM books</select>
+                </mapper>
+                """);
+        assertEquals(List.of(), scanner.parseMapper(dir.resolve("CommonMapper.xml")));
+        assertEquals(1L, scanner.metrics().skipped().get("unresolved reference"));
+    }
+
+    @Test
+    public void scanAddsVariantsOfStatementsIncludingAVariantFragmentOfAnotherFile(@TempDir Path dir) throws Exception {
+        String header = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                """;
+        Files.writeString(dir.resolve("CommonMapper.xml"), header + """
+                <mapper namespace="demo.common">
+                    <sql id="limit" databaseId="postgresql">LIMIT 10</sql>
+                    <sql id="limit">FETCH FIRST 10 ROWS ONLY</sql>
+                </mapper>
+                """);
+        Files.writeString(dir.resolve("OrderMapper.xml"), header + """
+                <mapper namespace="demo.orders">
+                    <sql id="page"><include refid="demo.common.limit"/></sql>
+                    <select id="recent">SELECT * FROM orders <include refid="page"/></select>
+                </mapper>
+                """);
+        Files.writeString(dir.resolve("PlainMapper.xml"), header + """
+                <mapper namespace="demo.plain">
+                    <select id="all">SELECT * FROM plain</select>
+                </mapper>
+                """);
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*Mapper.xml"), List.of());
+
+        List<SqlStatement> postgres = Validator.selectVariants(scanner.scan(), "postgresql");
+
+        assertEquals(2, postgres.size());
+        assertEquals("SELECT * FROM orders LIMIT 10", postgres.get(0).rawSql());
+        assertEquals("postgresql", postgres.get(0).databaseId());
+        assertEquals("demo.plain.all", postgres.get(1).fullId());
+        assertNull(postgres.get(1).databaseId());
+    }
+
+    @Test
+    public void findMapperFilesSniffsRootElementAndCountsSkippedFiles(@TempDir Path dir) throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                MapperScannerTest.class.getClassLoader().getResource("mappers/SampleMapper.xml"))
+                .toURI());
+        Files.createDirectories(dir.resolve("mappers"));
+        Files.copy(mapperFile, dir.resolve("mappers/SampleMapper.xml"));
+        Files.writeString(dir.resolve("mappers/NoDoctype.xml"), "<!-- header -->\n<mapper namespace=\"a\"></mapper>");
+        Files.writeString(dir.resolve("logback.xml"), "<?xml version=\"1.0\"?>\n<configuration><root/></configuration>");
+        Files.writeString(dir.resolve("applicationContext.xml"), "<?xml version=\"1.0\"?>\n<!DOCTYPE beans [ <!ENTITY x \"y\"> ]>\n<beans/>");
+        Files.writeString(dir.resolve("empty.xml"), "");
+        Files.createDirectories(dir.resolve("legacy"));
+        Files.writeString(dir.resolve("legacy/OldMapper.xml"), "<mapper namespace=\"old\"/>");
+        Files.writeString(dir.resolve("mappers/OtherMapper.xml"), "<mapper namespace=\"other\"/>");
+
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*.xml"), List.of("legacy/**", "**/Other*.xml"));
+
+        List<Path> files = scanner.findMapperFiles();
+
+        assertEquals(List.of(dir.resolve("mappers/NoDoctype.xml"), dir.resolve("mappers/SampleMapper.xml")), files);
+        assertEquals(Map.of("root <configuration>", 1L, "root <beans>", 1L, "empty file", 1L, "excluded by pattern", 1L),
+                scanner.metrics().skipped());
+        assertTrue(scanner.metrics().toJson().contains("\"skipped\":{\"empty file\":1,"));
+    }
+
+    @Test
+    public void excludePatternsOnlyPruneDirectoriesTheyCoverAsAWhole(@TempDir Path dir) throws Exception {
+        for (String rel : List.of("TestData/FooMapper.xml", "main/FooMapper.xml", "main/FooTestMapper.xml",
+                "legacy/BarMapper.xml")) {
+            Files.createDirectories(dir.resolve(rel).getParent());
+            Files.writeString(dir.resolve(rel), "<mapper namespace=\"" + rel.replace('/', '.') + "\"/>");
+        }
+
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*Mapper.xml"), List.of("**/*Test*", "legacy/**"));
+
+        assertEquals(List.of(dir.resolve("TestData/FooMapper.xml"), dir.resolve("main/FooMapper.xml")),
+                scanner.findMapperFiles());
+        assertEquals(Map.of("excluded by pattern", 1L), scanner.metrics().skipped());
+    }
 }
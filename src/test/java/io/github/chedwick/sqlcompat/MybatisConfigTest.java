@@ -0,0 +1,118 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MybatisConfigTest {
+
+    @Test
+    public void rendersTheVariantMybatisPicksForEachDatabaseId(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("mybatis-config.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE configuration PUBLIC "-//mybatis.org//DTD Config 3.0//EN" "http://mybatis.org/dtd/mybatis-3-config.dtd">
+                <configuration>
+                    <settings>
+                        <setting name="logImpl" value="com.acme.MissingLog"/>
+                        <setting name="jdbcTypeForNull" value="NULL"/>
+                    </settings>
+                    <typeAliases>
+                        <typeAlias alias="Book" type="com.acme.Book"/>
+                        <package name="com.acme.model"/>
+                    </typeAliases>
+                    <typeHandlers>
+                        <typeHandler handler="com.acme.MoneyHandler"/>
+                    </typeHandlers>
+                    <environments default="dev">
+                        <environment id="dev">
+                            <transactionManager type="JDBC"/>
+                            <dataSource type="POOLED"><property name="driver" value="com.acme.Driver"/></dataSource>
+                        </environment>
+                    </environments>
+                    <databaseIdProvider type="DB_VENDOR">
+                        <property name="PostgreSQL" value="postgresql"/>
+                        <property name="Oracle" value="oracle"/>
+                    </databaseIdProvider>
+                    <mappers><mapper resource="mappers/BookMapper.xml"/></mappers>
+                </configuration>
+                """);
+        Files.writeString(dir.resolve("BookMapper.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                <mapper namespace="demo.books">
+                    <sql id="limit" databaseId="postgresql">LIMIT 10</sql>
+                    <sql id="limit">FETCH FIRST 10 ROWS ONLY</sql>
+                    <select id="latest" resultType="Book">
+                        SELECT * FROM books ORDER BY id DESC <include refid="limit"/>
+                    </select>
+                    <select id="now" resultType="java.util.Date" databaseId="oracle">SELECT sysdate FROM dual</select>
+                    <select id="now" resultType="java.util.Date">SELECT now()</select>
+                </mapper>
+                """);
+        MybatisConfig config = MybatisConfig.load(dir.resolve("mybatis-config.xml"), ValidatorLog.stderr(false));
+        MapperScanner scanner = new MapperScanner(ValidatorLog.stderr(false), List.of(dir.toString()),
+                List.of("**/*Mapper.xml"), List.of());
+        scanner.config(config);
+
+        List<SqlStatement> statements = scanner.scan();
+
+        List<SqlStatement> postgres = Validator.selectVariants(statements, config.databaseId(dataSource("PostgreSQL")));
+        assertEquals(2, postgres.size());
+        assertEquals("SELECT * FROM books ORDER BY id DESC LIMIT 10", find(postgres, "latest").rawSql());
+        assertEquals("postgresql", find(postgres, "latest").databaseId());
+        assertEquals("SELECT now()", find(postgres, "now").rawSql());
+
+        List<SqlStatement> oracle = Validator.selectVariants(statements, config.databaseId(dataSource("Oracle")));
+        assertEquals("SELECT * FROM books ORDER BY id DESC FETCH FIRST 10 ROWS ONLY", find(oracle, "latest").rawSql());
+        assertNull(find(oracle, "latest").databaseId());
+        assertEquals("SELECT sysdate FROM dual", find(oracle, "now").rawSql());
+
+        List<SqlStatement> other = Validator.selectVariants(statements, null);
+        assertEquals("SELECT now()", find(other, "now").rawSql());
+        assertTrue(other.stream().allMatch(s -> s.databaseId() == null));
+    }
+
+    @Test
+    public void ignoresADatabaseIdProviderItCannotLoad(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("mybatis-config.xml"), """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE configuration PUBLIC "-//mybatis.org//DTD Config 3.0//EN" "http://mybatis.org/dtd/mybatis-3-config.dtd">
+                <configuration>
+                    <settings><setting name="jdbcTypeForNull" value="NULL"/></settings>
+                    <databaseIdProvider type="com.acme.TenantDatabaseIdProvider"/>
+                </configuration>
+                """);
+
+        MybatisConfig config = MybatisConfig.load(dir.resolve("mybatis-config.xml"), ValidatorLog.stderr(false));
+
+        assertFalse(config.hasDatabaseIdProvider());
+        assertNull(config.databaseId(dataSource("Oracle")));
+    }
+
+    private static SqlStatement find(List<SqlStatement> statements, String id) {
+        return statements.stream().filter(s -> s.id().equals(id)).findFirst().orElseThrow();
+    }
+
+    private static DataSource dataSource(String productName) throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseProductName()).thenReturn(productName);
+        return dataSource;
+    }
+}
@@ -3,6 +3,7 @@ package io.github.chedwick.sqlcompat;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
 class ParameterSpecTest {
@@ -22,4 +23,11 @@ class ParameterSpecTest {
         assertEquals("param", spec.name());
         assertNull(spec.jdbcType());
     }
+
+    @Test
+    public void equalsComparesNameAndNormalizedJdbcType() {
+        assertEquals(new ParameterSpec("id", "integer"), ParameterSpec.fromToken("id,jdbcType=INTEGER"));
+        assertEquals(new ParameterSpec("id", "integer").hashCode(), new ParameterSpec("id", "INTEGER").hashCode());
+        assertNotEquals(new ParameterSpec("id", null), new ParameterSpec("id", "INTEGER"));
+    }
 }
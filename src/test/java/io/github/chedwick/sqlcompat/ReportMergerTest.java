@@ -0,0 +1,49 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportMergerTest {
+
+    @Test
+    public void mergesShardTotalsAndEntries() {
+        ReportMerger merger = new ReportMerger();
+        merger.add("{\"total\":2,\"failures\":1,\"deadlineExceeded\":false,\"shard\":{\"index\":0,\"count\":3},"
+                + "\"databases\":[{\"label\":\"origin\",\"total\":2,\"failures\":1}],"
+                + "\"entriesByDatabase\":{\"origin\":[{\"id\":\"a.b\",\"error\":\"say \\\"hi\\\"\"},{\"id\":\"a.c\"}]}}");
+        merger.add("{\"total\":1,\"failures\":0,\"deadlineExceeded\":true,\"shard\":{\"index\":2,\"count\":3},"
+                + "\"databases\":[{\"label\":\"origin\",\"total\":1,\"failures\":0}],"
+                + "\"entriesByDatabase\":{\"origin\":[{\"id\":\"a.d\"}]}}");
+
+        assertEquals(3, merger.total());
+        assertEquals(1, merger.failures());
+        assertEquals(List.of(1L), merger.missingShards());
+
+        Map<?, ?> merged = (Map<?, ?>) Json.parse(merger.toJson());
+        assertEquals(3L, merged.get("total"));
+        assertEquals(Boolean.TRUE, merged.get("deadlineExceeded"));
+        Map<?, ?> origin = (Map<?, ?>) ((List<?>) merged.get("databases")).get(0);
+        assertEquals(3L, origin.get("total"));
+        List<?> entries = (List<?>) ((Map<?, ?>) merged.get("entriesByDatabase")).get("origin");
+        assertEquals(3, entries.size());
+        assertTrue(merger.toJson().contains("say \\\"hi\\\""));
+    }
+
+    @Test
+    public void reportsShardsThatSplitByDifferentPlans() {
+        ReportMerger agreeing = new ReportMerger();
+        agreeing.add("{\"total\":1,\"failures\":0,\"shard\":{\"index\":0,\"count\":2,\"plan\":\"aa\"}}");
+        agreeing.add("{\"total\":1,\"failures\":0,\"shard\":{\"index\":1,\"count\":2,\"plan\":\"aa\"}}");
+        ReportMerger drifted = new ReportMerger();
+        drifted.add("{\"total\":1,\"failures\":0,\"shard\":{\"index\":0,\"count\":2,\"plan\":\"aa\"}}");
+        drifted.add("{\"total\":1,\"failures\":0,\"shard\":{\"index\":1,\"count\":2,\"plan\":\"bb\"}}");
+
+        assertEquals(Map.of(), agreeing.conflictingPlans());
+        assertEquals(Map.of(0L, "aa", 1L, "bb"), drifted.conflictingPlans());
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportWriterTest {
+
+    @Test
+    public void streamsSingleDocumentGroupedByDatabase() throws Exception {
+        StringWriter out = new StringWriter();
+        ReportWriter writer = ReportWriter.to(out, ReportWriter.Format.JSON);
+        writer.entry(ValidationResult.success(statement("a"), "origin"), null);
+        writer.entry(ValidationResult.failure(statement("b"), "origin", "say \"hi\"\n"), null);
+        writer.entry(ValidationResult.success(statement("a"), "target"), "module-a");
+        writer.finish("\"total\":3,\"failures\":1");
+
+        Map<?, ?> root = (Map<?, ?>) Json.parse(out.toString());
+        assertEquals(3L, root.get("total"));
+        Map<?, ?> byDb = (Map<?, ?>) root.get("entriesByDatabase");
+        assertEquals(2, ((List<?>) byDb.get("origin")).size());
+        Map<?, ?> failed = (Map<?, ?>) ((List<?>) byDb.get("origin")).get(1);
+        assertEquals("say \"hi\"\n", failed.get("error"));
+        assertEquals("FAILED", failed.get("status"));
+        assertEquals("module-a", ((Map<?, ?>) ((List<?>) byDb.get("target")).get(0)).get("module"));
+    }
+
+    @Test
+    public void writesJsonLinesThatMergeLikeTheSingleDocument() throws Exception {
+        StringWriter out = new StringWriter();
+        ReportWriter writer = ReportWriter.to(out, ReportWriter.Format.JSONL);
+        writer.entry(ValidationResult.success(statement("a"), "origin"), null);
+        writer.entry(ValidationResult.failure(statement("b"), "origin", "boom"), null);
+        writer.finish("\"total\":2,\"failures\":1,\"databases\":[{\"label\":\"origin\",\"total\":2,\"failures\":1}]");
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"type\":\"entry\",\"id\":\"demo.mapper.a\""));
+        assertTrue(lines[2].startsWith("{\"type\":\"summary\","));
+
+        ReportMerger merger = new ReportMerger();
+        merger.add(out.toString());
+        assertEquals(2, merger.total());
+        assertEquals(1, merger.failures());
+        Map<?, ?> merged = (Map<?, ?>) Json.parse(merger.toJson());
+        assertEquals(2, ((List<?>) ((Map<?, ?>) merged.get("entriesByDatabase")).get("origin")).size());
+    }
+
+    private static SqlStatement statement(String id) {
+        return new SqlStatement(id, "demo.mapper", SqlStatement.Kind.SELECT, Path.of("BookMapper.xml"), "select 1", List.of());
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunHistoryStoreTest {
+
+    private static final SqlStatement FIND = new SqlStatement("find", "demo.users", SqlStatement.Kind.SELECT,
+            Path.of("UserMapper.xml"), "select 1", List.of());
+    private static final SqlStatement INSERT = new SqlStatement("insert", "demo.users", SqlStatement.Kind.INSERT,
+            Path.of("UserMapper.xml"), "insert into users values (1)", List.of());
+
+    @Test
+    public void appendsRunsAndReadsTheLastOnesOfAStatement(@TempDir Path dir) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            RunHistoryStore.Run run = RunHistoryStore.open(dir).startRun(1_000L * i);
+            run.record(ValidationResult.success(FIND, "target").withDuration(millis(10 + i)).withPlanCost(100 + i));
+            run.record(ValidationResult.success(FIND, "origin").withDuration(millis(1)));
+            if (i % 2 == 0) {
+                run.record(ValidationResult.failure(INSERT, "target", "boom").withDuration(millis(2)));
+            }
+            run.record(ValidationResult.notStarted(INSERT, "origin"));
+            if (i == 4) {
+                run.record(ValidationResult.success(FIND.forDatabase("postgresql"), "target").withDuration(millis(3)));
+            }
+            assertEquals(i, run.commit());
+        }
+
+        RunHistoryStore store = RunHistoryStore.open(dir);
+
+        assertEquals(5, store.runCount());
+        assertEquals(4, store.keyCount());
+        List<RunHistoryStore.Sample> last3 = store.samples("target", FIND, 3);
+        assertEquals(List.of(2, 3, 4), last3.stream().map(RunHistoryStore.Sample::run).toList());
+        assertEquals(millis(14), last3.get(2).durationNanos());
+        assertEquals(104.0, last3.get(2).planCost());
+        assertEquals(List.of(millis(3)), store.samples("target", FIND.forDatabase("postgresql"), 30).stream()
+                .map(RunHistoryStore.Sample::durationNanos).toList());
+        List<RunHistoryStore.Sample> inserts = store.samples("target", INSERT, 30);
+        assertEquals(List.of(0, 2, 4), inserts.stream().map(RunHistoryStore.Sample::run).toList());
+        assertTrue(inserts.stream().allMatch(RunHistoryStore.Sample::failed));
+        assertTrue(Double.isNaN(inserts.get(0).planCost()));
+        assertEquals(List.of(), store.samples("origin", INSERT, 30));
+    }
+
+    @Test
+    public void recoversFromAStaleIndexAndATornTail(@TempDir Path dir) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            RunHistoryStore.Run run = RunHistoryStore.open(dir).startRun(i);
+            run.record(ValidationResult.success(FIND, "target").withDuration(millis(5)));
+            run.commit();
+        }
+        // A run that died half-way through its sample record, before rewriting the index.
+        Files.write(dir.resolve(RunHistoryStore.SAMPLES), new byte[RunHistoryStore.RECORD_BYTES / 2],
+                StandardOpenOption.APPEND);
+        Files.delete(dir.resolve(RunHistoryStore.INDEX));
+
+        RunHistoryStore store = RunHistoryStore.open(dir);
+        assertEquals(2, store.samples("target", FIND, 30).size());
+
+        RunHistoryStore.Run run = store.startRun(2);
+        run.record(ValidationResult.success(FIND, "target").withDuration(millis(6)));
+        run.record(ValidationResult.success(INSERT, "target").withDuration(millis(7)));
+        run.commit();
+
+        RunHistoryStore reopened = RunHistoryStore.open(dir);
+        assertEquals(3, reopened.runCount());
+        assertEquals(List.of(0, 1, 2), reopened.samples("target", FIND, 30).stream()
+                .map(RunHistoryStore.Sample::run).toList());
+        assertEquals(millis(7), reopened.samples("target", INSERT, 30).get(0).durationNanos());
+        assertEquals(16 + 4L * RunHistoryStore.RECORD_BYTES, Files.size(dir.resolve(RunHistoryStore.SAMPLES)));
+    }
+
+    @Test
+    public void compactsToTheRetainedRunsAndReadsAcrossMappedChunks(@TempDir Path dir) throws Exception {
+        for (int i = 0; i < 7; i++) {
+            // Three records per mapping, so every query below crosses mappings.
+            RunHistoryStore store = RunHistoryStore.open(dir, 3);
+            store.retainRuns(4);
+            RunHistoryStore.Run run = store.startRun(1_000L * i);
+            run.record(ValidationResult.success(FIND, "target").withDuration(millis(10 + i)));
+            run.record(ValidationResult.success(FIND, "origin").withDuration(millis(1)));
+            if (i == 0) {
+                run.record(ValidationResult.success(INSERT, "target").withDuration(millis(2)));
+            }
+            assertEquals(i < 6 ? i : 3, run.commit());
+            if (i == 5) {
+                assertEquals(6, RunHistoryStore.open(dir, 3).samples("target", FIND, 30).size());
+            }
+        }
+
+        RunHistoryStore store = RunHistoryStore.open(dir, 3);
+
+        assertEquals(4, store.runCount());
+        assertEquals(2, store.keyCount());
+        assertEquals(List.of(millis(13), millis(14), millis(15), millis(16)),
+                store.samples("target", FIND, 30).stream()
+                        .map(RunHistoryStore.Sample::durationNanos).toList());
+        assertEquals(List.of(0, 1, 2, 3), store.samples("target", FIND, 30).stream()
+                .map(RunHistoryStore.Sample::run).toList());
+        assertEquals(List.of(), store.samples("target", INSERT, 30));
+        assertEquals(16 + 8L * RunHistoryStore.RECORD_BYTES, Files.size(dir.resolve(RunHistoryStore.SAMPLES)));
+        assertTrue(Files.notExists(dir.resolve(RunHistoryStore.COMPACTED)));
+        assertEquals(ValidationHistory.sqlHash(FIND), RunHistoryStore.open(dir).latest(0).sqlHash());
+    }
+
+    @Test
+    public void rejectsSamplesWrittenWithAnotherRecordLayout(@TempDir Path dir) throws Exception {
+        RunHistoryStore.Run run = RunHistoryStore.open(dir).startRun(0);
+        run.record(ValidationResult.success(FIND, "target"));
+        run.commit();
+        try (FileChannel samples = FileChannel.open(dir.resolve(RunHistoryStore.SAMPLES), StandardOpenOption.WRITE)) {
+            samples.write(ByteBuffer.allocate(4).putInt(0, RunHistoryStore.RECORD_BYTES + 8), 8);
+        }
+
+        assertThrows(IOException.class, () -> RunHistoryStore.open(dir));
+    }
+
+    private static long millis(long millis) {
+        return millis * 1_000_000L;
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunTrendsTest {
+
+    @Test
+    public void reportsStatementsThatGotSlowerOrCostlier(@TempDir Path dir) throws Exception {
+        SqlStatement slower = statement("slower");
+        SqlStatement costlier = statement("costlier");
+        SqlStatement steady = statement("steady");
+        SqlStatement tiny = statement("tiny");
+        for (int i = 0; i < 40; i++) {
+            boolean recent = i >= 25;
+            RunHistoryStore.Run run = RunHistoryStore.open(dir).startRun(i);
+            run.record(ValidationResult.success(slower, "target").withDuration(millis(recent ? 30 : 20)));
+            run.record(ValidationResult.success(costlier, "target").withDuration(millis(5))
+                    .withPlanCost(recent ? 1600.0 : 1000.0));
+            run.record(ValidationResult.success(steady, "target").withDuration(millis(10 + i % 2)).withPlanCost(42.0));
+            // Doubles, but stays far below a millisecond.
+            run.record(ValidationResult.success(tiny, "target").withDuration(recent ? 200_000L : 100_000L));
+            if (i == 39) {
+                run.record(ValidationResult.failure(steady, "origin", "boom"));
+            }
+            run.commit();
+        }
+        RunHistoryStore store = RunHistoryStore.open(dir);
+
+        List<RunTrends.Trend> regressions = RunTrends.regressions(store, 30, 0.2, 1.0);
+
+        assertEquals(List.of("demo.costlier", "demo.slower"), regressions.stream().map(RunTrends.Trend::fullId).toList());
+        RunTrends.Trend slowerTrend = regressions.get(1);
+        assertEquals(30, slowerTrend.samples());
+        assertEquals(20.0, slowerTrend.baselineP95Millis());
+        assertEquals(30.0, slowerTrend.recentP95Millis());
+        assertEquals(0.6, regressions.get(0).costGrowth(), 1e-9);
+        assertTrue(slowerTrend.describe().contains("p95 20.0 -> 30.0 ms (+50%)"));
+        assertTrue(slowerTrend.toJson().contains("\"p95Growth\":0.500"));
+        // Over the last 10 runs both halves are already slow: no drift.
+        assertEquals(List.of(), RunTrends.regressions(store, 10, 0.2, 1.0));
+
+        RunTrends.Trend failing = RunTrends.trend(RunHistoryStore.key("origin", steady),
+                store.samples("origin", steady, 30));
+        assertEquals(1, failing.failures());
+        assertTrue(Double.isNaN(failing.durationGrowth()));
+        SqlStatement variant = steady.forDatabase("postgresql");
+        RunTrends.Trend variantTrend = RunTrends.trend(RunHistoryStore.key("origin", variant),
+                List.of(new RunHistoryStore.Sample(0, ValidationResult.Status.PASSED, millis(1), Double.NaN, 0)));
+        assertEquals("postgresql", variantTrend.databaseId());
+        assertTrue(variantTrend.describe().startsWith("demo.steady (SELECT, databaseId postgresql) [origin]"));
+    }
+
+    private static SqlStatement statement(String id) {
+        return new SqlStatement(id, "demo", SqlStatement.Kind.SELECT, Path.of("demo.xml"), "select " + id, List.of());
+    }
+
+    private static long millis(long millis) {
+        return millis * 1_000_000L;
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlCompatCliTest {
+
+    @Test
+    public void scansMappersWithoutADatabase() throws Exception {
+        Path mapperDir = Path.of(Objects.requireNonNull(
+                SqlCompatCliTest.class.getClassLoader().getResource("mappers/SampleMapper.xml")).toURI()).getParent();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int exit = SqlCompatCli.run(new String[]{"--scan-only", "--mapper-dir", mapperDir.toString(),
+                "--include", "**/SampleMapper.xml"}, new PrintStream(out, true, StandardCharsets.UTF_8), ValidatorLog.stderr(false));
+
+        assertEquals(0, exit);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.contains("SampleMapper.xml")));
+    }
+
+    @Test
+    public void validatesAgainstAStandInOnADryRun(@TempDir Path dir) throws Exception {
+        Path mapperDir = Path.of(Objects.requireNonNull(
+                SqlCompatCliTest.class.getClassLoader().getResource("mappers/SampleMapper.xml")).toURI()).getParent();
+        Path report = dir.resolve("report.jsonl");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int exit = SqlCompatCli.run(new String[]{"--dry-run", "--mapper-dir", mapperDir.toString(),
+                "--include", "**/SampleMapper.xml", "--run-timeout", "60", "--budget", "select=3",
+                "--report", report.toString(), "--report-format", "jsonl"},
+                new PrintStream(out, true, StandardCharsets.UTF_8), ValidatorLog.stderr(false));
+
+        assertEquals(0, exit);
+        assertEquals(List.of("0 failure(s) out of 2 validation(s)"), out.toString(StandardCharsets.UTF_8).lines().toList());
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).startsWith("{\"type\":\"summary\",\"total\":2,\"failures\":0,\"deadlineExceeded\":false"));
+    }
+
+    @Test
+    public void rejectsIncompleteArguments() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out, true, StandardCharsets.UTF_8);
+
+        assertEquals(2, SqlCompatCli.run(new String[]{"--mapper-dir", "src/main/resources"}, print, ValidatorLog.stderr(false)));
+        assertEquals(2, SqlCompatCli.run(new String[]{"--jdbc-url", "jdbc:postgresql:db", "--threads", "many"}, print,
+                ValidatorLog.stderr(false)));
+        assertEquals(2, SqlCompatCli.run(new String[]{"--dry-run", "--budget", "merge=5"}, print, ValidatorLog.stderr(false)));
+        assertEquals(2, SqlCompatCli.run(new String[]{"--dry-run", "--report-format", "xml"}, print, ValidatorLog.stderr(false)));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Usage:"));
+
+        SqlCompatCli.Arguments arguments = SqlCompatCli.Arguments.parse(new String[]{"--jdbc-url", "jdbc:postgresql:db",
+                "--mapper-dir", "a", "--mapper-dir", "b", "--schemas", "tenant_a, tenant_b", "--execute"});
+        assertEquals(List.of("a", "b"), arguments.mapperDirectories);
+        assertEquals(List.of("**/*Mapper.xml"), arguments.includes);
+        assertEquals(List.of("tenant_a", "tenant_b"), arguments.schemas);
+        assertTrue(arguments.executeStatements);
+
+        arguments = SqlCompatCli.Arguments.parse(new String[]{"--dry-run", "--budget", "SELECT=5", "--budget",
+                "update = 20", "--run-timeout", "300", "--max-failures", "10", "--report-format", "jsonl"});
+        assertEquals(Map.of(SqlStatement.Kind.SELECT, 5, SqlStatement.Kind.UPDATE, 20), arguments.kindBudgets);
+        assertEquals(300, arguments.runTimeoutSeconds);
+        assertEquals(10, arguments.maxFailures);
+        assertEquals(ReportWriter.Format.JSONL, arguments.reportFormat);
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementIndexTest {
+
+    @Test
+    public void updateReturnsOnlyNewAndChangedStatements() {
+        Path file = Path.of("BookMapper.xml");
+        StatementIndex index = new StatementIndex();
+        index.update(file, List.of(statement("findBook", "SELECT 1"), statement("findAll", "SELECT 2")));
+
+        List<SqlStatement> affected = index.update(file, List.of(
+                statement("findBook", "SELECT 1"),
+                statement("findAll", "SELECT 3"),
+                statement("countBooks", "SELECT 4")));
+
+        assertEquals(List.of("findAll", "countBooks"), affected.stream().map(SqlStatement::id).toList());
+        assertEquals(3, index.all().size());
+    }
+
+    @Test
+    public void removeForgetsDeletedFile() {
+        Path file = Path.of("BookMapper.xml");
+        StatementIndex index = new StatementIndex();
+        index.update(file, List.of(statement("findBook", "SELECT 1")));
+
+        assertEquals(1, index.remove(file).size());
+        assertTrue(index.all().isEmpty());
+    }
+
+    private static SqlStatement statement(String id, String sql) {
+        return new SqlStatement(id, "demo.mapper", SqlStatement.Kind.SELECT, Path.of("BookMapper.xml"), sql, List.of());
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementSamplingTest {
+
+    @Test
+    public void samplesEveryStratumBeforeRepeatingOne() {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            statements.add(statement("big", "stmt" + i, SqlStatement.Kind.SELECT));
+        }
+        statements.add(statement("small", "find", SqlStatement.Kind.SELECT));
+        statements.add(statement("small", "insert", SqlStatement.Kind.INSERT));
+        statements.add(statement("other", "find", SqlStatement.Kind.SELECT));
+
+        // No history: every statement is estimated at the default, so 4 fit on 2 threads.
+        StatementSampling.Plan plan = StatementSampling.plan(statements, ValidationHistory.empty(),
+                2 * StatementSampling.DEFAULT_ESTIMATE_MILLIS, 2, 1L);
+
+        assertEquals(4, plan.statements().size());
+        assertEquals(23, plan.total());
+        Set<String> strata = plan.statements().stream()
+                .map(s -> s.namespace() + "|" + s.kind())
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("big|SELECT", "small|SELECT", "small|INSERT", "other|SELECT"), strata);
+        assertEquals(plan.statements(), StatementSampling.plan(statements, ValidationHistory.empty(),
+                2 * StatementSampling.DEFAULT_ESTIMATE_MILLIS, 2, 1L).statements());
+        assertNotEquals(plan.statements(), StatementSampling.plan(statements, ValidationHistory.empty(),
+                2 * StatementSampling.DEFAULT_ESTIMATE_MILLIS, 2, 2L).statements());
+    }
+
+    @Test
+    public void prefersSuspectStatementsAndSizesTheSampleFromHistory() {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            statements.add(statement("demo", "stmt" + i, SqlStatement.Kind.SELECT));
+        }
+        ValidationHistory history = ValidationHistory.empty();
+        for (int i = 0; i < 9; i++) {
+            history.record(ValidationResult.success(statements.get(i), "origin").withDuration(50_000_000L));
+        }
+        history.record(ValidationResult.failure(statements.get(3), "target", "boom").withDuration(50_000_000L));
+        SqlStatement changed = new SqlStatement("stmt5", "demo", SqlStatement.Kind.SELECT, Path.of("demo.xml"),
+                "select 2", List.of());
+        statements.set(5, changed);
+
+        StatementSampling.Plan plan = StatementSampling.plan(statements, history, 250L, 1, 7L);
+
+        // stmt3 failed, stmt5 changed and stmt9 was never seen; all three go first.
+        assertEquals(3, plan.suspects());
+        assertEquals(Set.of("stmt3", "stmt5", "stmt9"),
+                plan.statements().subList(0, 3).stream().map(SqlStatement::id).collect(Collectors.toSet()));
+        // stmt3 costs 100 ms across both databases, the rest 50 ms each (stmt9 at the median).
+        assertEquals(250L, plan.estimatedMillis());
+        assertEquals(4, plan.statements().size());
+        assertTrue(plan.describe().startsWith("4 of 10 statement(s), 3 suspect"));
+    }
+
+    @Test
+    public void takesOrDropsAllVariantsOfAStatementTogether() {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            SqlStatement stmt = statement("demo", "stmt" + i, SqlStatement.Kind.SELECT);
+            statements.add(stmt);
+            statements.add(stmt.forDatabase("oracle"));
+        }
+        ValidationHistory history = ValidationHistory.empty();
+        for (int i = 0; i < 6; i++) {
+            history.record(ValidationResult.success(statements.get(2 * i), "origin").withDuration(30_000_000L));
+            history.record(ValidationResult.success(statements.get(2 * i + 1), "target").withDuration(20_000_000L));
+        }
+
+        StatementSampling.Plan plan = StatementSampling.plan(statements, history, 100L, 1, 3L);
+
+        // Each statement costs 50 ms: its default variant on the origin plus its oracle variant on the target.
+        assertEquals(0, plan.suspects());
+        assertEquals(6, plan.total());
+        assertEquals(2, plan.sampled());
+        assertEquals(100L, plan.estimatedMillis());
+        assertEquals(4, plan.statements().size());
+        for (SqlStatement stmt : plan.statements()) {
+            assertEquals(2, plan.statements().stream().filter(s -> s.id().equals(stmt.id())).count());
+        }
+        assertTrue(plan.describe().startsWith("2 of 6 statement(s), 0 suspect"));
+    }
+
+    private static SqlStatement statement(String namespace, String id, SqlStatement.Kind kind) {
+        return new SqlStatement(id, namespace, kind, Path.of(namespace + ".xml"), "select 1", List.of());
+    }
+}
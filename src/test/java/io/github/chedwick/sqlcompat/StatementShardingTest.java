@@ -0,0 +1,104 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementShardingTest {
+
+    @Test
+    public void shardsAreDisjointAndCoverEveryStatement() {
+        List<SqlStatement> statements = statements(200);
+
+        Set<String> seen = new HashSet<>();
+        int total = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            List<SqlStatement> selected = StatementSharding.select(statements, shard, 4, null);
+            assertEquals(selected, StatementSharding.select(statements, shard, 4, null));
+            for (SqlStatement stmt : selected) {
+                assertTrue(seen.add(stmt.fullId()));
+            }
+            total += selected.size();
+        }
+
+        assertEquals(statements.size(), total);
+    }
+
+    @Test
+    public void weightedShardingBalancesHistoricalDuration() {
+        List<SqlStatement> statements = statements(4);
+        ValidationHistory history = ValidationHistory.empty();
+        history.record(List.of(
+                ValidationResult.success(statements.get(0), "origin").withDuration(100_000_000L),
+                ValidationResult.success(statements.get(1), "origin").withDuration(60_000_000L),
+                ValidationResult.success(statements.get(2), "origin").withDuration(40_000_000L),
+                ValidationResult.success(statements.get(3), "origin").withDuration(1_000_000L)));
+
+        List<SqlStatement> first = StatementSharding.select(statements, 0, 2, history);
+        List<SqlStatement> second = StatementSharding.select(statements, 1, 2, history);
+
+        assertEquals(List.of("stmt0", "stmt3"), first.stream().map(SqlStatement::id).toList());
+        assertEquals(List.of("stmt1", "stmt2"), second.stream().map(SqlStatement::id).toList());
+    }
+
+    @Test
+    public void weightedShardingKeepsTheVariantsOfAStatementOnOneShard() {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (SqlStatement stmt : statements(4)) {
+            statements.add(stmt);
+            statements.add(stmt.forDatabase("oracle"));
+        }
+        ValidationHistory history = ValidationHistory.empty();
+        history.record(List.of(
+                ValidationResult.success(statements.get(0), "origin").withDuration(50_000_000L),
+                ValidationResult.success(statements.get(1), "target").withDuration(50_000_000L),
+                ValidationResult.success(statements.get(2), "origin").withDuration(60_000_000L),
+                ValidationResult.success(statements.get(5), "target").withDuration(40_000_000L),
+                ValidationResult.success(statements.get(6), "origin").withDuration(1_000_000L)));
+
+        List<SqlStatement> first = StatementSharding.select(statements, 0, 2, history);
+        List<SqlStatement> second = StatementSharding.select(statements, 1, 2, history);
+
+        // stmt0 weighs 100 ms over both variants; stmt1 60 ms, stmt2 40 ms, stmt3 1 ms.
+        assertEquals(List.of("stmt0", "stmt0", "stmt3", "stmt3"), first.stream().map(SqlStatement::id).toList());
+        assertEquals(List.of("stmt1", "stmt1", "stmt2", "stmt2"), second.stream().map(SqlStatement::id).toList());
+    }
+
+    @Test
+    public void planFingerprintChangesWithTheHistoryButNotTheScanOrder() {
+        List<SqlStatement> statements = statements(4);
+        ValidationHistory history = ValidationHistory.empty();
+        history.record(List.of(
+                ValidationResult.success(statements.get(0), "origin").withDuration(100_000_000L),
+                ValidationResult.success(statements.get(1), "origin").withDuration(60_000_000L)));
+        ValidationHistory drifted = ValidationHistory.empty();
+        drifted.record(List.of(
+                ValidationResult.success(statements.get(2), "origin").withDuration(100_000_000L),
+                ValidationResult.success(statements.get(3), "origin").withDuration(60_000_000L)));
+        List<SqlStatement> reversed = new ArrayList<>(statements);
+        Collections.reverse(reversed);
+
+        String plan = StatementSharding.assign(statements, 2, history).fingerprint();
+
+        assertEquals(plan, StatementSharding.assign(reversed, 2, history).fingerprint());
+        assertNotEquals(plan, StatementSharding.assign(statements, 2, drifted).fingerprint());
+    }
+
+    private static List<SqlStatement> statements(int count) {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            statements.add(new SqlStatement("stmt" + i, "demo.mapper", SqlStatement.Kind.SELECT,
+                    Path.of("SampleMapper.xml"), "SELECT " + i, List.of()));
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StatementStoreTest {
+
+    @Test
+    public void sharesEqualPartsBetweenStatements() {
+        StatementStore store = new StatementStore();
+        SqlStatement first = store.add(statement("find", new String("demo.users"), Path.of("mappers/UserMapper.xml"),
+                new String("select * from users where id = ?"), "id", "INTEGER"));
+        SqlStatement second = store.add(statement("findAgain", new String("demo.users"), Path.of("mappers/UserMapper.xml"),
+                new String("select * from users where id = ?"), "id", "INTEGER"));
+
+        assertSame(first.namespace(), second.namespace());
+        assertSame(first.sourceFile(), second.sourceFile());
+        assertSame(first.rawSql(), second.rawSql());
+        assertSame(first.parameters(), second.parameters());
+        assertSame(second, store.intern(second));
+        assertEquals(1, store.fileCount());
+        assertEquals(1, store.signatureCount());
+        assertEquals(1, store.sqlCount());
+    }
+
+    @Test
+    public void dropsStatementsAlreadyStoredForTheSameFileKindAndDatabase() {
+        StatementStore store = new StatementStore();
+        Path file = Path.of("mappers/UserMapper.xml");
+        SqlStatement find = statement("find", "demo.users", file, "select 1", "id", null);
+
+        assertNotNull(store.add(find));
+        assertNull(store.add(statement("find", "demo.users", file.toAbsolutePath(), "select 2", "id", null)));
+        assertNotNull(store.add(find.forDatabase("oracle")));
+        assertNull(store.add(find.forDatabase("oracle")));
+        assertNotNull(store.add(statement("find", "demo.users", Path.of("mappers/OtherMapper.xml"), "select 1", "id", null)));
+        assertNotNull(store.add(statement("find", "demo.orders", file, "select 1", "id", null)));
+        assertNotNull(store.add(new SqlStatement("find", "demo.users", SqlStatement.Kind.DELETE, file, "delete", List.of())));
+
+        assertEquals(5, store.size());
+        assertEquals("select 1", store.statements().get(0).rawSql());
+    }
+
+    @Test
+    public void storesAFileReachedThroughTwoSpellingsOnce() {
+        StatementStore store = new StatementStore();
+        Path file = Path.of("mappers/UserMapper.xml");
+        store.add(statement("find", "demo.users", file, "select 1", "id", null));
+        SqlStatement other = store.add(statement("count", "demo.users", file.toAbsolutePath(), "select 2", "id", null));
+
+        assertSame(file, other.sourceFile());
+        assertEquals(1, store.fileCount());
+    }
+
+    @Test
+    public void keepsEveryDistinctStatementOfALargeScan() {
+        StatementStore store = new StatementStore();
+        for (int i = 0; i < 20_000; i++) {
+            Path file = Path.of("mappers/M" + (i % 500) + "Mapper.xml");
+            assertNotNull(store.add(statement("s" + i, "bench.m" + (i % 500), file, "select " + (i % 100), "p" + (i % 7), "BIGINT")));
+        }
+        for (int i = 0; i < 20_000; i += 3) {
+            Path file = Path.of("mappers/M" + (i % 500) + "Mapper.xml");
+            assertNull(store.add(statement("s" + i, "bench.m" + (i % 500), file, "select " + (i % 100), "p" + (i % 7), "BIGINT")));
+        }
+
+        assertEquals(20_000, store.size());
+        assertEquals(500, store.fileCount());
+        assertEquals(100, store.sqlCount());
+        assertEquals(7, store.signatureCount());
+    }
+
+    private static SqlStatement statement(String id, String namespace, Path file, String sql, String param, String jdbcType) {
+        return new SqlStatement(id, namespace, SqlStatement.Kind.SELECT, file, sql,
+                List.of(new ParameterSpec(new String(param), jdbcType)));
+    }
+}
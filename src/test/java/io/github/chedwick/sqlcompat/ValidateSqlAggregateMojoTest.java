@@ -0,0 +1,170 @@
+package io.github.chedwick.sqlcompat;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Savepoint;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ValidateSqlAggregateMojoTest {
+
+    @Test
+    public void validatesAllModulesWithSharedPoolsAndAttributesResults(@TempDir Path tmp) throws Exception {
+        MavenProject moduleA = module(tmp.resolve("module-a"), "module-a");
+        MavenProject moduleB = module(tmp.resolve("module-b"), "module-b");
+        Path report = tmp.resolve("report.json");
+
+        ValidateSqlAggregateMojo mojo = Mockito.spy(new ValidateSqlAggregateMojo());
+        mojo.setLog(new SystemStreamLog());
+        setField(mojo, "jdbcUrl", "jdbc:test:target");
+        setField(mojo, "username", "target_user");
+        setField(mojo, "password", "target_pass");
+        setField(mojo, "originJdbcUrl", "jdbc:test:origin");
+        setField(mojo, "originUsername", "origin_user");
+        setField(mojo, "originPassword", "origin_pass");
+        setField(mojo, "mapperDirectories", List.of("src/main/resources"));
+        setField(mojo, "includes", List.of("**/*Mapper.xml"));
+        setField(mojo, "excludes", List.of());
+        setField(mojo, "reportPath", report.toString());
+        setField(mojo, "threadCount", 2);
+        setField(mojo, "reactorProjects", List.of(moduleA, moduleB));
+
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        when(conn.setSavepoint(anyString())).thenReturn(mock(Savepoint.class));
+        DataSource ds = mock(DataSource.class);
+        when(ds.getConnection()).thenReturn(conn);
+        Mockito.doReturn(ds).when(mojo).createDataSource(anyString(), anyString(), anyString());
+
+        assertDoesNotThrow(mojo::execute);
+
+        verify(mojo, times(2)).createDataSource(anyString(), anyString(), anyString());
+        String json = Files.readString(report);
+        assertTrue(json.contains("{\"module\":\"module-a\",\"total\":4,\"failures\":0}"));
+        assertTrue(json.contains("{\"module\":\"module-b\",\"total\":4,\"failures\":0}"));
+        assertTrue(json.contains("\"module\":\"module-b\","));
+    }
+
+    @Test
+    public void scansEachModuleWithItsOwnPluginConfiguration(@TempDir Path tmp) throws Exception {
+        MavenProject moduleA = module(tmp.resolve("module-a"), "module-a");
+        MavenProject moduleB = module(tmp.resolve("module-b"), "module-b");
+        Path other = Files.createDirectories(tmp.resolve("module-b/src/other/mappers"));
+        Files.copy(tmp.resolve("module-b/src/main/resources/mappers/SampleMapper.xml"), other.resolve("OtherMapper.xml"));
+        Files.writeString(other.resolve("IgnoredMapper.xml"), "<mapper namespace=\"ignored\"/>");
+        Xpp3Dom configuration = Xpp3DomBuilder.build(new StringReader("<configuration>"
+                + "<mapperDirectories><mapperDirectory>src/other</mapperDirectory></mapperDirectories>"
+                + "<excludes><exclude>**/Ignored*</exclude></excludes></configuration>"));
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("io.github.chedwick");
+        plugin.setArtifactId("mybatis-sql-compat-checker");
+        plugin.setConfiguration(configuration);
+        moduleB.getModel().getBuild().addPlugin(plugin);
+
+        ValidateSqlAggregateMojo mojo = new ValidateSqlAggregateMojo();
+        mojo.setLog(new SystemStreamLog());
+        setField(mojo, "reactorProjects", List.of(moduleA, moduleB));
+        setField(mojo, "scanAnnotations", false);
+
+        List<SqlStatement> statements = mojo.scanStatements(List.of("src/main/resources"), List.of("**/*Mapper.xml"), List.of());
+
+        assertEquals(Set.of("main/resources/mappers/SampleMapper.xml", "other/mappers/OtherMapper.xml"),
+                statements.stream().map(s -> tmp.relativize(s.sourceFile()).toString().replace('\\', '/')
+                        .replaceFirst("^module-[ab]/src/", "")).collect(Collectors.toSet()));
+        assertEquals("module-b", mojo.moduleOf(statements.stream()
+                .filter(s -> s.sourceFile().endsWith("OtherMapper.xml")).findFirst().orElseThrow()));
+    }
+
+    @Test
+    public void resolvesReferencesToFragmentsOfOtherModules(@TempDir Path tmp) throws Exception {
+        MavenProject moduleA = module(tmp.resolve("module-a"), "module-a");
+        MavenProject moduleB = module(tmp.resolve("module-b"), "module-b");
+        String header = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!DOCTYPE mapper PUBLIC "-//mybatis.org//DTD Mapper 3.0//EN" "http://mybatis.org/dtd/mybatis-3-mapper.dtd">
+                """;
+        // module-a sorts first, so its reference waits for module-b.
+        Files.writeString(tmp.resolve("module-a/src/main/resources/mappers/OrderMapper.xml"), header + """
+                <mapper namespace="demo.orders">
+                    <select id="recent" resultMap="demo.common.order">
+                        SELECT <include refid="demo.common.columns"/> FROM orders
+                    </select>
+                </mapper>
+                """);
+        Files.writeString(tmp.resolve("module-b/src/main/resources/mappers/CommonMapper.xml"), header + """
+                <mapper namespace="demo.common">
+                    <sql id="columns">id, total</sql>
+                    <resultMap id="order" type="map"><id column="id" property="id"/></resultMap>
+                </mapper>
+                """);
+
+        ValidateSqlAggregateMojo mojo = new ValidateSqlAggregateMojo();
+        mojo.setLog(new SystemStreamLog());
+        setField(mojo, "reactorProjects", List.of(moduleA, moduleB));
+        setField(mojo, "scanAnnotations", false);
+
+        List<SqlStatement> statements = mojo.scanStatements(List.of("src/main/resources"), List.of("**/*Mapper.xml"), List.of());
+
+        SqlStatement recent = statements.stream().filter(s -> s.fullId().equals("demo.orders.recent")).findFirst()
+                .orElseThrow();
+        assertEquals("SELECT id, total FROM orders", recent.rawSql());
+        assertEquals("module-a", mojo.moduleOf(recent));
+    }
+
+    private static MavenProject module(Path basedir, String artifactId) throws Exception {
+        Path mappers = Files.createDirectories(basedir.resolve("src/main/resources/mappers"));
+        try (InputStream in = Objects.requireNonNull(
+                ValidateSqlAggregateMojoTest.class.getClassLoader().getResourceAsStream("mappers/SampleMapper.xml"))) {
+            String xml = new String(in.readAllBytes()).replace("demo.mapper", artifactId);
+            Files.writeString(mappers.resolve("SampleMapper.xml"), xml);
+        }
+        Model model = new Model();
+        model.setArtifactId(artifactId);
+        model.setBuild(new Build());
+        MavenProject project = new MavenProject(model);
+        project.setFile(basedir.resolve("pom.xml").toFile());
+        return project;
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException ignored) {
+                // try the superclass
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
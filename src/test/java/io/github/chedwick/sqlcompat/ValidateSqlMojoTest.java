@@ -1,24 +1,37 @@
 package io.github.chedwick.sqlcompat;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import java.lang.reflect.Field;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.sql.DataSource;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -108,7 +121,188 @@ class ValidateSqlMojoTest {
         Mockito.doReturn(originDs).when(mojo).createDataSource(eq("jdbc:test:origin"), eq("origin_user"), eq("origin_pass"));
         Mockito.doReturn(targetDs).when(mojo).createDataSource(eq("jdbc:test:target"), eq("target_user"), eq("target_pass"));
 
+        assertThrows(MojoExecutionException.class, mojo::execute);
+        verify(targetDs, never()).getConnection();
+    }
+
+    @Test
+    public void appliesPerKindStatementBudgets() throws Exception {
+        ValidateSqlMojo mojo = sampleMojo();
+        setField(mojo, "includes", List.of("**/SampleMapper.xml"));
+        setField(mojo, "statementTimeoutSeconds", 8);
+        setField(mojo, "statementBudgets", Map.of("select", "3"));
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        DataSource ds = mockDataSource(ps);
+        Mockito.doReturn(ds).when(mojo).createDataSource(anyString(), anyString(), anyString());
+
+        assertDoesNotThrow(mojo::execute);
+
+        verify(ps, Mockito.times(2)).setQueryTimeout(eq(3));
+        verify(ps, Mockito.times(2)).setQueryTimeout(eq(8));
+    }
+
+    @Test
+    public void writesPartialReportWhenRunDeadlineIsReached(@TempDir Path tmp) throws Exception {
+        ValidateSqlMojo mojo = sampleMojo();
+        Path report = tmp.resolve("report.json");
+        setField(mojo, "reportPath", report.toString());
+        setField(mojo, "threadCount", 1);
+        setField(mojo, "runTimeoutSeconds", 1);
+        setField(mojo, "cancelGraceSeconds", 1);
+
+        CountDownLatch cancelled = new CountDownLatch(1);
+        PreparedStatement hungPs = mock(PreparedStatement.class);
+        Mockito.doAnswer(inv -> {
+            cancelled.countDown();
+            return null;
+        }).when(hungPs).cancel();
+        when(hungPs.execute()).thenAnswer(inv -> {
+            cancelled.await(10, TimeUnit.SECONDS);
+            throw new SQLException("canceling statement due to user request", "57014");
+        });
+        DataSource originDs = mockDataSource(hungPs);
+        DataSource targetDs = mock(DataSource.class);
+        Mockito.doReturn(originDs).when(mojo).createDataSource(eq("jdbc:test:origin"), eq("origin_user"), eq("origin_pass"));
+        Mockito.doReturn(targetDs).when(mojo).createDataSource(eq("jdbc:test:target"), eq("target_user"), eq("target_pass"));
+
+        MojoExecutionException ex = assertThrows(MojoExecutionException.class, mojo::execute);
+
+        assertTrue(ex.getMessage().contains("deadline"));
+        verify(hungPs).cancel();
+        verify(targetDs, never()).getConnection();
+        String json = Files.readString(report);
+        assertTrue(json.contains("\"deadlineExceeded\":true"));
+        assertTrue(json.contains("\"status\":\"TIMED_OUT\""));
+        assertTrue(json.contains("\"status\":\"NOT_STARTED\""));
+    }
+
+    @Test
+    public void stopsEarlyOnceMaxFailuresIsReached() throws Exception {
+        ValidateSqlMojo mojo = sampleMojo();
+        setField(mojo, "threadCount", 1);
+        setField(mojo, "maxFailures", 1);
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        Mockito.doThrow(new SQLException("boom")).when(ps).execute();
+        DataSource originDs = mockDataSource(ps);
+        DataSource targetDs = mock(DataSource.class);
+        Mockito.doReturn(originDs).when(mojo).createDataSource(eq("jdbc:test:origin"), eq("origin_user"), eq("origin_pass"));
+        Mockito.doReturn(targetDs).when(mojo).createDataSource(eq("jdbc:test:target"), eq("target_user"), eq("target_pass"));
+
+        MojoExecutionException ex = assertThrows(MojoExecutionException.class, mojo::execute);
+
+        assertTrue(ex.getMessage().contains("maxFailures=1"));
+        verify(targetDs, never()).getConnection();
+    }
+
+    @Test
+    public void validatesEveryStatementInEverySchemaOverOnePreparedStatement(@TempDir Path tmp) throws Exception {
+        ValidateSqlMojo mojo = sampleMojo();
+        Path report = tmp.resolve("report.json");
+        setField(mojo, "reportPath", report.toString());
+        setField(mojo, "threadCount", 1);
+        setField(mojo, "schemas", List.of("tenant_a", "tenant \"b\"", "tenant_c"));
+
+        AtomicReference<String> searchPath = new AtomicReference<>();
+        PreparedStatement setSearchPath = mock(PreparedStatement.class);
+        Mockito.doAnswer(inv -> {
+            searchPath.set(inv.getArgument(1));
+            return null;
+        }).when(setSearchPath).setString(eq(1), anyString());
+        AtomicInteger executions = new AtomicInteger();
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(ps.execute()).thenAnswer(inv -> {
+            executions.incrementAndGet();
+            if (searchPath.get().equals("\"tenant \"\"b\"\"\"")) {
+                throw new SQLException("relation \"books\" does not exist");
+            }
+            return true;
+        });
+        Connection conn = mock(Connection.class);
+        AtomicInteger prepared = new AtomicInteger();
+        when(conn.prepareStatement(anyString())).thenAnswer(inv -> {
+            if (inv.getArgument(0).toString().contains("search_path")) {
+                return setSearchPath;
+            }
+            prepared.incrementAndGet();
+            return ps;
+        });
+        when(conn.setSavepoint(anyString())).thenReturn(mock(Savepoint.class));
+        DataSource originDs = mock(DataSource.class);
+        when(originDs.getConnection()).thenReturn(conn);
+        DataSource targetDs = mock(DataSource.class);
+        Mockito.doReturn(originDs).when(mojo).createDataSource(eq("jdbc:test:origin"), eq("origin_user"), eq("origin_pass"));
+        Mockito.doReturn(targetDs).when(mojo).createDataSource(eq("jdbc:test:target"), eq("target_user"), eq("target_pass"));
+
+        assertThrows(MojoExecutionException.class, mojo::execute);
+
+        assertTrue(prepared.get() > 0);
+        assertEquals(3 * prepared.get(), executions.get());
+        verify(conn, Mockito.times(3 * prepared.get())).rollback(any(Savepoint.class));
+        String json = Files.readString(report);
+        assertTrue(json.contains("fails in 1 of 3 schemas, first tenant \\\"b\\\": relation"));
+        assertTrue(json.contains("\"schemas\":{\"total\":3,\"failed\":1,\"failures\":{\"tenant \\\"b\\\"\":"));
+    }
+
+    @Test
+    public void leavesOutStatementsNotStartedWithinTheSampleBudget(@TempDir Path tmp) throws Exception {
+        ValidateSqlMojo mojo = sampleMojo();
+        Path report = tmp.resolve("report.json");
+        setField(mojo, "reportPath", report.toString());
+        setField(mojo, "threadCount", 1);
+        setField(mojo, "sampleBudgetSeconds", 1);
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(ps.execute()).thenAnswer(inv -> {
+            Thread.sleep(400);
+            return true;
+        });
+        DataSource ds = mockDataSource(ps);
+        Mockito.doReturn(ds).when(mojo).createDataSource(anyString(), anyString(), anyString());
+
         assertDoesNotThrow(mojo::execute);
+
+        Map<?, ?> root = (Map<?, ?>) Json.parse(Files.readString(report));
+        Map<?, ?> sampling = (Map<?, ?>) root.get("sampling");
+        long statements = (Long) sampling.get("statements");
+        assertEquals(statements, sampling.get("sampled"));
+        List<?> databases = (List<?>) root.get("databases");
+        assertEquals(2, databases.size());
+        long originValidated = (Long) ((Map<?, ?>) databases.get(0)).get("total");
+        long targetValidated = (Long) ((Map<?, ?>) databases.get(1)).get("total");
+        assertTrue(originValidated >= 1 && originValidated < statements, databases.toString());
+        assertTrue(targetValidated < statements, databases.toString());
+    }
+
+    private static ValidateSqlMojo sampleMojo() throws Exception {
+        Path mapperFile = Path.of(Objects.requireNonNull(
+                ValidateSqlMojoTest.class.getClassLoader().getResource("mappers/SampleMapper.xml"))
+                .toURI());
+        ValidateSqlMojo mojo = Mockito.spy(new ValidateSqlMojo());
+        mojo.setLog(new SystemStreamLog());
+        setField(mojo, "jdbcUrl", "jdbc:test:target");
+        setField(mojo, "username", "target_user");
+        setField(mojo, "password", "target_pass");
+        setField(mojo, "originJdbcUrl", "jdbc:test:origin");
+        setField(mojo, "originUsername", "origin_user");
+        setField(mojo, "originPassword", "origin_pass");
+        setField(mojo, "mapperDirectories", List.of(mapperFile.getParent().toString()));
+        setField(mojo, "includes", List.of("**/*Mapper.xml"));
+        setField(mojo, "excludes", List.of());
+        setField(mojo, "reportPath", null);
+        setField(mojo, "executeStatements", false);
+        setField(mojo, "threadCount", 2);
+        return mojo;
+    }
+
+    private static DataSource mockDataSource(PreparedStatement ps) throws SQLException {
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(conn.setSavepoint(anyString())).thenReturn(mock(Savepoint.class));
+        DataSource ds = mock(DataSource.class);
+        when(ds.getConnection()).thenReturn(conn);
+        return ds;
     }
 
     private static void setField(Object target, String name, Object value) throws Exception {
@@ -0,0 +1,89 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationHistoryTest {
+
+    @Test
+    public void schedulesFailedAndChangedFirstThenLongestFirst(@TempDir Path tmp) throws Exception {
+        SqlStatement fast = statement("fast", "SELECT 1");
+        SqlStatement slow = statement("slow", "SELECT 2");
+        SqlStatement failed = statement("failed", "SELECT 3");
+        SqlStatement changed = statement("changed", "SELECT 4");
+
+        ValidationHistory reloaded = stored(tmp, List.of(
+                ValidationResult.success(fast, "origin").withDuration(5_000_000L),
+                ValidationResult.success(slow, "origin").withDuration(900_000_000L),
+                ValidationResult.failure(failed, "origin", "boom").withDuration(1_000_000L),
+                ValidationResult.success(statement("changed", "SELECT 0"), "origin").withDuration(1_000_000L)));
+        List<SqlStatement> ordered = reloaded.schedule("origin", List.of(fast, slow, failed, changed));
+
+        assertEquals(List.of("failed", "changed", "slow", "fast"), ordered.stream().map(SqlStatement::id).toList());
+    }
+
+    @Test
+    public void keepsPreviousEntryForStatementsThatDidNotComplete() {
+        SqlStatement stmt = statement("findBook", "SELECT 1");
+        ValidationHistory history = ValidationHistory.empty();
+        history.record(List.of(ValidationResult.success(stmt, "origin").withDuration(42_000_000L)));
+
+        history.record(List.of(ValidationResult.notStarted(stmt, "origin")));
+
+        assertEquals(42L, history.lookup("origin", stmt).durationMillis());
+    }
+
+    @Test
+    public void comparesAVariantOnlyWithTheDatabasesThatRanIt(@TempDir Path tmp) throws Exception {
+        SqlStatement now = statement("now", "SELECT now()");
+        SqlStatement oracleNow = statement("now", "SELECT sysdate FROM dual").forDatabase("oracle");
+        ValidationHistory reloaded = stored(tmp, List.of(
+                ValidationResult.success(now, "origin").withDuration(3_000_000L),
+                ValidationResult.success(oracleNow, "target").withDuration(7_000_000L)));
+
+        assertFalse(reloaded.suspect(now));
+        assertFalse(reloaded.suspect(oracleNow));
+        assertEquals(3L, reloaded.expectedMillis(now));
+        assertEquals(7L, reloaded.expectedMillis(oracleNow));
+        assertEquals(-1L, reloaded.expectedMillis(statement("now", "SELECT sysdate FROM dual").forDatabase("postgresql")));
+        assertTrue(reloaded.suspect(statement("now", "SELECT sysdate FROM dual").forDatabase("postgresql")));
+    }
+
+    @Test
+    public void usesTheLatestSampleOfEachStatementInTheRunHistory(@TempDir Path tmp) throws Exception {
+        SqlStatement stmt = statement("findBook", "SELECT 1");
+        RunHistoryStore store = RunHistoryStore.open(tmp);
+        RunHistoryStore.Run first = store.startRun(1L);
+        first.record(ValidationResult.failure(stmt, "origin", "boom").withDuration(9_000_000L));
+        first.commit();
+        RunHistoryStore.Run second = store.startRun(2L);
+        second.record(ValidationResult.success(stmt, "origin").withDuration(4_000_000L));
+        second.record(ValidationResult.notStarted(stmt, "target"));
+        second.commit();
+
+        ValidationHistory history = ValidationHistory.of(RunHistoryStore.open(tmp));
+
+        assertEquals(1, history.size());
+        assertEquals(4L, history.lookup("origin", stmt).durationMillis());
+        assertFalse(history.suspect(stmt));
+        assertTrue(history.suspect(statement("findBook", "SELECT 2")));
+    }
+
+    private static ValidationHistory stored(Path dir, List<ValidationResult> results) throws Exception {
+        RunHistoryStore.Run run = RunHistoryStore.open(dir).startRun(0L);
+        results.forEach(run::record);
+        run.commit();
+        return ValidationHistory.of(RunHistoryStore.open(dir));
+    }
+
+    private static SqlStatement statement(String id, String sql) {
+        return new SqlStatement(id, "demo.mapper", SqlStatement.Kind.SELECT, Path.of("SampleMapper.xml"), sql, List.of());
+    }
+}
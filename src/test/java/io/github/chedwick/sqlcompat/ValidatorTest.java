@@ -0,0 +1,139 @@
+package io.github.chedwick.sqlcompat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ValidatorTest {
+
+    @Test
+    public void validatesAgainstACallerOwnedDataSource() throws Exception {
+        PreparedStatement ok = mock(PreparedStatement.class);
+        PreparedStatement broken = mock(PreparedStatement.class);
+        doThrow(new SQLException("function nvl does not exist")).when(broken).execute();
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ok);
+        when(conn.prepareStatement(contains("nvl"))).thenReturn(broken);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        List<SqlStatement> statements = List.of(
+                statement("find", "select id from users where id = #{id}"),
+                statement("legacy", "select nvl(name, '-') from users"));
+
+        Validator validator = new Validator(ValidatorLog.stderr(false), new Validator.Options()
+                .threadCount(1)
+                .statementTimeoutSeconds(3));
+        List<ValidationResult> results;
+        try (Database target = new Database("target", dataSource)) {
+            results = validator.validate(statements, null, target);
+        }
+
+        assertEquals(2, results.size());
+        ValidationResult legacy = results.stream().filter(r -> r.statement().id().equals("legacy")).findFirst().orElseThrow();
+        assertTrue(legacy.failed());
+        assertTrue(legacy.errorMessage().contains("nvl"));
+        assertEquals(1, results.stream().filter(ValidationResult::success).count());
+        verify(conn).prepareStatement("EXPLAIN (FORMAT JSON) select id from users where id = ?");
+        verify(ok).setQueryTimeout(3);
+    }
+
+    @Test
+    public void skipsTheTargetWhenTheOriginFails() throws Exception {
+        PreparedStatement broken = mock(PreparedStatement.class);
+        doThrow(new SQLException("boom")).when(broken).execute();
+        Connection originConn = mock(Connection.class);
+        when(originConn.prepareStatement(anyString())).thenReturn(broken);
+        DataSource originDs = mock(DataSource.class);
+        when(originDs.getConnection()).thenReturn(originConn);
+        DataSource targetDs = mock(DataSource.class);
+
+        List<ValidationResult> results = new Validator(ValidatorLog.stderr(false), new Validator.Options())
+                .validate(List.of(statement("find", "select 1")),
+                        new Database("origin", originDs), new Database("target", targetDs));
+
+        assertEquals(1, results.size());
+        assertEquals("origin", results.get(0).databaseLabel());
+        verify(targetDs, never()).getConnection();
+    }
+
+    @Test
+    public void givesAllInFlightStatementsOneSharedGracePeriod() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PreparedStatement hung = mock(PreparedStatement.class);
+        when(hung.execute()).thenAnswer(inv -> {
+            // Ignores both cancel() and interrupts until the test is over.
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (release.getCount() > 0 && System.nanoTime() < end) {
+                try {
+                    release.await(10, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ignored) {
+                    // keep hanging
+                }
+            }
+            return true;
+        });
+        PreparedStatement broken = mock(PreparedStatement.class);
+        when(broken.execute()).thenAnswer(inv -> {
+            Thread.sleep(300);
+            throw new SQLException("boom");
+        });
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(hung);
+        when(conn.prepareStatement(contains("broken"))).thenReturn(broken);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        List<SqlStatement> statements = List.of(statement("a", "select 'a'"), statement("b", "select 'b'"),
+                statement("c", "select 'c'"), statement("broken", "select broken"), statement("queued", "select 'q'"));
+
+        Validator validator = new Validator(ValidatorLog.stderr(false), new Validator.Options()
+                .threadCount(4)
+                .statementTimeoutSeconds(30)
+                .cancelGraceSeconds(1)
+                .maxFailures(1));
+        long start = System.nanoTime();
+        List<ValidationResult> results;
+        try (Database target = new Database("target", dataSource)) {
+            results = validator.validate(statements, null, target);
+        } finally {
+            release.countDown();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 2_500, "took " + elapsedMillis + " ms");
+        assertEquals(5, results.size());
+        // The queued statement is either withdrawn or picked up by the worker the failure freed.
+        assertEquals(4, results.stream().filter(r -> !r.completed()).count());
+        assertTrue(results.stream().filter(r -> r.status() == ValidationResult.Status.NOT_STARTED)
+                .allMatch(r -> r.statement().id().equals("queued")));
+    }
+
+    @Test
+    public void readsTheRootPlanCostFromExplainOutput() {
+        String plan = "[{\"Plan\": {\"Node Type\": \"Hash Join\", \"Startup Cost\": 1.5, \"Total Cost\": 245.75,"
+                + " \"Plans\": [{\"Node Type\": \"Seq Scan\", \"Total Cost\": 12.0}]}}]";
+
+        assertEquals(245.75, Validator.planCost(plan));
+        assertTrue(Double.isNaN(Validator.planCost("[]")));
+    }
+
+    private static SqlStatement statement(String id, String sql) {
+        return new SqlStatement(id, "demo.users", SqlStatement.Kind.SELECT, Path.of("UserMapper.xml"), sql, List.of());
+    }
+}